@@ -0,0 +1,39 @@
+package com.video.common;
+
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 客户端IP工具类
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+public final class IpUtils {
+
+    private IpUtils() {
+    }
+
+    /**
+     * 获取客户端IP地址
+     * 依次使用X-Forwarded-For的第一个地址、X-Real-IP和连接的远程地址
+     *
+     * @param request HTTP请求
+     * @return 客户端IP地址
+     */
+    public static String getClientIpAddress(HttpServletRequest request) {
+        String xForwardedFor = request.getHeader("X-Forwarded-For");
+        if (StringUtils.hasText(xForwardedFor) && !"unknown".equalsIgnoreCase(xForwardedFor)) {
+            int index = xForwardedFor.indexOf(',');
+            return (index >= 0 ? xForwardedFor.substring(0, index) : xForwardedFor).trim();
+        }
+        
+        String xRealIp = request.getHeader("X-Real-IP");
+        if (StringUtils.hasText(xRealIp) && !"unknown".equalsIgnoreCase(xRealIp)) {
+            return xRealIp;
+        }
+        
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,258 @@
+package com.video.common;
+
+import com.video.dto.MediaMetadata;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MP4盒子解析工具类
+ * 只解析获取元数据所需的盒子：moov/mvhd、trak/tkhd、mdia/hdlr、stbl/stsd，
+ * 以及faststart重排时需要调整的chunk偏移表（stco/co64）
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+public final class Mp4Parser {
+
+    private Mp4Parser() {
+    }
+
+    /**
+     * 读取盒子头
+     *
+     * @param data 数据
+     * @param pos 盒子在数据中的起始位置
+     * @param limit 数据的有效长度
+     * @param fileOffset 盒子在文件中的偏移
+     * @param fileSize 文件总大小，用于size为0（延伸到文件末尾）的盒子
+     * @return 盒子头，数据不足时返回null
+     */
+    public static Box readBox(byte[] data, int pos, int limit, long fileOffset, long fileSize) {
+        if (limit - pos < 8) {
+            return null;
+        }
+        long size = readUint32(data, pos);
+        String type = new String(data, pos + 4, 4, StandardCharsets.ISO_8859_1);
+        int headerSize = 8;
+        if (size == 1) {
+            if (limit - pos < 16) {
+                return null;
+            }
+            size = readInt64(data, pos + 8);
+            headerSize = 16;
+        } else if (size == 0) {
+            size = fileSize - fileOffset;
+        }
+        if (size < headerSize) {
+            return null;
+        }
+        return new Box(type, fileOffset, size, headerSize);
+    }
+
+    /**
+     * 解析moov盒子中的时长、分辨率和编码
+     *
+     * @param moov 完整的moov盒子（含盒子头）
+     * @param metadata 解析结果写入的对象
+     */
+    public static void parseMoov(byte[] moov, MediaMetadata metadata) {
+        Box root = readBox(moov, 0, moov.length, 0, moov.length);
+        if (root == null || !"moov".equals(root.type)) {
+            return;
+        }
+        int end = (int) Math.min(moov.length, root.size);
+        for (int pos = root.headerSize; pos < end; ) {
+            Box box = readBox(moov, pos, end, pos, end);
+            if (box == null) {
+                break;
+            }
+            int payload = pos + box.headerSize;
+            int boxEnd = (int) Math.min(end, pos + box.size);
+            if ("mvhd".equals(box.type) && boxEnd - payload >= 32) {
+                boolean v1 = moov[payload] == 1;
+                long timescale = readUint32(moov, payload + (v1 ? 20 : 12));
+                long duration = v1 ? readInt64(moov, payload + 24) : readUint32(moov, payload + 16);
+                if (timescale > 0) {
+                    metadata.setDurationSeconds((double) duration / timescale);
+                }
+            } else if ("trak".equals(box.type)) {
+                parseTrak(moov, payload, boxEnd, metadata);
+            }
+            pos = boxEnd;
+        }
+    }
+
+    private static void parseTrak(byte[] data, int start, int end, MediaMetadata metadata) {
+        int width = 0;
+        int height = 0;
+        String handler = null;
+        String codec = null;
+        for (int pos = start; pos < end; ) {
+            Box box = readBox(data, pos, end, pos, end);
+            if (box == null) {
+                break;
+            }
+            int payload = pos + box.headerSize;
+            int boxEnd = (int) Math.min(end, pos + box.size);
+            if ("tkhd".equals(box.type) && boxEnd - payload >= 84) {
+                boolean v1 = data[payload] == 1;
+                int sizeOffset = payload + (v1 ? 88 : 76);
+                if (sizeOffset + 8 <= boxEnd) {
+                    width = (int) (readUint32(data, sizeOffset) >> 16);
+                    height = (int) (readUint32(data, sizeOffset + 4) >> 16);
+                }
+            } else if ("mdia".equals(box.type)) {
+                String[] mdia = parseMdia(data, payload, boxEnd);
+                handler = mdia[0];
+                codec = mdia[1];
+            }
+            pos = boxEnd;
+        }
+
+        if ("vide".equals(handler)) {
+            metadata.setVideoCodec(codec);
+            if (width > 0 && height > 0) {
+                metadata.setWidth(width);
+                metadata.setHeight(height);
+            }
+        } else if ("soun".equals(handler)) {
+            metadata.setAudioCodec(codec);
+        }
+    }
+
+    /**
+     * @return [handler类型, 第一个样本描述的编码]
+     */
+    private static String[] parseMdia(byte[] data, int start, int end) {
+        String[] result = new String[2];
+        for (int pos = start; pos < end; ) {
+            Box box = readBox(data, pos, end, pos, end);
+            if (box == null) {
+                break;
+            }
+            int payload = pos + box.headerSize;
+            int boxEnd = (int) Math.min(end, pos + box.size);
+            if ("hdlr".equals(box.type) && boxEnd - payload >= 12) {
+                result[0] = new String(data, payload + 8, 4, StandardCharsets.ISO_8859_1);
+            } else if ("minf".equals(box.type) || "stbl".equals(box.type)) {
+                String[] nested = parseMdia(data, payload, boxEnd);
+                if (nested[1] != null) {
+                    result[1] = nested[1];
+                }
+            } else if ("stsd".equals(box.type) && boxEnd - payload >= 16) {
+                result[1] = new String(data, payload + 12, 4, StandardCharsets.ISO_8859_1).trim();
+            }
+            pos = boxEnd;
+        }
+        return result;
+    }
+
+    /**
+     * 将moov中所有chunk偏移（stco/co64）加上固定的增量，用于把moov移到mdat之前
+     *
+     * @param moov 完整的moov盒子（含盒子头），原地修改
+     * @param delta 偏移增量
+     * @return 是否全部调整成功（32位偏移溢出时返回false）
+     */
+    public static boolean shiftChunkOffsets(byte[] moov, long delta) {
+        return shiftIn(moov, 0, moov.length, delta, 0);
+    }
+
+    private static boolean shiftIn(byte[] data, int start, int end, long delta, int depth) {
+        for (int pos = start; pos < end; ) {
+            Box box = readBox(data, pos, end, pos, end);
+            if (box == null) {
+                return true;
+            }
+            int payload = pos + box.headerSize;
+            int boxEnd = (int) Math.min(end, pos + box.size);
+            switch (box.type) {
+                case "moov":
+                case "trak":
+                case "mdia":
+                case "minf":
+                case "stbl":
+                    if (depth < 8 && !shiftIn(data, payload, boxEnd, delta, depth + 1)) {
+                        return false;
+                    }
+                    break;
+                case "stco": {
+                    long count = readUint32(data, payload + 4);
+                    for (int i = 0, p = payload + 8; i < count && p + 4 <= boxEnd; i++, p += 4) {
+                        long offset = readUint32(data, p) + delta;
+                        if (offset > 0xFFFFFFFFL) {
+                            return false;
+                        }
+                        writeUint32(data, p, offset);
+                    }
+                    break;
+                }
+                case "co64": {
+                    long count = readUint32(data, payload + 4);
+                    for (int i = 0, p = payload + 8; i < count && p + 8 <= boxEnd; i++, p += 8) {
+                        writeInt64(data, p, readInt64(data, p) + delta);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            pos = boxEnd;
+        }
+        return true;
+    }
+
+    public static long readUint32(byte[] data, int pos) {
+        return ((data[pos] & 0xFFL) << 24) | ((data[pos + 1] & 0xFFL) << 16)
+                | ((data[pos + 2] & 0xFFL) << 8) | (data[pos + 3] & 0xFFL);
+    }
+
+    public static long readInt64(byte[] data, int pos) {
+        return (readUint32(data, pos) << 32) | readUint32(data, pos + 4);
+    }
+
+    private static void writeUint32(byte[] data, int pos, long value) {
+        data[pos] = (byte) (value >>> 24);
+        data[pos + 1] = (byte) (value >>> 16);
+        data[pos + 2] = (byte) (value >>> 8);
+        data[pos + 3] = (byte) value;
+    }
+
+    private static void writeInt64(byte[] data, int pos, long value) {
+        writeUint32(data, pos, value >>> 32);
+        writeUint32(data, pos + 4, value);
+    }
+
+    /**
+     * 盒子头信息
+     */
+    public static class Box {
+        private final String type;
+        private final long offset;
+        private final long size;
+        private final int headerSize;
+
+        Box(String type, long offset, long size, int headerSize) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+            this.headerSize = headerSize;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getHeaderSize() {
+            return headerSize;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.video.common;
+
+/**
+ * 请求流量类别
+ * 按请求路径划分，用于限流、并发控制和资源隔离
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+public enum TrafficClass {
+
+    /**
+     * 视频解析
+     */
+    PARSE("parse"),
+
+    /**
+     * 视频代理下载
+     */
+    PROXY("proxy"),
+
+    /**
+     * 微信登录授权
+     */
+    AUTH("auth"),
+
+    /**
+     * 下载进度查询
+     */
+    PROGRESS("progress"),
+
+    /**
+     * 其他接口
+     */
+    OTHER("other");
+
+    private final String code;
+
+    TrafficClass(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 根据请求路径（不含上下文路径）判断流量类别
+     *
+     * @param path 请求路径
+     * @return 流量类别
+     */
+    public static TrafficClass of(String path) {
+        if (path == null) {
+            return OTHER;
+        }
+        if (path.startsWith("/proxy/") || path.startsWith("/api/proxy/")) {
+            return PROXY;
+        }
+        if (path.equals("/video/getVideoInfo")) {
+            return PARSE;
+        }
+        if (path.equals("/wx/auth") || path.equals("/wx/login")) {
+            return AUTH;
+        }
+        if (path.startsWith("/download/")) {
+            return PROGRESS;
+        }
+        return OTHER;
+    }
+}
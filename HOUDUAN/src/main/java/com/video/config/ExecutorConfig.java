@@ -0,0 +1,125 @@
+package com.video.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池配置类
+ * 后台任务使用有界队列的独立线程池，队列满时直接拒绝，避免无限堆积
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${bulkhead.download-executor.core-size:4}")
+    private int downloadCoreSize;
+
+    @Value("${bulkhead.download-executor.max-size:10}")
+    private int downloadMaxSize;
+
+    @Value("${bulkhead.download-executor.queue-capacity:100}")
+    private int downloadQueueCapacity;
+
+    @Value("${proxy.segmented.executor.max-size:32}")
+    private int segmentMaxSize;
+
+    @Value("${proxy.segmented.executor.queue-capacity:256}")
+    private int segmentQueueCapacity;
+
+    @Value("${proxy.hls.prefetch-threads:8}")
+    private int hlsPrefetchThreads;
+
+    @Value("${proxy.hls.prefetch-queue-capacity:64}")
+    private int hlsPrefetchQueueCapacity;
+
+    @Value("${proxy.atlas.executor.max-size:16}")
+    private int atlasMaxSize;
+
+    @Value("${proxy.atlas.executor.queue-capacity:64}")
+    private int atlasQueueCapacity;
+
+    @Value("${business.parse.result-cache.refresh-threads:4}")
+    private int parseRefreshThreads;
+
+    @Value("${business.parse.result-cache.refresh-queue-capacity:100}")
+    private int parseRefreshQueueCapacity;
+
+    @Bean
+    public ThreadPoolTaskExecutor downloadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(downloadCoreSize);
+        executor.setMaxPoolSize(downloadMaxSize);
+        executor.setQueueCapacity(downloadQueueCapacity);
+        executor.setThreadNamePrefix("download-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    /**
+     * 分段回源线程池，队列满时拒绝新分段，由调用方直接失败
+     */
+    @Bean
+    public ThreadPoolTaskExecutor segmentExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(segmentMaxSize);
+        executor.setMaxPoolSize(segmentMaxSize);
+        executor.setQueueCapacity(segmentQueueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("segment-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 解析结果后台刷新线程池，队列满时跳过刷新，继续使用缓存结果
+     */
+    @Bean
+    public ThreadPoolTaskExecutor parseRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parseRefreshThreads);
+        executor.setMaxPoolSize(parseRefreshThreads);
+        executor.setQueueCapacity(parseRefreshQueueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("parse-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * HLS分片预取线程池，队列满时停止预取，客户端请求时再按需下载
+     */
+    @Bean
+    public ThreadPoolTaskExecutor hlsPrefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(hlsPrefetchThreads);
+        executor.setMaxPoolSize(hlsPrefetchThreads);
+        executor.setQueueCapacity(hlsPrefetchQueueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("hls-prefetch-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 图集图片下载线程池，队列满时由请求线程直接下载
+     */
+    @Bean
+    public ThreadPoolTaskExecutor atlasExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(atlasMaxSize);
+        executor.setMaxPoolSize(atlasMaxSize);
+        executor.setQueueCapacity(atlasQueueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("atlas-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
@@ -1,11 +1,20 @@
 package com.video.config;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * RestTemplate配置类
  * 针对大文件视频代理优化超时设置
@@ -16,11 +25,93 @@ import org.springframework.web.client.RestTemplate;
 @Configuration
 public class RestTemplateConfig {
 
+    @Value("${wechat.miniapp.client.connect-timeout-ms:2000}")
+    private int wechatConnectTimeout;
+
+    @Value("${wechat.miniapp.client.read-timeout-ms:3000}")
+    private int wechatReadTimeout;
+
+    @Value("${wechat.miniapp.client.pool-size:20}")
+    private int wechatPoolSize;
+
+    @Value("${http.parse.connect-timeout-ms:5000}")
+    private int parseConnectTimeout;
+
+    @Value("${http.parse.read-timeout-ms:30000}")
+    private int parseReadTimeout;
+
+    @Value("${http.parse.pool-size:50}")
+    private int parsePoolSize;
+
+    @Value("${http.proxy.connect-timeout-ms:8000}")
+    private int proxyConnectTimeout;
+
+    @Value("${http.proxy.read-timeout-ms:300000}")
+    private int proxyReadTimeout;
+
+    @Value("${http.proxy.pool-size:200}")
+    private int proxyPoolSize;
+
+    @Value("${http.proxy.pool-size-per-host:50}")
+    private int proxyPoolSizePerHost;
+
     @Bean
+    @Primary
     public RestTemplate restTemplate() {
         return new RestTemplate(clientHttpRequestFactory());
     }
 
+    /**
+     * 微信API专用RestTemplate
+     * 独立的连接池和较短的超时，微信接口变慢时不会长时间占用请求线程
+     */
+    @Bean
+    public RestTemplate wechatRestTemplate() {
+        return pooledRestTemplate(wechatPoolSize, wechatPoolSize, wechatConnectTimeout, wechatReadTimeout);
+    }
+
+    /**
+     * 去水印解析API专用RestTemplate
+     */
+    @Bean
+    public RestTemplate parseRestTemplate() {
+        return pooledRestTemplate(parsePoolSize, parsePoolSize, parseConnectTimeout, parseReadTimeout);
+    }
+
+    /**
+     * 视频代理专用RestTemplate
+     * 连接池按上游域名限制连接数，大文件下载使用较长的读取超时
+     */
+    @Bean
+    public RestTemplate proxyRestTemplate() {
+        return pooledRestTemplate(proxyPoolSize, proxyPoolSizePerHost, proxyConnectTimeout, proxyReadTimeout);
+    }
+
+    /**
+     * 创建使用独立连接池的RestTemplate
+     * 不自动重试、不自动解压，保持上游响应原样（代理Range请求时长度必须与上游一致）
+     */
+    private RestTemplate pooledRestTemplate(int maxTotal, int maxPerRoute, int connectTimeout, int readTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .disableAutomaticRetries()
+                .disableContentCompression()
+                .build();
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
     private ClientHttpRequestFactory clientHttpRequestFactory() {
         SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
         
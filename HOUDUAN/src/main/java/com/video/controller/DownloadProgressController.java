@@ -74,6 +74,7 @@ public class DownloadProgressController {
             result.put("startTime", progress.getStartTime());
             result.put("endTime", progress.getEndTime());
             result.put("errorMessage", progress.getErrorMessage());
+            result.put("resumeCount", progress.getResumeCount());
 
             return Result.success("获取成功", result);
         } catch (Exception e) {
@@ -1,8 +1,18 @@
 package com.video.controller;
 
+import com.video.service.FaststartService;
+import com.video.service.HlsProxyService;
+import com.video.service.LinkRefreshService;
+import com.video.service.MediaCacheService;
+import com.video.service.PlatformRegistry;
+import com.video.service.ProxyTokenService;
+import com.video.service.ThumbnailService;
+import com.video.service.UrlExpiryExtractor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.connector.ClientAbortException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -10,20 +20,23 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 import java.util.Collections;
+import java.util.Map;
 
 /**
  * 视频代理控制器
- * 用于解码Base64编码的URL并代理请求到实际的视频源
+ * 用于校验代理令牌并代理请求到实际的视频源
  *
  * @author video-parsing
  * @since 1.0.0
@@ -34,8 +47,39 @@ import java.util.Collections;
 public class ProxyController {
 
     @Autowired
+    @Qualifier("proxyRestTemplate")
     private RestTemplate restTemplate;
 
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    private ProxyTokenService proxyTokenService;
+
+    @Autowired
+    private MediaCacheService mediaCacheService;
+
+    @Autowired
+    private LinkRefreshService linkRefreshService;
+
+    @Autowired
+    private UrlExpiryExtractor urlExpiryExtractor;
+
+    @Autowired
+    private HlsProxyService hlsProxyService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private FaststartService faststartService;
+
+    @Value("${proxy.hls.concat-enabled:true}")
+    private boolean hlsConcatEnabled;
+
+    @Value("${proxy.thumbnail.enabled:true}")
+    private boolean thumbnailEnabled;
+
     /**
      * 抖音视频代理
      */
@@ -146,6 +190,121 @@ public class ProxyController {
         return proxyVideo(encodedUrl, "general", request, response);
     }
 
+    /**
+     * HLS分片代理（播放列表改写后的分片地址）
+     */
+    @GetMapping("/decode/{route}/{token}/seg/{sequence}")
+    public ResponseEntity<byte[]> proxyHlsSegment(@PathVariable String route, @PathVariable String token,
+                                                  @PathVariable long sequence) {
+        return proxyHlsResource(route, token, sequence, -1);
+    }
+
+    /**
+     * HLS密钥、初始化分片等资源代理
+     */
+    @GetMapping("/decode/{route}/{token}/res/{index}")
+    public ResponseEntity<byte[]> proxyHlsOtherResource(@PathVariable String route, @PathVariable String token,
+                                                        @PathVariable int index) {
+        return proxyHlsResource(route, token, -1, index);
+    }
+
+    /**
+     * HLS视频合并下载：按顺序拼接全部分片（TS或fMP4），用于保存到相册
+     * 主播放列表选择码率最高的子播放列表，加密的播放列表不支持合并
+     */
+    @GetMapping("/decode/{route}/{token}/download")
+    public void downloadHls(@PathVariable String route, @PathVariable String token,
+                            HttpServletResponse response) throws IOException {
+        if (!hlsConcatEnabled) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ProxyTokenService.ResolvedLink link = proxyTokenService.resolve(route, token);
+        if (!link.isValid()) {
+            response.setStatus(link.getStatus().getHttpStatus().value());
+            return;
+        }
+        if (link.getLinkId() == null) {
+            // 旧版地址没有稳定的短ID，不支持HLS
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            HlsProxyService.Playlist playlist = hlsProxyService.getPlaylist(link, token);
+            if (playlist.isMaster()) {
+                String variantToken = playlist.getBestVariantToken();
+                link = proxyTokenService.resolve(route, variantToken);
+                if (!link.isValid()) {
+                    response.setStatus(link.getStatus().getHttpStatus().value());
+                    return;
+                }
+                playlist = hlsProxyService.getPlaylist(link, variantToken);
+            }
+            if (playlist.isEncrypted() || !playlist.isEndList() || playlist.getSegments().isEmpty()) {
+                log.info("HLS播放列表不支持合并下载（加密、直播或无分片）: {}", link.getLinkId());
+                response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                return;
+            }
+
+            HlsProxyService.Resource map = playlist.getMap();
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(map != null ? "video/mp4" : "video/mp2t");
+            response.setHeader("Content-Disposition", "attachment; filename=\"video_"
+                    + System.currentTimeMillis() + (map != null ? ".mp4" : ".ts") + "\"");
+            response.setHeader("Cache-Control", "no-store");
+
+            long totalBytes = 0;
+            OutputStream outputStream = response.getOutputStream();
+            if (map != null) {
+                byte[] data = hlsProxyService.getResource(playlist, map);
+                outputStream.write(data);
+                totalBytes += data.length;
+            }
+            for (Map.Entry<Long, HlsProxyService.Resource> entry : playlist.getSegments().entrySet()) {
+                hlsProxyService.prefetch(playlist, entry.getKey());
+                byte[] data = hlsProxyService.getResource(playlist, entry.getValue());
+                outputStream.write(data);
+                totalBytes += data.length;
+            }
+            outputStream.flush();
+            log.info("HLS合并下载完成，分片数量: {}，总大小: {} bytes", playlist.getSegments().size(), totalBytes);
+        } catch (ClientAbortException e) {
+            log.info("客户端断开HLS合并下载: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("HLS合并下载失败: {}", e.getMessage());
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            }
+        }
+    }
+
+    /**
+     * 封面缩略图：按宽度缩放后的封面，同一链接的内容不变，允许客户端长期缓存
+     */
+    @GetMapping("/decode/{route}/{token}/thumb/{width}")
+    public ResponseEntity<byte[]> proxyThumbnail(@PathVariable String route, @PathVariable String token,
+                                                 @PathVariable int width) {
+        if (!thumbnailEnabled || width <= 0) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        ProxyTokenService.ResolvedLink link = proxyTokenService.resolve(route, token);
+        if (!link.isValid()) {
+            return ResponseEntity.status(link.getStatus().getHttpStatus()).build();
+        }
+        try {
+            ThumbnailService.Thumbnail thumbnail = thumbnailService.getThumbnail(link, width);
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.set(HttpHeaders.CONTENT_TYPE, thumbnail.getContentType());
+            responseHeaders.setContentLength(thumbnail.getData().length);
+            responseHeaders.setCacheControl("public, max-age=31536000, immutable");
+            responseHeaders.setAccessControlAllowOrigin("*");
+            return new ResponseEntity<>(thumbnail.getData(), responseHeaders, HttpStatus.OK);
+        } catch (Exception e) {
+            log.warn("生成封面缩略图失败，链接: {}，错误: {}", link.getLinkId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+    }
+
     /**
      * 代理视频请求的核心方法
      */
@@ -153,54 +312,41 @@ public class ProxyController {
                                               HttpServletRequest request,
                                               HttpServletResponse response) {
         try {
-            // 解码Base64 URL
-            String decodedUrl = new String(Base64.getUrlDecoder().decode(encodedUrl), StandardCharsets.UTF_8);
+            // 校验代理令牌并解析上游地址
+            ProxyTokenService.ResolvedLink link = proxyTokenService.resolve(platform, encodedUrl);
+            if (!link.isValid()) {
+                log.warn("拒绝{}视频代理请求，令牌状态: {}", platform, link.getStatus());
+                return ResponseEntity.status(link.getStatus().getHttpStatus()).build();
+            }
+            String decodedUrl = link.getTargetUrl();
+
+            // 已缓存的媒体交给nginx或sendfile发送，不再请求上游
+            // 本地缓存是完整副本，不受上游地址过期影响，缓存时间只受令牌有效期限制
+            if (mediaCacheService.serveCached(link.getLinkId(), request, response, null,
+                    urlExpiryExtractor.cacheMaxAge(null, link.getExpireAt(), 3600))) {
+                log.info("代理{}视频命中本地缓存: {}", platform, link.getLinkId());
+                return null;
+            }
             log.info("代理{}视频请求: {}", platform, decodedUrl);
 
             // 验证URL格式
             URL url = new URL(decodedUrl);
             
+            // 按域名识别平台，未识别时按路由平台兜底
+            PlatformRegistry.PlatformProfile profile = platformRegistry.resolveHost(url.getHost());
+            if (profile.isGeneral()) {
+                profile = platformRegistry.getByRoute(platform);
+            }
+            
             // 设置请求头
             HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent", "Mozilla/5.0 (iPhone; CPU iPhone OS 14_0 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/14.0 Mobile/15E148 Safari/604.1");
+            headers.set("User-Agent", profile.getUserAgent());
             headers.set("Accept", "*/*");
             headers.set("Accept-Language", "zh-CN,zh;q=0.9,en;q=0.8");
             
-            // 根据平台设置不同的Referer
-            switch (platform) {
-                case "douyin":
-                    headers.set("Referer", "https://www.douyin.com/");
-                    break;
-                case "kuaishou":
-                    headers.set("Referer", "https://www.kuaishou.com/");
-                    break;
-                case "xiaohongshu":
-                    headers.set("Referer", "https://www.xiaohongshu.com/");
-                    break;
-                case "bilibili":
-                    headers.set("Referer", "https://www.bilibili.com/");
-                    break;
-                case "weibo":
-                    headers.set("Referer", "https://weibo.com/");
-                    break;
-                case "xigua":
-                    headers.set("Referer", "https://www.ixigua.com/");
-                    break;
-                case "haokan":
-                    headers.set("Referer", "https://haokan.baidu.com/");
-                    break;
-                case "pipixia":
-                    headers.set("Referer", "https://h5.pipix.com/");
-                    break;
-                case "huoshan":
-                    headers.set("Referer", "https://www.huoshan.com/");
-                    break;
-                case "zuiyou":
-                    headers.set("Referer", "https://www.izuiyou.com/");
-                    break;
-                default:
-                    // 通用平台不设置特定Referer
-                    break;
+            // 根据平台设置不同的Referer，通用平台不设置特定Referer
+            if (profile.getReferer() != null) {
+                headers.set("Referer", profile.getReferer());
             }
 
             // 处理Range请求（支持断点续传和视频分片下载）
@@ -214,15 +360,38 @@ public class ProxyController {
             headers.set("Accept-Ranges", "bytes");
             headers.set("Cache-Control", "no-cache");
 
+            // moov位于末尾的MP4按faststart布局发送，播放器无需先读取文件末尾即可开始播放
+            FaststartService.Layout layout = link.getLinkId() != null
+                    ? faststartService.prepare(link.getLinkId(), decodedUrl) : null;
+            if (layout != null) {
+                return proxyFaststart(layout, link, decodedUrl, headers, rangeHeader, platform);
+            }
+
             HttpEntity<Void> entity = new HttpEntity<>(headers);
 
-            // 发起代理请求
-            ResponseEntity<byte[]> proxyResponse = restTemplate.exchange(
-                    decodedUrl,
-                    HttpMethod.GET,
-                    entity,
-                    byte[].class
-            );
+            // 发起代理请求，上游签名地址过期时重新解析后重试一次
+            ResponseEntity<byte[]> proxyResponse;
+            try {
+                proxyResponse = restTemplate.exchange(decodedUrl, HttpMethod.GET, entity, byte[].class);
+            } catch (HttpClientErrorException e) {
+                String freshUrl = linkRefreshService.isExpiredResponse(e.getRawStatusCode())
+                        ? linkRefreshService.refresh(link, decodedUrl) : null;
+                if (freshUrl == null) {
+                    throw e;
+                }
+                log.info("{}视频上游地址已过期（{}），使用重新解析的地址重试", platform, e.getRawStatusCode());
+                decodedUrl = freshUrl;
+                proxyResponse = restTemplate.exchange(decodedUrl, HttpMethod.GET, entity, byte[].class);
+            }
+
+            // HLS播放列表改写为经过代理的地址后返回，不写入媒体缓存
+            String upstreamType = proxyResponse.getHeaders().getContentType() != null
+                    ? proxyResponse.getHeaders().getContentType().toString() : null;
+            if (link.getLinkId() != null && hlsProxyService.isPlaylist(upstreamType, proxyResponse.getBody())) {
+                HlsProxyService.Playlist playlist = hlsProxyService.load(link, encodedUrl, decodedUrl, proxyResponse.getBody());
+                log.info("代理{}视频HLS播放列表，分片数量: {}", platform, playlist.getSegments().size());
+                return playlistResponse(playlist, decodedUrl, link);
+            }
 
             // 设置响应头
             HttpHeaders responseHeaders = new HttpHeaders();
@@ -253,13 +422,15 @@ public class ProxyController {
                 responseHeaders.put("Last-Modified", proxyResponse.getHeaders().get("Last-Modified"));
             }
 
-            // 根据是否为Range请求设置不同的缓存策略
+            // 根据是否为Range请求设置不同的缓存策略，不超过上游地址和代理令牌的剩余有效时间
             if (StringUtils.hasText(request.getHeader("Range"))) {
                 // Range请求使用较短的缓存时间
-                responseHeaders.setCacheControl("public, max-age=300");
+                responseHeaders.setCacheControl("public, max-age="
+                        + urlExpiryExtractor.cacheMaxAge(decodedUrl, link.getExpireAt(), 300));
             } else {
                 // 完整文件请求使用较长的缓存时间
-                responseHeaders.setCacheControl("public, max-age=3600");
+                responseHeaders.setCacheControl("public, max-age="
+                        + urlExpiryExtractor.cacheMaxAge(decodedUrl, link.getExpireAt(), 3600));
             }
             
             // 允许跨域
@@ -270,6 +441,12 @@ public class ProxyController {
             log.info("代理{}视频成功，响应大小: {} bytes", platform, 
                     proxyResponse.getBody() != null ? proxyResponse.getBody().length : 0);
 
+            // 完整响应写入本地缓存，后续请求直接由缓存发送
+            if (proxyResponse.getStatusCode() == HttpStatus.OK && !StringUtils.hasText(rangeHeader)) {
+                mediaCacheService.store(link.getLinkId(),
+                        String.valueOf(proxyResponse.getHeaders().getContentType()), proxyResponse.getBody());
+            }
+
             return new ResponseEntity<>(proxyResponse.getBody(), responseHeaders, proxyResponse.getStatusCode());
 
         } catch (Exception e) {
@@ -310,4 +487,167 @@ public class ProxyController {
             return ResponseEntity.badRequest().build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 按faststart布局代理视频：ftyp和调整后的moov来自内存，其余数据按映射后的区间从上游读取。
+     * 上游签名地址过期时重新解析，布局一致才换用新地址
+     */
+    private ResponseEntity<byte[]> proxyFaststart(FaststartService.Layout layout, ProxyTokenService.ResolvedLink link,
+                                                  String targetUrl, HttpHeaders headers, String rangeHeader,
+                                                  String platform) throws IOException {
+        long total = layout.getTotalSize();
+        long[] range = layout.resolveRange(rangeHeader);
+        if (range == null) {
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.set("Content-Range", "bytes */" + total);
+            return new ResponseEntity<>(responseHeaders, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+        long start = range[0];
+        long end = range[1];
+
+        // 先读取上游区间，地址过期换用新布局时内存部分也随之更新
+        byte[] source = null;
+        long bodyStart = Math.max(start, layout.getHeadLength());
+        if (bodyStart <= end) {
+            long[] span = layout.toSourceSpan(bodyStart, end);
+            try {
+                source = fetchSourceSpan(targetUrl, headers, layout, span);
+            } catch (HttpClientErrorException e) {
+                String freshUrl = linkRefreshService.isExpiredResponse(e.getRawStatusCode())
+                        ? linkRefreshService.refresh(link, targetUrl) : null;
+                FaststartService.Layout freshLayout = freshUrl != null
+                        ? faststartService.prepare(link.getLinkId(), freshUrl) : null;
+                if (freshLayout == null || freshLayout.getTotalSize() != total
+                        || freshLayout.getHeadLength() != layout.getHeadLength()) {
+                    throw e;
+                }
+                log.info("{}视频上游地址已过期（{}），使用重新解析的地址重试", platform, e.getRawStatusCode());
+                targetUrl = freshUrl;
+                layout = freshLayout;
+                source = fetchSourceSpan(targetUrl, headers, layout, span);
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream((int) Math.min(end - start + 1, Integer.MAX_VALUE - 8));
+        faststartService.writeHead(layout, start, end, body::write);
+        if (source != null) {
+            body.write(source, 0, source.length);
+        }
+        byte[] data = body.toByteArray();
+
+        HttpHeaders responseHeaders = new HttpHeaders();
+        if (layout.getContentType() != null) {
+            responseHeaders.set(HttpHeaders.CONTENT_TYPE, layout.getContentType());
+        }
+        responseHeaders.setContentLength(data.length);
+        responseHeaders.put("Accept-Ranges", Collections.singletonList("bytes"));
+        if (StringUtils.hasText(rangeHeader)) {
+            responseHeaders.set("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        }
+        responseHeaders.setCacheControl("public, max-age=" + urlExpiryExtractor.cacheMaxAge(targetUrl,
+                link.getExpireAt(), StringUtils.hasText(rangeHeader) ? 300 : 3600));
+        responseHeaders.setAccessControlAllowOrigin("*");
+        responseHeaders.setAccessControlAllowMethods(Collections.singletonList(HttpMethod.GET));
+        responseHeaders.setAccessControlAllowHeaders(Collections.singletonList("Range"));
+        log.info("代理{}视频按faststart布局发送，区间：{}-{}，总大小：{} bytes", platform, start, end, total);
+
+        // 完整响应写入本地缓存，缓存的是重排后的文件
+        if (!StringUtils.hasText(rangeHeader)) {
+            mediaCacheService.store(link.getLinkId(), layout.getContentType(), data);
+            return new ResponseEntity<>(data, responseHeaders, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(data, responseHeaders, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * 读取上游区间，并确认返回的是布局对应文件的该区间
+     */
+    private byte[] fetchSourceSpan(String targetUrl, HttpHeaders headers, FaststartService.Layout layout, long[] span)
+            throws IOException {
+        HttpHeaders sourceHeaders = new HttpHeaders();
+        sourceHeaders.putAll(headers);
+        sourceHeaders.set("Range", "bytes=" + span[0] + "-" + span[1]);
+        if (StringUtils.hasText(layout.getValidator())) {
+            // 文件已变化时上游返回200完整内容
+            sourceHeaders.set("If-Range", layout.getValidator());
+        }
+        ResponseEntity<byte[]> response = restTemplate.exchange(targetUrl, HttpMethod.GET,
+                new HttpEntity<>(sourceHeaders), byte[].class);
+        String contentRange = response.getHeaders().getFirst("Content-Range");
+        byte[] data = response.getBody();
+        if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT || contentRange == null
+                || !contentRange.equals("bytes " + span[0] + "-" + span[1] + "/" + layout.getTotalSize())
+                || data == null || data.length != span[1] - span[0] + 1) {
+            throw new IOException("上游区间与faststart布局不一致，状态码：" + response.getStatusCodeValue()
+                    + "，Content-Range：" + contentRange);
+        }
+        return data;
+    }
+
+    /**
+     * 代理播放列表中的分片或其他资源，并预取后续分片
+     */
+    private ResponseEntity<byte[]> proxyHlsResource(String route, String token, long sequence, int index) {
+        ProxyTokenService.ResolvedLink link = proxyTokenService.resolve(route, token);
+        if (!link.isValid()) {
+            return ResponseEntity.status(link.getStatus().getHttpStatus()).build();
+        }
+        if (link.getLinkId() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        try {
+            HlsProxyService.Playlist playlist = hlsProxyService.getPlaylist(link, token);
+            HlsProxyService.Resource resource = sequence >= 0 ? playlist.getSegment(sequence) : playlist.getResource(index);
+            if (resource == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            byte[] data = hlsProxyService.getResource(playlist, resource);
+            if (sequence >= 0) {
+                hlsProxyService.prefetch(playlist, sequence);
+            }
+
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.set(HttpHeaders.CONTENT_TYPE, hlsContentType(resource.getUrl()));
+            responseHeaders.setContentLength(data.length);
+            responseHeaders.setCacheControl("public, max-age="
+                    + urlExpiryExtractor.cacheMaxAge(resource.getUrl(), link.getExpireAt(), 3600));
+            responseHeaders.setAccessControlAllowOrigin("*");
+            return new ResponseEntity<>(data, responseHeaders, HttpStatus.OK);
+        } catch (Exception e) {
+            log.warn("代理HLS分片失败，链接: {}，错误: {}", link.getLinkId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        }
+    }
+
+    /**
+     * 返回改写后的播放列表，点播列表可短时间缓存，直播列表不缓存
+     */
+    private ResponseEntity<byte[]> playlistResponse(HlsProxyService.Playlist playlist, String playlistUrl,
+                                                    ProxyTokenService.ResolvedLink link) {
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.set(HttpHeaders.CONTENT_TYPE, "application/vnd.apple.mpegurl");
+        responseHeaders.setCacheControl(playlist.isEndList()
+                ? "public, max-age=" + urlExpiryExtractor.cacheMaxAge(playlistUrl, link.getExpireAt(), 300)
+                : "no-cache");
+        responseHeaders.setAccessControlAllowOrigin("*");
+        return new ResponseEntity<>(playlist.getText().getBytes(StandardCharsets.UTF_8), responseHeaders, HttpStatus.OK);
+    }
+
+    private static String hlsContentType(String url) {
+        String path = url.toLowerCase();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.endsWith(".ts")) {
+            return "video/mp2t";
+        }
+        if (path.endsWith(".m4s") || path.endsWith(".mp4")) {
+            return "video/mp4";
+        }
+        if (path.endsWith(".aac")) {
+            return "audio/aac";
+        }
+        return "application/octet-stream";
+    }
+}
@@ -1,7 +1,20 @@
 package com.video.controller;
 
 import com.video.common.Result;
+import com.video.dto.VideoParseResult;
 import com.video.entity.VideoParseRecord;
+import com.video.service.AdaptiveConcurrencyLimiter;
+import com.video.service.AtlasService;
+import com.video.service.BulkheadService;
+import com.video.service.FaststartService;
+import com.video.service.HlsProxyService;
+import com.video.service.LinkRefreshService;
+import com.video.service.Mp4MetadataService;
+import com.video.service.ParseResultCache;
+import com.video.service.SegmentedFetchService;
+import com.video.service.ThumbnailService;
+import com.video.service.RateLimitService;
+import com.video.service.UserCacheService;
 import com.video.service.VideoParsingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +41,42 @@ public class VideoController {
     @Autowired
     private VideoParsingService videoParsingService;
 
+    @Autowired
+    private UserCacheService userCacheService;
+
+    @Autowired
+    private RateLimitService rateLimitService;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Autowired
+    private SegmentedFetchService segmentedFetchService;
+
+    @Autowired
+    private LinkRefreshService linkRefreshService;
+
+    @Autowired
+    private ParseResultCache parseResultCache;
+
+    @Autowired
+    private Mp4MetadataService mp4MetadataService;
+
+    @Autowired
+    private FaststartService faststartService;
+
+    @Autowired
+    private HlsProxyService hlsProxyService;
+
+    @Autowired
+    private AtlasService atlasService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
     @Value("${business.parsing-record-retention-minutes}")
     private int recordRetentionMinutes;
 
@@ -61,17 +110,15 @@ public class VideoController {
             }
             
             // 调用解析服务
-            Map<String, Object> parseResult = videoParsingService.parseVideo(openId, url, request);
+            VideoParseResult parseResult = videoParsingService.parseVideo(openId, url, request);
             
             // 根据解析结果返回响应
-            Integer status = (Integer) parseResult.get("status");
-            if (status != null && status == 1) {
+            if (parseResult.isSuccess()) {
                 // 解析成功
-                Object data = parseResult.get("data");
-                return Result.success((String) parseResult.get("msg"), data);
+                return Result.success(parseResult.getMsg(), parseResult.getData());
             } else {
                 // 解析失败
-                return Result.error((String) parseResult.get("msg"));
+                return Result.error(parseResult.getMsg());
             }
             
         } catch (Exception e) {
@@ -152,6 +199,18 @@ public class VideoController {
         data.put("status", "UP");
         data.put("timestamp", System.currentTimeMillis());
         data.put("service", "video-parsing-service");
+        data.put("userCache", userCacheService.getStats());
+        data.put("rateLimit", rateLimitService.getStats());
+        data.put("proxyConcurrency", concurrencyLimiter.getStats());
+        data.put("bulkhead", bulkheadService.getStats());
+        data.put("segmentedFetch", segmentedFetchService.getStats());
+        data.put("linkRefresh", linkRefreshService.getStats());
+        data.put("parseResultCache", parseResultCache.getStats());
+        data.put("mediaMetadata", mp4MetadataService.getStats());
+        data.put("faststart", faststartService.getStats());
+        data.put("hls", hlsProxyService.getStats());
+        data.put("atlas", atlasService.getStats());
+        data.put("thumbnail", thumbnailService.getStats());
         
         return Result.success("服务正常", data);
     }
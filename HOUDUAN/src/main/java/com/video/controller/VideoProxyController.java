@@ -1,10 +1,23 @@
 package com.video.controller;
 
 import com.video.common.Result;
+import com.video.dto.MediaMetadata;
+import com.video.service.AtlasService;
 import com.video.service.VideoUrlPreprocessor;
 import com.video.service.DownloadProgressService;
+import com.video.service.FaststartService;
+import com.video.service.LinkRefreshService;
+import com.video.service.MediaCacheService;
+import com.video.service.Mp4MetadataService;
+import com.video.service.PlatformRegistry;
+import com.video.service.ProxyTokenService;
+import com.video.service.SegmentedFetchService;
+import com.video.service.UrlExpiryExtractor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.*;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
@@ -20,11 +33,14 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 视频代理下载控制器
@@ -47,8 +63,44 @@ public class VideoProxyController {
     @Autowired
     private DownloadProgressService downloadProgressService;
     
-    // 线程池用于异步下载
-    private final Executor downloadExecutor = Executors.newFixedThreadPool(10);
+    @Autowired
+    private PlatformRegistry platformRegistry;
+    
+    @Autowired
+    private ProxyTokenService proxyTokenService;
+    
+    @Autowired
+    private MediaCacheService mediaCacheService;
+    
+    @Autowired
+    private SegmentedFetchService segmentedFetchService;
+    
+    @Autowired
+    private LinkRefreshService linkRefreshService;
+    
+    @Autowired
+    private UrlExpiryExtractor urlExpiryExtractor;
+    
+    @Autowired
+    private Mp4MetadataService mp4MetadataService;
+    
+    @Autowired
+    private FaststartService faststartService;
+    
+    @Autowired
+    private AtlasService atlasService;
+    
+    // 上游中途断开时的最大续传次数
+    @Value("${proxy.resume.max-attempts:3}")
+    private int resumeMaxAttempts;
+    
+    // 线程池用于异步下载（有界队列，见ExecutorConfig）
+    @Autowired
+    @Qualifier("downloadExecutor")
+    private TaskExecutor downloadExecutor;
+    
+    // 默认的响应缓存时间（秒）
+    private static final long DEFAULT_MAX_AGE_SECONDS = 3600;
     
     // 优化后的缓冲区大小：64KB
     private static final int BUFFER_SIZE = 512 * 1024; // 增加到512KB缓冲区
@@ -58,11 +110,6 @@ public class VideoProxyController {
             ".mp4", ".avi", ".mov", ".wmv", ".flv", ".webm", ".m4v", ".3gp"
     );
 
-    // 常用的视频平台域名，用于设置合适的Referer
-    private static final String[] PLATFORM_DOMAINS = {
-            "douyin.com", "tiktok.com", "kuaishou.com", "xiaohongshu.com",
-            "weishi.qq.com", "ixigua.com", "pipix.com", "zuiyou.com", "weibo.com"
-    };
 
     /**
      * 代理下载视频（支持Range请求）
@@ -83,8 +130,32 @@ public class VideoProxyController {
         }
 
         try {
-            // URL解码
-            String decodedUrl = URLDecoder.decode(videoUrl, StandardCharsets.UTF_8.name());
+            // URL解码并校验代理令牌
+            ProxyTokenService.ResolvedLink link = proxyTokenService.resolveProxyUrl(
+                    URLDecoder.decode(videoUrl, StandardCharsets.UTF_8.name()));
+            if (!link.isValid()) {
+                log.warn("拒绝代理下载请求，令牌状态：{}", link.getStatus());
+                response.setStatus(link.getStatus().getHttpStatus().value());
+                return;
+            }
+            String decodedUrl = link.getTargetUrl();
+
+            // 已缓存的媒体交给nginx或sendfile发送，不再经过Java复制数据
+            // 本地缓存是完整副本，不受上游地址过期影响，缓存时间只受令牌有效期限制
+            long cachedMaxAge = urlExpiryExtractor.cacheMaxAge(null, link.getExpireAt(), DEFAULT_MAX_AGE_SECONDS);
+            if (mediaCacheService.serveCached(link.getLinkId(), request, response, extractFileName(decodedUrl), cachedMaxAge)) {
+                log.info("代理下载命中本地缓存：{}", link.getLinkId());
+                if (StringUtils.hasText(taskId)) {
+                    Path cached = mediaCacheService.findCached(link.getLinkId());
+                    long size = cached != null ? Files.size(cached) : 0;
+                    if (downloadProgressService.getProgress(taskId) == null) {
+                        downloadProgressService.createDownloadTask(taskId, decodedUrl, size);
+                    }
+                    downloadProgressService.updateProgress(taskId, size);
+                    downloadProgressService.markCompleted(taskId);
+                }
+                return;
+            }
             log.info("开始代理下载视频：{}", decodedUrl);
             
             // 预处理URL，获取合适的Referer
@@ -96,9 +167,17 @@ public class VideoProxyController {
             
             // 设置请求头以绕过防盗链
             setupRequestHeaders(connection, decodedUrl, urlInfo);
+            Map<String, String> upstreamHeaders = copyRequestHeaders(connection);
             
             // 处理Range请求（断点续传）
             String rangeHeader = request.getHeader("Range");
+            
+            // moov位于末尾的MP4按faststart布局发送，播放器无需先读取文件末尾
+            FaststartService.Layout layout = faststartService.prepare(link.getLinkId(), decodedUrl);
+            if (layout != null) {
+                serveFaststart(layout, link, decodedUrl, upstreamHeaders, rangeHeader, response, taskId);
+                return;
+            }
             long startByte = 0;
             long endByte = -1;
             
@@ -135,6 +214,28 @@ public class VideoProxyController {
             
             // 获取响应
             int responseCode = connection.getResponseCode();
+            
+            // 上游签名地址过期时重新解析，使用新地址重新请求
+            if (linkRefreshService.isExpiredResponse(responseCode)) {
+                String freshUrl = linkRefreshService.refresh(link, decodedUrl);
+                if (freshUrl != null) {
+                    log.info("上游地址已过期（{}），使用重新解析的地址重试", responseCode);
+                    connection.disconnect();
+                    decodedUrl = freshUrl;
+                    connection = (HttpURLConnection) new URL(decodedUrl).openConnection();
+                    for (Map.Entry<String, String> header : upstreamHeaders.entrySet()) {
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                    if (StringUtils.hasText(rangeHeader)) {
+                        connection.setRequestProperty("Range", rangeHeader);
+                    }
+                    connection.setConnectTimeout(8000);
+                    connection.setReadTimeout(60000);
+                    connection.setInstanceFollowRedirects(true);
+                    connection.setUseCaches(false);
+                    responseCode = connection.getResponseCode();
+                }
+            }
             String contentType = connection.getContentType();
             long contentLength = connection.getContentLengthLong();
             
@@ -164,71 +265,61 @@ public class VideoProxyController {
                 response.setStatus(HttpServletResponse.SC_OK);
             }
             
-            setupResponseHeaders(response, contentType, contentLength, decodedUrl, rangeHeader != null);
+            setupResponseHeaders(response, contentType, contentLength, decodedUrl, rangeHeader != null,
+                    urlExpiryExtractor.cacheMaxAge(decodedUrl, link.getExpireAt(), DEFAULT_MAX_AGE_SECONDS));
+            
+            // 完整下载时同步写入本地缓存
+            MediaCacheService.CacheWriter cacheWriter = responseCode == HttpURLConnection.HTTP_OK
+                    && rangeHeader == null ? mediaCacheService.openWriter(link.getLinkId(), contentType, contentLength) : null;
+            
+            // 大文件且上游支持Range时分段并行回源
+            long[] span = resolveSpan(connection, responseCode, contentLength);
+            boolean acceptRanges = responseCode == HttpURLConnection.HTTP_PARTIAL
+                    || "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            boolean segmented = span != null && segmentedFetchService.shouldSegment(
+                    platformRegistry.resolveUrl(decodedUrl).getCode(), span[1] - span[0] + 1, acceptRanges);
             
             // 优化的流式传输
-            try (InputStream inputStream = connection.getInputStream();
-                 OutputStream outputStream = response.getOutputStream()) {
+            try (OutputStream outputStream = response.getOutputStream()) {
+                TransferSink sink = new TransferSink(outputStream, cacheWriter, taskId, progress != null);
                 
-                byte[] buffer = new byte[BUFFER_SIZE]; // 使用512KB缓冲区
-                int bytesRead;
-                long totalBytes = 0;
-                long startTime = System.currentTimeMillis();
-                long lastLogTime = startTime;
-                long lastProgressUpdate = startTime;
-                long lastLogBytes = 0;
+                // 上游文件标识，用于确认续传或分段请求的是同一文件
+                String validator = connection.getHeaderField("ETag");
+                if (!StringUtils.hasText(validator)) {
+                    validator = connection.getHeaderField("Last-Modified");
+                }
+                long totalSize = responseCode == HttpURLConnection.HTTP_OK
+                        ? contentLength : parseTotalSize(connection.getHeaderField("Content-Range"));
                 
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    // 检查是否已取消下载
-                    if (StringUtils.hasText(taskId) && downloadProgressService.isCancelled(taskId)) {
-                        log.info("下载已被用户取消: {}", taskId);
-                        response.setStatus(HttpServletResponse.SC_REQUEST_TIMEOUT);
-                        return;
-                    }
-                    
-                    outputStream.write(buffer, 0, bytesRead);
-                    totalBytes += bytesRead;
-                    
-                    long currentTime = System.currentTimeMillis();
-                    
-                    // 每1秒更新一次进度（进一步减少频率提高性能）
-                    if (progress != null && (currentTime - lastProgressUpdate > 1000)) {
-                        downloadProgressService.updateProgress(taskId, totalBytes);
-                        lastProgressUpdate = currentTime;
-                    }
-                    
-                    // 每3秒记录一次日志
-                    if (currentTime - lastLogTime > 3000) {
-                        double totalMB = totalBytes / (1024.0 * 1024.0);
-                        double intervalSeconds = (currentTime - lastLogTime) / 1000.0;
-                        double intervalMB = (totalBytes - lastLogBytes) / (1024.0 * 1024.0);
-                        double currentSpeed = intervalMB / intervalSeconds;
-                        double avgSpeed = totalMB / ((currentTime - startTime) / 1000.0);
-                        
-                        log.debug("已传输 {} MB, 当前速度: {} MB/s, 平均速度: {} MB/s", 
-                                String.format("%.2f", totalMB),
-                                String.format("%.2f", currentSpeed),
-                                String.format("%.2f", avgSpeed));
-                        
-                        lastLogTime = currentTime;
-                        lastLogBytes = totalBytes;
-                    }
-                    
-                    // 每4MB刷新一次输出流（进一步减少频率）
-                    if (totalBytes % (4 * 1024 * 1024) == 0) {
-                        outputStream.flush();
-                    }
+                if (segmented) {
+                    connection.disconnect();
+                    log.info("分段并行下载，区间：{}-{}", span[0], span[1]);
+                    segmentedFetchService.fetch(decodedUrl, upstreamHeaders, validator, span[0], span[1], sink);
+                } else {
+                    streamWithResume(connection.getInputStream(), decodedUrl, upstreamHeaders, validator, totalSize,
+                            span, sink);
                 }
                 
                 outputStream.flush();
-                log.info("视频下载完成，总大小：{} bytes", totalBytes);
+                log.info("视频下载完成，总大小：{} bytes", sink.totalBytes);
+                if (cacheWriter != null) {
+                    cacheWriter.commit();
+                }
                 
                 // 最后更新一次进度确保100%
                 if (progress != null) {
-                    downloadProgressService.updateProgress(taskId, totalBytes);
+                    downloadProgressService.updateProgress(taskId, sink.totalBytes);
                     downloadProgressService.markCompleted(taskId);
                 }
                 
+            } catch (DownloadCancelledException e) {
+                log.info("下载已被用户取消: {}", taskId);
+                response.setStatus(HttpServletResponse.SC_REQUEST_TIMEOUT);
+            } finally {
+                // 未完成提交的缓存（取消或传输中断）直接丢弃
+                if (cacheWriter != null) {
+                    cacheWriter.abort();
+                }
             }
             
         } catch (Exception e) {
@@ -256,22 +347,20 @@ public class VideoProxyController {
         }
 
         try {
-            // 预处理URL，获取合适的Referer
-            VideoUrlPreprocessor.VideoUrlInfo urlInfo = videoUrlPreprocessor.preprocessVideoUrl(videoUrl);
-            
-            URL url = new URL(videoUrl);
-            URLConnection connection = url.openConnection();
-            
-            // 设置请求头
-            setupRequestHeaders(connection, videoUrl, urlInfo);
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(10000);
-            
-            // 仅获取头信息，不下载内容
-            connection.connect();
+            // 校验代理令牌
+            ProxyTokenService.ResolvedLink link = proxyTokenService.resolveProxyUrl(videoUrl);
+            if (!link.isValid()) {
+                return Result.error(link.getStatus().getHttpStatus().value(), "无效的视频链接");
+            }
+            videoUrl = link.getTargetUrl();
             
-            String contentType = connection.getContentType();
-            int contentLength = connection.getContentLength();
+            // 只请求1个字节，从Content-Range中读取文件大小
+            MediaMetadata probe = mp4MetadataService.getIfCached(videoUrl);
+            if (probe == null) {
+                probe = mp4MetadataService.probe(videoUrl);
+            }
+            String contentType = probe.getContentType();
+            long contentLength = probe.getContentLength() != null ? probe.getContentLength() : -1;
             
             // 构建返回信息
             java.util.Map<String, Object> info = new java.util.HashMap<>();
@@ -288,6 +377,70 @@ public class VideoProxyController {
         }
     }
 
+    /**
+     * 获取视频元数据（时长、分辨率、编码、码率），通过少量Range请求读取MP4的moov盒子
+     *
+     * @param videoUrl 代理链接或视频URL
+     * @return 媒体元数据
+     */
+    @GetMapping("/metadata")
+    public Result<MediaMetadata> getVideoMetadata(@RequestParam("url") String videoUrl) {
+        
+        if (!StringUtils.hasText(videoUrl)) {
+            return Result.error("视频URL不能为空");
+        }
+
+        try {
+            ProxyTokenService.ResolvedLink link = proxyTokenService.resolveProxyUrl(videoUrl);
+            if (!link.isValid()) {
+                return Result.error(link.getStatus().getHttpStatus().value(), "无效的视频链接");
+            }
+            return Result.success("获取成功", mp4MetadataService.getMetadata(link.getTargetUrl()));
+            
+        } catch (Exception e) {
+            log.error("获取视频元数据失败：{}", e.getMessage());
+            return Result.error("获取视频元数据失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 图集打包下载：并行下载解析记录中的全部图片，按下载完成顺序以ZIP流返回
+     *
+     * @param recordId 解析记录ID
+     * @param openId 用户openId，只能下载自己的解析记录
+     * @param response HTTP响应对象
+     */
+    @GetMapping("/atlas/{recordId}")
+    public void downloadAtlas(@PathVariable("recordId") Long recordId,
+                              @RequestParam("openId") String openId,
+                              HttpServletResponse response) {
+        
+        if (!StringUtils.hasText(openId)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        List<String> images = atlasService.getAtlasImages(recordId, openId);
+        if (images == null || images.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"atlas_" + recordId + ".zip\"");
+        response.setHeader("Cache-Control", "private, no-store");
+        response.setHeader("X-Atlas-Count", String.valueOf(images.size()));
+        
+        try (OutputStream outputStream = response.getOutputStream()) {
+            long startTime = System.currentTimeMillis();
+            int written = atlasService.writeZip(images, outputStream);
+            log.info("图集打包完成，记录：{}，图片：{}/{}，耗时：{}ms", recordId, written, images.size(),
+                    System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            log.warn("图集打包中断，记录：{}，错误：{}", recordId, e.getMessage());
+        }
+    }
+
     /**
      * 设置请求头以绕过防盗链
      *
@@ -296,9 +449,10 @@ public class VideoProxyController {
      * @param urlInfo URL预处理信息
      */
     private void setupRequestHeaders(URLConnection connection, String videoUrl, VideoUrlPreprocessor.VideoUrlInfo urlInfo) {
+        PlatformRegistry.PlatformProfile profile = platformRegistry.resolveUrl(videoUrl);
+        
         // 设置User-Agent
-        connection.setRequestProperty("User-Agent", 
-            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
+        connection.setRequestProperty("User-Agent", profile.getDownloadUserAgent());
         
         // 根据URL预处理结果设置合适的Referer
         String referer = null;
@@ -306,7 +460,7 @@ public class VideoProxyController {
             referer = urlInfo.getReferer();
             log.info("使用预处理的Referer：{}", referer);
         } else {
-            referer = getAppropriateReferer(videoUrl);
+            referer = getAppropriateReferer(profile, videoUrl);
             log.info("使用默认Referer：{}", referer);
         }
         
@@ -334,9 +488,10 @@ public class VideoProxyController {
      * @param contentLength 内容长度
      * @param videoUrl 视频URL
      * @param isRangeRequest 是否为Range请求
+     * @param maxAge 缓存时间（秒），不超过上游地址和代理令牌的剩余有效时间
      */
     private void setupResponseHeaders(HttpServletResponse response, String contentType, 
-                                    long contentLength, String videoUrl, boolean isRangeRequest) {
+                                    long contentLength, String videoUrl, boolean isRangeRequest, long maxAge) {
         
         // 设置内容类型
         if (StringUtils.hasText(contentType)) {
@@ -360,7 +515,7 @@ public class VideoProxyController {
         response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
         
         // 优化缓存控制（允许适当缓存以提高性能）
-        response.setHeader("Cache-Control", "public, max-age=3600");
+        response.setHeader("Cache-Control", "public, max-age=" + maxAge);
         response.setHeader("ETag", "\"" + videoUrl.hashCode() + "\"");
         
         // 支持跨域
@@ -372,22 +527,19 @@ public class VideoProxyController {
     /**
      * 根据视频URL获取合适的Referer
      *
+     * @param profile 平台配置
      * @param videoUrl 视频URL
      * @return Referer值
      */
-    private String getAppropriateReferer(String videoUrl) {
+    private String getAppropriateReferer(PlatformRegistry.PlatformProfile profile, String videoUrl) {
+        // 根据不同平台设置不同的Referer
+        if (profile.getDownloadReferer() != null) {
+            return profile.getDownloadReferer();
+        }
+        
         try {
-            URL url = new URL(videoUrl);
-            String host = url.getHost().toLowerCase();
-            
-            // 根据不同平台设置不同的Referer
-            for (String domain : PLATFORM_DOMAINS) {
-                if (host.contains(domain)) {
-                    return "https://" + domain + "/";
-                }
-            }
-            
             // 默认使用视频URL的域名作为Referer
+            URL url = new URL(videoUrl);
             return url.getProtocol() + "://" + url.getHost() + "/";
             
         } catch (Exception e) {
@@ -444,6 +596,308 @@ public class VideoProxyController {
         return false;
     }
     
+    /**
+     * 按faststart布局发送视频：ftyp和调整后的moov来自内存，其余数据按映射后的区间从上游读取。
+     * 完整下载时同步写入本地缓存，之后的请求直接顺序读取缓存文件。
+     * 上游签名地址过期时重新解析，布局一致才换用新地址继续发送
+     *
+     * @param layout 重排布局
+     * @param link 代理链接
+     * @param videoUrl 上游URL
+     * @param upstreamHeaders 回源请求头
+     * @param rangeHeader 客户端Range请求头，可为空
+     * @param response HTTP响应
+     * @param taskId 下载任务ID，可为空
+     * @throws IOException 读取上游或写出失败
+     */
+    private void serveFaststart(FaststartService.Layout layout, ProxyTokenService.ResolvedLink link, String videoUrl,
+                                Map<String, String> upstreamHeaders, String rangeHeader,
+                                HttpServletResponse response, String taskId) throws IOException {
+        long total = layout.getTotalSize();
+        long[] range = layout.resolveRange(rangeHeader);
+        if (range == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + total);
+            return;
+        }
+        long start = range[0];
+        long end = range[1];
+
+        // 先连接上游再发送响应头，上游签名地址过期时可以重新解析，换用新地址和对应的布局
+        long[] span = null;
+        InputStream inputStream = null;
+        long bodyStart = Math.max(start, layout.getHeadLength());
+        if (bodyStart <= end) {
+            span = layout.toSourceSpan(bodyStart, end);
+            HttpURLConnection connection = connectRange(videoUrl, upstreamHeaders, layout.getValidator(),
+                    span[0], span[1]);
+            int responseCode = connection.getResponseCode();
+            if (linkRefreshService.isExpiredResponse(responseCode)) {
+                connection.disconnect();
+                String freshUrl = linkRefreshService.refresh(link, videoUrl);
+                FaststartService.Layout freshLayout = freshUrl != null
+                        ? faststartService.prepare(link.getLinkId(), freshUrl) : null;
+                if (freshLayout == null || freshLayout.getTotalSize() != total
+                        || freshLayout.getHeadLength() != layout.getHeadLength()) {
+                    throw new IOException("上游地址已过期（" + responseCode + "），重新解析后无法按原布局发送");
+                }
+                log.info("上游地址已过期（{}），使用重新解析的地址重试", responseCode);
+                videoUrl = freshUrl;
+                layout = freshLayout;
+                connection = connectRange(videoUrl, upstreamHeaders, layout.getValidator(), span[0], span[1]);
+            }
+            inputStream = checkRangeResponse(connection, layout.getValidator(), total, span[0]);
+        }
+
+        if (StringUtils.hasText(rangeHeader)) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        setupResponseHeaders(response, layout.getContentType(), end - start + 1, videoUrl, rangeHeader != null,
+                urlExpiryExtractor.cacheMaxAge(videoUrl, link.getExpireAt(), DEFAULT_MAX_AGE_SECONDS));
+        
+        DownloadProgressService.DownloadProgress progress = null;
+        if (StringUtils.hasText(taskId)) {
+            progress = downloadProgressService.getProgress(taskId);
+            if (progress == null) {
+                progress = downloadProgressService.createDownloadTask(taskId, videoUrl, end - start + 1);
+            }
+        }
+        
+        MediaCacheService.CacheWriter cacheWriter = rangeHeader == null
+                ? mediaCacheService.openWriter(link.getLinkId(), layout.getContentType(), total) : null;
+        try (OutputStream outputStream = response.getOutputStream()) {
+            TransferSink sink = new TransferSink(outputStream, cacheWriter, taskId, progress != null);
+            faststartService.writeHead(layout, start, end, sink);
+            if (inputStream != null) {
+                streamWithResume(inputStream, videoUrl, upstreamHeaders, layout.getValidator(), total, span, sink);
+            }
+            
+            outputStream.flush();
+            log.info("faststart发送完成，区间：{}-{}，总大小：{} bytes", start, end, sink.totalBytes);
+            if (cacheWriter != null) {
+                cacheWriter.commit();
+            }
+            if (progress != null) {
+                downloadProgressService.updateProgress(taskId, sink.totalBytes);
+                downloadProgressService.markCompleted(taskId);
+            }
+        } catch (DownloadCancelledException e) {
+            log.info("下载已被用户取消: {}", taskId);
+            response.setStatus(HttpServletResponse.SC_REQUEST_TIMEOUT);
+        } finally {
+            if (inputStream != null) {
+                closeQuietly(inputStream);
+            }
+            if (cacheWriter != null) {
+                cacheWriter.abort();
+            }
+        }
+    }
+
+    /**
+     * 单连接传输，上游中途断开或数据不足时从已发送的位置发起Range请求续传，客户端连接保持不变
+     *
+     * @param inputStream 已连接的上游响应流
+     * @param videoUrl 上游URL
+     * @param upstreamHeaders 回源请求头
+     * @param validator 上游的ETag或Last-Modified，可为空
+     * @param totalSize 上游文件总大小，未知时小于等于0
+     * @param span 本次传输的字节区间，长度未知时为null（此时不续传）
+     * @param sink 数据接收方
+     * @throws IOException 续传次数用尽或写出失败
+     */
+    private void streamWithResume(InputStream inputStream, String videoUrl, Map<String, String> upstreamHeaders,
+                                  String validator, long totalSize, long[] span, TransferSink sink)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE]; // 使用512KB缓冲区
+        long expected = span != null ? span[1] - span[0] + 1 : -1;
+        long delivered = 0;
+        int resumes = 0;
+        try {
+            while (true) {
+                int bytesRead;
+                IOException readError = null;
+                try {
+                    bytesRead = inputStream.read(buffer);
+                } catch (IOException e) {
+                    bytesRead = -1;
+                    readError = e;
+                }
+                
+                if (bytesRead > 0) {
+                    sink.write(buffer, 0, bytesRead);
+                    delivered += bytesRead;
+                    continue;
+                }
+                if (bytesRead == 0) {
+                    continue;
+                }
+                
+                // 读到结尾：长度未知或已完整时正常结束
+                if (expected < 0 || delivered >= expected) {
+                    if (readError != null) {
+                        throw readError;
+                    }
+                    return;
+                }
+                if (resumes >= resumeMaxAttempts) {
+                    throw readError != null ? readError
+                            : new IOException("上游数据不完整，已接收" + delivered + "字节，期望" + expected + "字节");
+                }
+                
+                resumes++;
+                long resumeFrom = span[0] + delivered;
+                log.warn("上游连接中断，从第{}字节续传（第{}次）：{}", resumeFrom, resumes,
+                        readError != null ? readError.getMessage() : "数据不完整");
+                closeQuietly(inputStream);
+                inputStream = openResumeStream(videoUrl, upstreamHeaders, validator, totalSize, resumeFrom, span[1]);
+                if (StringUtils.hasText(sink.taskId)) {
+                    downloadProgressService.recordResume(sink.taskId, resumeFrom);
+                }
+            }
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * 发起续传请求，并确认上游返回的是同一文件的对应区间
+     */
+    private InputStream openResumeStream(String videoUrl, Map<String, String> upstreamHeaders, String validator,
+                                         long totalSize, long start, long end) throws IOException {
+        if (!StringUtils.hasText(validator) && totalSize <= 0) {
+            // 没有文件标识也不知道文件大小时无法确认是同一文件，不续传
+            throw new IOException("上游未提供ETag、Last-Modified和文件大小，无法续传");
+        }
+        return checkRangeResponse(connectRange(videoUrl, upstreamHeaders, validator, start, end),
+                validator, totalSize, start);
+    }
+
+    /**
+     * 发起Range请求并读取响应状态
+     */
+    private HttpURLConnection connectRange(String videoUrl, Map<String, String> upstreamHeaders, String validator,
+                                           long start, long end) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(videoUrl).openConnection();
+        for (Map.Entry<String, String> header : upstreamHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        if (StringUtils.hasText(validator)) {
+            // 文件已变化时上游返回200完整内容，续传失败
+            connection.setRequestProperty("If-Range", validator);
+        }
+        connection.setConnectTimeout(8000);
+        connection.setReadTimeout(60000);
+        connection.setInstanceFollowRedirects(true);
+        connection.setUseCaches(false);
+        connection.getResponseCode();
+        return connection;
+    }
+
+    /**
+     * 确认Range响应是同一文件的对应区间：起始位置一致，文件总大小一致，文件标识（如有）一致
+     */
+    private InputStream checkRangeResponse(HttpURLConnection connection, String validator, long totalSize, long start)
+            throws IOException {
+        int responseCode = connection.getResponseCode();
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL || contentRange == null
+                || !contentRange.startsWith("bytes " + start + "-")) {
+            connection.disconnect();
+            throw new IOException("续传失败，状态码：" + responseCode + "，Content-Range：" + contentRange);
+        }
+        if (totalSize > 0 && parseTotalSize(contentRange) != totalSize) {
+            connection.disconnect();
+            throw new IOException("续传失败，上游文件大小已变化，Content-Range：" + contentRange + "，原大小：" + totalSize);
+        }
+        String currentValidator = StringUtils.hasText(connection.getHeaderField("ETag"))
+                ? connection.getHeaderField("ETag") : connection.getHeaderField("Last-Modified");
+        if (StringUtils.hasText(validator) && StringUtils.hasText(currentValidator)
+                && !validator.equals(currentValidator)) {
+            connection.disconnect();
+            throw new IOException("续传失败，上游文件已变化");
+        }
+        return connection.getInputStream();
+    }
+
+    private void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.debug("关闭上游连接失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 复制回源请求头，供分段请求使用
+     *
+     * @param connection 尚未连接的URL连接
+     * @return 请求头
+     */
+    private Map<String, String> copyRequestHeaders(URLConnection connection) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : connection.getRequestProperties().entrySet()) {
+            if (entry.getKey() != null && !entry.getValue().isEmpty()) {
+                headers.put(entry.getKey(), entry.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * 根据上游响应确定本次需要传输的字节区间
+     *
+     * @param connection 已连接的URL连接
+     * @param responseCode 响应状态码
+     * @param contentLength 响应长度
+     * @return [start, end]（均包含），长度未知时返回null
+     */
+    private long[] resolveSpan(HttpURLConnection connection, int responseCode, long contentLength) {
+        if (contentLength <= 0) {
+            return null;
+        }
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            return new long[]{0, contentLength - 1};
+        }
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+            // Content-Range: bytes start-end/total
+            String contentRange = connection.getHeaderField("Content-Range");
+            if (contentRange != null && contentRange.startsWith("bytes ")) {
+                try {
+                    String[] bounds = contentRange.substring(6, contentRange.indexOf('/')).split("-");
+                    long start = Long.parseLong(bounds[0].trim());
+                    long end = Long.parseLong(bounds[1].trim());
+                    return end - start + 1 == contentLength ? new long[]{start, end} : null;
+                } catch (RuntimeException e) {
+                    log.warn("解析Content-Range失败: {}", contentRange);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析Content-Range中的文件总大小
+     *
+     * @param contentRange Content-Range响应头，如 bytes 0-99/1000
+     * @return 文件总大小，未知时返回-1
+     */
+    private static long parseTotalSize(String contentRange) {
+        int slash = contentRange != null ? contentRange.lastIndexOf('/') : -1;
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * 解析Range请求头
      *
@@ -475,15 +929,98 @@ public class VideoProxyController {
      */
     @GetMapping("/async-download")
     public CompletableFuture<Result<String>> asyncDownload(@RequestParam("url") String videoUrl) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 这里可以实现异步下载逻辑，比如预热缓存
-                log.info("开始异步预加载视频: {}", videoUrl);
-                return Result.success("异步下载已启动", videoUrl);
-            } catch (Exception e) {
-                log.error("异步下载失败: {}", e.getMessage(), e);
-                return Result.error("异步下载失败: " + e.getMessage());
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    // 这里可以实现异步下载逻辑，比如预热缓存
+                    log.info("开始异步预加载视频: {}", videoUrl);
+                    return Result.success("异步下载已启动", videoUrl);
+                } catch (Exception e) {
+                    log.error("异步下载失败: {}", e.getMessage(), e);
+                    return Result.error("异步下载失败: " + e.getMessage());
+                }
+            }, downloadExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("异步下载任务队列已满，已拒绝: {}", videoUrl);
+            return CompletableFuture.completedFuture(Result.error("服务繁忙，请稍后重试"));
+        }
+    }
+
+    /**
+     * 下载已被用户取消
+     */
+    private static class DownloadCancelledException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        DownloadCancelledException() {
+            super("下载已取消");
+        }
+    }
+
+    /**
+     * 向客户端和本地缓存写出数据，同时更新下载进度
+     */
+    private class TransferSink implements SegmentedFetchService.SegmentSink {
+        private final OutputStream outputStream;
+        private final MediaCacheService.CacheWriter cacheWriter;
+        private final String taskId;
+        private final boolean trackProgress;
+        private final long startTime = System.currentTimeMillis();
+        private long totalBytes;
+        private long lastLogTime = startTime;
+        private long lastProgressUpdate = startTime;
+        private long lastLogBytes;
+
+        TransferSink(OutputStream outputStream, MediaCacheService.CacheWriter cacheWriter,
+                     String taskId, boolean trackProgress) {
+            this.outputStream = outputStream;
+            this.cacheWriter = cacheWriter;
+            this.taskId = taskId;
+            this.trackProgress = trackProgress;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            // 检查是否已取消下载
+            if (StringUtils.hasText(taskId) && downloadProgressService.isCancelled(taskId)) {
+                throw new DownloadCancelledException();
             }
-        }, downloadExecutor);
+            
+            outputStream.write(buffer, offset, length);
+            if (cacheWriter != null) {
+                cacheWriter.write(buffer, offset, length);
+            }
+            totalBytes += length;
+            
+            long currentTime = System.currentTimeMillis();
+            
+            // 每1秒更新一次进度（进一步减少频率提高性能）
+            if (trackProgress && (currentTime - lastProgressUpdate > 1000)) {
+                downloadProgressService.updateProgress(taskId, totalBytes);
+                lastProgressUpdate = currentTime;
+            }
+            
+            // 每3秒记录一次日志
+            if (currentTime - lastLogTime > 3000) {
+                double totalMB = totalBytes / (1024.0 * 1024.0);
+                double intervalSeconds = (currentTime - lastLogTime) / 1000.0;
+                double intervalMB = (totalBytes - lastLogBytes) / (1024.0 * 1024.0);
+                double currentSpeed = intervalMB / intervalSeconds;
+                double avgSpeed = totalMB / ((currentTime - startTime) / 1000.0);
+                
+                log.debug("已传输 {} MB, 当前速度: {} MB/s, 平均速度: {} MB/s", 
+                        String.format("%.2f", totalMB),
+                        String.format("%.2f", currentSpeed),
+                        String.format("%.2f", avgSpeed));
+                
+                lastLogTime = currentTime;
+                lastLogBytes = totalBytes;
+            }
+            
+            // 每4MB刷新一次输出流（进一步减少频率）
+            if (totalBytes % (4 * 1024 * 1024) == 0) {
+                outputStream.flush();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,21 @@
 package com.video.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.video.common.Result;
+import com.video.service.InitConfigService;
 import com.video.service.WechatService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -24,6 +32,12 @@ public class WechatController {
     @Autowired
     private WechatService wechatService;
 
+    @Autowired
+    private InitConfigService initConfigService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * 微信小程序登录授权
      *
@@ -81,24 +95,35 @@ public class WechatController {
 
     /**
      * 获取小程序初始化配置
+     * 返回预先序列化的配置快照，请求携带的If-None-Match与当前ETag一致时返回304
      *
+     * @param request HTTP请求
      * @return 配置信息
      */
-    @PostMapping("/initConfig")
-    public Result<Object> initConfig() {
-        try {
-            Map<String, Object> result = wechatService.getInitConfig();
-            Integer status = (Integer) result.get("status");
-            
-            if (status != null && status == 1) {
-                return Result.success(result.get("data"));
-            } else {
-                return Result.error((String) result.get("msg"));
-            }
-        } catch (Exception e) {
-            log.error("获取小程序配置异常：{}", e.getMessage(), e);
-            return Result.error("获取配置失败");
+    @RequestMapping(value = "/initConfig", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<byte[]> initConfig(HttpServletRequest request) {
+        InitConfigService.ConfigSnapshot snapshot = initConfigService.getSnapshot();
+        if (snapshot == null) {
+            return jsonResponse(Result.error("获取配置失败"));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(snapshot.getEtag());
+        headers.setCacheControl(CacheControl.noCache());
+        headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+
+        // 配置未变化时直接返回304，不查询数据库也不序列化
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), snapshot.getEtag())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new ResponseEntity<>(snapshot.getGzipJson(), headers, HttpStatus.OK);
         }
+        return new ResponseEntity<>(snapshot.getJson(), headers, HttpStatus.OK);
     }
 
     /**
@@ -182,4 +207,31 @@ public class WechatController {
         }
         return request.getRemoteAddr();
     }
-}
\ No newline at end of file
+
+    /**
+     * 判断If-None-Match是否包含当前ETag
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (!StringUtils.hasText(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ResponseEntity<byte[]> jsonResponse(Result<?> result) {
+        try {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(objectMapper.writeValueAsBytes(result));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.video.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * 媒体文件元数据
+ * 通过少量Range请求读取MP4的ftyp和moov盒子得到，不下载文件内容
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MediaMetadata {
+
+    /**
+     * 内容类型
+     */
+    private String contentType;
+
+    /**
+     * 文件大小（字节）
+     */
+    private Long contentLength;
+
+    /**
+     * 主品牌（ftyp中的major_brand）
+     */
+    private String majorBrand;
+
+    /**
+     * 时长（秒）
+     */
+    private Double durationSeconds;
+
+    /**
+     * 视频宽度
+     */
+    private Integer width;
+
+    /**
+     * 视频高度
+     */
+    private Integer height;
+
+    /**
+     * 视频编码（stsd中的格式，如avc1、hvc1）
+     */
+    private String videoCodec;
+
+    /**
+     * 音频编码（如mp4a）
+     */
+    private String audioCodec;
+
+    /**
+     * 平均码率（bit/s）
+     */
+    private Long bitrate;
+
+    /**
+     * moov是否位于mdat之后（需要下载到文件末尾才能开始播放）
+     */
+    private Boolean moovAtEnd;
+
+    /**
+     * ftyp盒子大小（位于文件开头）
+     */
+    @JsonIgnore
+    private long ftypSize;
+
+    /**
+     * moov盒子在文件中的偏移
+     */
+    @JsonIgnore
+    private long moovOffset = -1;
+
+    /**
+     * moov盒子大小
+     */
+    @JsonIgnore
+    private long moovSize;
+}
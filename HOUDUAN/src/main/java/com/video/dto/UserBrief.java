@@ -0,0 +1,32 @@
+package com.video.dto;
+
+import lombok.Data;
+
+/**
+ * 用户精简信息
+ * 仅包含主键和状态，用于只需判断用户是否存在及是否可用的场景
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+public class UserBrief {
+
+    /**
+     * 用户ID
+     */
+    private Long id;
+
+    /**
+     * 用户状态：0-正常，1-禁用
+     */
+    private Integer status;
+
+    public UserBrief() {
+    }
+
+    public UserBrief(Long id, Integer status) {
+        this.id = id;
+        this.status = status;
+    }
+}
@@ -0,0 +1,108 @@
+package com.video.dto;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 视频解析数据
+ * 由去水印API响应直接反序列化，处理后原样序列化返回给客户端
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+public class VideoParseData {
+
+    /**
+     * 视频标题
+     */
+    private String title;
+
+    /**
+     * 视频链接
+     */
+    private String videoSrc;
+
+    /**
+     * 封面链接
+     */
+    private String imageSrc;
+
+    /**
+     * 图集链接
+     */
+    private List<String> imageAtlas;
+
+    /**
+     * URL预处理信息（预处理成功时返回）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private UrlInfo urlInfo;
+
+    /**
+     * 媒体元数据（已缓存时返回，包含准确的文件大小和时长）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private MediaMetadata mediaInfo;
+
+    /**
+     * 其他未声明的字段，原样透传给客户端
+     */
+    @Setter(AccessLevel.NONE)
+    private Map<String, Object> extra;
+
+    @JsonAnySetter
+    public void putExtra(String name, Object value) {
+        if (extra == null) {
+            extra = new LinkedHashMap<>();
+        }
+        extra.put(name, value);
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getExtra() {
+        return extra;
+    }
+
+    /**
+     * 复制解析数据，缓存的数据不会被后续处理修改
+     *
+     * @return 副本
+     */
+    public VideoParseData copy() {
+        VideoParseData copy = new VideoParseData();
+        copy.setTitle(title);
+        copy.setVideoSrc(videoSrc);
+        copy.setImageSrc(imageSrc);
+        copy.setImageAtlas(imageAtlas != null ? new ArrayList<>(imageAtlas) : null);
+        copy.setUrlInfo(urlInfo);
+        copy.setMediaInfo(mediaInfo);
+        if (extra != null) {
+            copy.extra = new LinkedHashMap<>(extra);
+        }
+        return copy;
+    }
+
+    /**
+     * URL预处理信息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UrlInfo {
+        private String host;
+        private boolean needsProxy;
+        private boolean accessible;
+    }
+}
@@ -0,0 +1,58 @@
+package com.video.dto;
+
+import lombok.Data;
+
+/**
+ * 视频解析结果
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+public class VideoParseResult {
+
+    /**
+     * 解析状态：1-成功，0-失败
+     */
+    private int status;
+
+    /**
+     * 提示信息
+     */
+    private String msg;
+
+    /**
+     * 解析数据（仅成功时返回）
+     */
+    private VideoParseData data;
+
+    public VideoParseResult() {
+    }
+
+    public VideoParseResult(int status, String msg, VideoParseData data) {
+        this.status = status;
+        this.msg = msg;
+        this.data = data;
+    }
+
+    /**
+     * 解析成功
+     */
+    public static VideoParseResult success(String msg, VideoParseData data) {
+        return new VideoParseResult(1, msg, data);
+    }
+
+    /**
+     * 解析失败
+     */
+    public static VideoParseResult failure(String msg) {
+        return new VideoParseResult(0, msg, null);
+    }
+
+    /**
+     * 是否解析成功
+     */
+    public boolean isSuccess() {
+        return status == 1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.video.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/**
+ * 去水印API响应
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WatermarkApiResponse {
+
+    /**
+     * 响应码：1-成功，其他为错误码
+     */
+    private String code;
+
+    /**
+     * 响应消息
+     */
+    private String msg;
+
+    /**
+     * 解析数据
+     */
+    private VideoParseData data;
+
+    /**
+     * 是否解析成功
+     */
+    public boolean isSuccess() {
+        return "1".equals(code) && data != null;
+    }
+}
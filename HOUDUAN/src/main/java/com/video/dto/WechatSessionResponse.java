@@ -0,0 +1,60 @@
+package com.video.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * 微信code2Session接口响应
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WechatSessionResponse {
+
+    /**
+     * 用户唯一标识
+     */
+    @JsonProperty("openid")
+    private String openId;
+
+    /**
+     * 会话密钥
+     */
+    @JsonProperty("session_key")
+    private String sessionKey;
+
+    /**
+     * 用户在开放平台的唯一标识
+     */
+    @JsonProperty("unionid")
+    private String unionId;
+
+    /**
+     * 错误码：0或为空表示成功
+     */
+    @JsonProperty("errcode")
+    private Integer errCode;
+
+    /**
+     * 错误信息
+     */
+    @JsonProperty("errmsg")
+    private String errMsg;
+
+    /**
+     * 是否调用成功
+     */
+    public boolean isSuccess() {
+        return (errCode == null || errCode == 0) && openId != null && !openId.isEmpty();
+    }
+
+    /**
+     * 是否为微信系统繁忙（可重试）
+     */
+    public boolean isBusy() {
+        return errCode != null && errCode == -1;
+    }
+}
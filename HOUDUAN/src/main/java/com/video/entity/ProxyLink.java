@@ -0,0 +1,57 @@
+package com.video.entity;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 代理链接实体类
+ * 保存代理令牌中短ID与上游资源地址的映射
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "t_proxy_link")
+public class ProxyLink extends BaseEntity {
+
+    /**
+     * 链接短ID
+     */
+    @Column(name = "link_id", nullable = false, unique = true, length = 32)
+    private String linkId;
+
+    /**
+     * 上游资源地址
+     */
+    @Column(name = "target_url", nullable = false, columnDefinition = "TEXT")
+    private String targetUrl;
+
+    /**
+     * 代理路由
+     */
+    @Column(name = "proxy_route", nullable = false, length = 32)
+    private String proxyRoute;
+
+    /**
+     * 解析记录ID，上游地址过期时据此重新解析
+     */
+    @Column(name = "record_id")
+    private Long recordId;
+
+    /**
+     * 对应解析结果中的字段：video-视频，cover-封面
+     */
+    @Column(name = "media_field", length = 16)
+    private String mediaField;
+
+    /**
+     * 过期时间
+     */
+    @Column(name = "expire_time", nullable = false)
+    private LocalDateTime expireTime;
+}
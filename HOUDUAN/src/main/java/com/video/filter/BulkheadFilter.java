@@ -0,0 +1,71 @@
+package com.video.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.common.Result;
+import com.video.common.TrafficClass;
+import com.video.service.BulkheadService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 舱壁隔离过滤器
+ * 按流量类别占用独立的并发名额，名额和等待队列都已满时返回503。
+ * 位于代理并发限制过滤器之前，使舱壁排队时间不计入自适应并发限制的延迟样本。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        TrafficClass trafficClass = TrafficClass.of(path);
+
+        boolean acquired;
+        try {
+            acquired = bulkheadService.tryAcquire(trafficClass);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            log.warn("{}类请求并发已满，已拒绝：{}", trafficClass.getCode(), path);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            objectMapper.writeValue(response.getOutputStream(),
+                    Result.error(HttpStatus.SERVICE_UNAVAILABLE.value(), "服务繁忙，请稍后重试"));
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            bulkheadService.release(trafficClass);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.video.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.common.Result;
+import com.video.common.TrafficClass;
+import com.video.service.AdaptiveConcurrencyLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * 代理请求并发限制过滤器
+ * 代理请求超过自适应并发上限时直接返回503，避免占满工作线程影响解析和登录接口。
+ * 延迟按开始输出响应体的时间计算，即上游响应所用的时间，不包含向客户端传输的时间。
+ * 位于舱壁过滤器之后，请求已占用舱壁名额才开始计时，舱壁排队时间不计入上游延迟。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 30)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (TrafficClass.of(path) != TrafficClass.PROXY) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!concurrencyLimiter.tryAcquire()) {
+            log.warn("代理请求超过并发上限，已拒绝：{}", path);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            objectMapper.writeValue(response.getOutputStream(),
+                    Result.error(HttpStatus.SERVICE_UNAVAILABLE.value(), "服务繁忙，请稍后重试"));
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        FirstByteResponseWrapper wrapper = new FirstByteResponseWrapper(response);
+        boolean failed = false;
+        try {
+            filterChain.doFilter(request, wrapper);
+        } catch (IOException | ServletException | RuntimeException e) {
+            failed = true;
+            throw e;
+        } finally {
+            long firstByteTime = wrapper.firstByteTime != 0 ? wrapper.firstByteTime : System.nanoTime();
+            // 出错或上游失败的请求不作为延迟样本
+            boolean sample = !failed && wrapper.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value();
+            concurrencyLimiter.release(sample ? firstByteTime - startTime : 0);
+        }
+    }
+
+    /**
+     * 记录首次获取输出流时间的响应包装
+     */
+    private static class FirstByteResponseWrapper extends HttpServletResponseWrapper {
+        private long firstByteTime;
+
+        FirstByteResponseWrapper(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            markFirstByte();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            markFirstByte();
+            return super.getWriter();
+        }
+
+        private void markFirstByte() {
+            if (firstByteTime == 0) {
+                firstByteTime = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.video.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.common.IpUtils;
+import com.video.common.Result;
+import com.video.common.TrafficClass;
+import com.video.service.RateLimitService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 请求限流过滤器
+ * 按流量类别对openId和客户端IP做滑动窗口限流，代理下载另外限制单个IP的并发数，超出时返回429
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private RateLimitService rateLimitService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        TrafficClass trafficClass = TrafficClass.of(path);
+        if (trafficClass == TrafficClass.OTHER) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String ip = IpUtils.getClientIpAddress(request);
+        String openId = trafficClass == TrafficClass.PROXY ? null : request.getParameter("openId");
+        int retryAfter = rateLimitService.tryAcquire(trafficClass, openId, ip);
+        if (retryAfter > 0) {
+            log.warn("请求过于频繁，类别：{}，用户：{}，IP：{}，路径：{}", trafficClass.getCode(), openId, ip, path);
+            reject(response, retryAfter);
+            return;
+        }
+
+        if (trafficClass != TrafficClass.PROXY) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!rateLimitService.tryAcquireProxy(ip)) {
+            log.warn("代理并发数超出限制，IP：{}，路径：{}", ip, path);
+            reject(response, 1);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            rateLimitService.releaseProxy(ip);
+        }
+    }
+
+    private void reject(HttpServletResponse response, int retryAfterSeconds) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getOutputStream(),
+                Result.error(HttpStatus.TOO_MANY_REQUESTS.value(), "请求过于频繁，请稍后再试"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.video.repository;
+
+import com.video.entity.ProxyLink;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * 代理链接Repository接口
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Repository
+public interface ProxyLinkRepository extends JpaRepository<ProxyLink, Long> {
+
+    /**
+     * 根据短ID查找代理链接
+     *
+     * @param linkId 链接短ID
+     * @param isDeleted 是否删除
+     * @return 代理链接
+     */
+    Optional<ProxyLink> findByLinkIdAndIsDeleted(String linkId, Integer isDeleted);
+
+    /**
+     * 根据短ID查找代理链接（默认未删除）
+     *
+     * @param linkId 链接短ID
+     * @return 代理链接
+     */
+    default Optional<ProxyLink> findByLinkId(String linkId) {
+        return findByLinkIdAndIsDeleted(linkId, 0);
+    }
+
+    /**
+     * 写入或更新代理链接（单条语句完成，并发写入同一短ID不会冲突）
+     * 在独立事务中执行：签发令牌时写库失败只影响本条链接，不会把调用方（如解析记录保存）的事务标记为回滚
+     *
+     * @param linkId 链接短ID
+     * @param targetUrl 上游资源地址
+     * @param proxyRoute 代理路由
+     * @param recordId 解析记录ID，为空时保留原值
+     * @param mediaField 解析结果字段，为空时保留原值
+     * @param expireTime 过期时间
+     * @param now 当前时间
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = "INSERT INTO t_proxy_link (link_id, target_url, proxy_route, record_id, media_field, expire_time, create_time, update_time, is_deleted) " +
+            "VALUES (:linkId, :targetUrl, :proxyRoute, :recordId, :mediaField, :expireTime, :now, :now, 0) " +
+            "ON DUPLICATE KEY UPDATE target_url = VALUES(target_url), proxy_route = VALUES(proxy_route), " +
+            "record_id = COALESCE(VALUES(record_id), record_id), media_field = COALESCE(VALUES(media_field), media_field), " +
+            "expire_time = GREATEST(expire_time, VALUES(expire_time)), update_time = VALUES(update_time), is_deleted = 0",
+            nativeQuery = true)
+    void upsert(@Param("linkId") String linkId,
+                @Param("targetUrl") String targetUrl,
+                @Param("proxyRoute") String proxyRoute,
+                @Param("recordId") Long recordId,
+                @Param("mediaField") String mediaField,
+                @Param("expireTime") LocalDateTime expireTime,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * 更新代理链接的上游地址（上游签名地址过期后重新解析得到的新地址），在独立事务中执行
+     *
+     * @param linkId 链接短ID
+     * @param targetUrl 新的上游资源地址
+     * @param now 当前时间
+     * @return 更新数量
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("UPDATE ProxyLink p SET p.targetUrl = :targetUrl, p.updateTime = :now WHERE p.linkId = :linkId")
+    int updateTargetUrl(@Param("linkId") String linkId,
+                        @Param("targetUrl") String targetUrl,
+                        @Param("now") LocalDateTime now);
+
+    /**
+     * 删除已过期的代理链接
+     *
+     * @param now 当前时间
+     * @return 删除数量
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProxyLink p WHERE p.expireTime < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -84,4 +85,12 @@ public interface SystemConfigRepository extends JpaRepository<SystemConfig, Long
     default List<SystemConfig> findAllEnabled() {
         return findByIsEnabledAndIsDeleted(1, 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * 查询配置的最新更新时间
+     *
+     * @return 最新更新时间，无配置时返回null
+     */
+    @Query("SELECT MAX(s.updateTime) FROM SystemConfig s")
+    LocalDateTime findLatestUpdateTime();
+}
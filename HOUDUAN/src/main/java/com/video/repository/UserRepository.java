@@ -1,11 +1,13 @@
 package com.video.repository;
 
+import com.video.dto.UserBrief;
 import com.video.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -37,6 +39,37 @@ public interface UserRepository extends JpaRepository<User, Long> {
         return findByOpenIdAndIsDeleted(openId, 0);
     }
 
+    /**
+     * 根据openId查询用户精简信息（仅主键和状态）
+     *
+     * @param openId 微信openId
+     * @return 用户精简信息
+     */
+    @Query("SELECT new com.video.dto.UserBrief(u.id, u.status) FROM User u WHERE u.openId = :openId AND u.isDeleted = 0")
+    Optional<UserBrief> findBriefByOpenId(@Param("openId") String openId);
+
+    /**
+     * 登录时写入用户（单条语句完成）
+     * 用户不存在时以默认值创建，已存在时只更新最后登录信息，并发首次登录同一openId不会产生唯一约束冲突
+     *
+     * @param openId 微信openId
+     * @param defaultPoints 新用户默认积分
+     * @param loginTime 登录时间
+     * @param loginIp 登录IP
+     * @return 影响行数：1-新建用户，2-更新已有用户
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO t_user (open_id, points, sign_in_count, continuous_sign_days, video_parse_count, status, " +
+            "today_signin, last_login_time, last_login_ip, create_time, update_time, is_deleted) " +
+            "VALUES (:openId, :defaultPoints, 0, 0, 0, 0, 0, :loginTime, :loginIp, :loginTime, :loginTime, 0) " +
+            "ON DUPLICATE KEY UPDATE last_login_time = VALUES(last_login_time), last_login_ip = VALUES(last_login_ip)",
+            nativeQuery = true)
+    int upsertOnLogin(@Param("openId") String openId,
+                      @Param("defaultPoints") Integer defaultPoints,
+                      @Param("loginTime") LocalDateTime loginTime,
+                      @Param("loginIp") String loginIp);
+
     /**
      * 更新用户最后登录信息
      *
@@ -69,6 +102,31 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("UPDATE User u SET u.videoParseCount = u.videoParseCount + 1 WHERE u.openId = :openId")
     void incrementVideoParseCount(@Param("openId") String openId);
 
+    /**
+     * 用户签到（单条条件更新完成）
+     * 仅当今天尚未签到时生效：昨天签到过则连续天数加1，否则重置为1，同时累加签到次数和积分。
+     * 连续天数的赋值必须在last_sign_time之前，MySQL按顺序使用已更新的列值。
+     *
+     * @param openId 微信openId
+     * @param points 签到奖励积分
+     * @param now 签到时间
+     * @param todayStart 今天零点
+     * @param yesterdayStart 昨天零点
+     * @return 影响行数：1-签到成功，0-今日已签到或用户不存在
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE t_user SET " +
+            "continuous_sign_days = CASE WHEN last_sign_time >= :yesterdayStart THEN continuous_sign_days + 1 ELSE 1 END, " +
+            "sign_in_count = sign_in_count + 1, points = points + :points, " +
+            "last_sign_time = :now, update_time = :now " +
+            "WHERE open_id = :openId AND is_deleted = 0 AND (last_sign_time IS NULL OR last_sign_time < :todayStart)",
+            nativeQuery = true)
+    int signIn(@Param("openId") String openId,
+               @Param("points") Integer points,
+               @Param("now") LocalDateTime now,
+               @Param("todayStart") LocalDateTime todayStart,
+               @Param("yesterdayStart") LocalDateTime yesterdayStart);
+
     /**
      * 更新用户签到信息
      *
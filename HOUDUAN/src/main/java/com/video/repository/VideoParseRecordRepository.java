@@ -82,4 +82,18 @@ public interface VideoParseRecordRepository extends JpaRepository<VideoParseReco
             @Param("parseStatus") Integer parseStatus,
             @Param("startTime") LocalDateTime startTime,
             @Param("isDeleted") Integer isDeleted);
-}
\ No newline at end of file
+
+    /**
+     * 按用户统计指定时间之后指定状态的解析次数
+     *
+     * @param startTime 开始时间
+     * @param parseStatus 解析状态
+     * @param isDeleted 是否删除
+     * @return 每行为[openId, 解析次数]
+     */
+    @Query("SELECT v.openId, COUNT(v) FROM VideoParseRecord v WHERE v.createTime >= :startTime AND v.parseStatus = :parseStatus AND v.isDeleted = :isDeleted GROUP BY v.openId")
+    List<Object[]> countGroupByOpenIdSince(
+            @Param("startTime") LocalDateTime startTime,
+            @Param("parseStatus") Integer parseStatus,
+            @Param("isDeleted") Integer isDeleted);
+}
@@ -0,0 +1,160 @@
+package com.video.service;
+
+import com.video.common.TrafficClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 代理请求自适应并发限制
+ * 采用梯度算法：分别维护短期和长期的平均响应延迟，短期延迟明显高于长期延迟时说明上游开始排队，按比例收缩并发上限；
+ * 延迟平稳且并发接近上限时逐步放大上限。上限最大不超过Tomcat工作线程数减去为解析和登录接口保留的数量，
+ * 也不超过代理类别的舱壁名额（超出舱壁名额的请求在舱壁排队或被拒绝，放大到更高的上限没有意义）。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Value("${proxy.concurrency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.concurrency.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${proxy.concurrency.min-limit:4}")
+    private int minLimit;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatMaxThreads;
+
+    @Value("${proxy.concurrency.reserved-threads:40}")
+    private int reservedThreads;
+
+    @Value("${proxy.concurrency.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${proxy.concurrency.long-window:600}")
+    private int longWindow;
+
+    // 代理请求可使用的最大并发数
+    private int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder rejected = new LongAdder();
+
+    // 当前并发上限
+    private volatile double limit;
+
+    // 短期和长期的平均延迟（纳秒）
+    private double shortRtt;
+    private double longRtt;
+
+    @PostConstruct
+    public void init() {
+        int bulkheadLimit = bulkheadService.getMaxConcurrent(TrafficClass.PROXY);
+        maxLimit = Math.max(minLimit, Math.min(tomcatMaxThreads - reservedThreads, bulkheadLimit));
+        limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+        log.info("代理并发限制初始化，初始上限：{}，最大上限：{}（保留{}个线程，舱壁名额{}）", (int) limit, maxLimit,
+                reservedThreads, bulkheadLimit == Integer.MAX_VALUE ? "不限" : bulkheadLimit);
+    }
+
+    /**
+     * 尝试占用一个并发名额
+     *
+     * @return 是否占用成功，成功后必须调用release
+     */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放并发名额并记录延迟样本
+     *
+     * @param rttNanos 请求延迟（纳秒），小于等于0时不参与计算
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        if (enabled && rttNanos > 0) {
+            onSample(rttNanos, current);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 当前上限、进行中的请求数和拒绝数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("limit", (int) limit);
+        stats.put("maxLimit", maxLimit);
+        stats.put("inFlight", inFlight.get());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    /**
+     * 根据延迟样本调整并发上限
+     */
+    private synchronized void onSample(long rttNanos, int inFlightAtRelease) {
+        if (longRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            return;
+        }
+
+        // 短期延迟跟随最近的请求，长期延迟作为无排队时的基准
+        shortRtt = shortRtt * 0.9 + rttNanos * 0.1;
+        longRtt = longRtt * (1 - 1.0 / longWindow) + rttNanos * (1.0 / longWindow);
+
+        // 长期延迟远高于短期延迟时（上游恢复），让基准更快下降
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // 并发明显低于上限时说明上限不是瓶颈，不再放大
+        double currentLimit = limit;
+        if (inFlightAtRelease < currentLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+        double queueSize = Math.sqrt(currentLimit);
+        double newLimit = currentLimit * gradient + queueSize;
+        newLimit = currentLimit * (1 - smoothing) + newLimit * smoothing;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        if ((int) newLimit != (int) currentLimit) {
+            log.debug("代理并发上限调整：{} -> {}，短期延迟：{}ms，长期延迟：{}ms", (int) currentLimit, (int) newLimit,
+                    (long) (shortRtt / 1_000_000), (long) (longRtt / 1_000_000));
+        }
+        limit = newLimit;
+    }
+}
@@ -0,0 +1,296 @@
+package com.video.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.entity.VideoParseRecord;
+import com.video.repository.VideoParseRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 图集打包服务
+ * 按解析记录并行下载图集中的图片（每个请求同时下载的数量有上限），按下载完成的顺序写入ZIP流，
+ * 内存中最多暂存并发数量的图片。单张图片按上游地址缓存，重复打包或多人下载同一图集时不再回源。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class AtlasService {
+
+    @Autowired
+    @Qualifier("proxyRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    private VideoParseRecordRepository videoParseRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("atlasExecutor")
+    private TaskExecutor atlasExecutor;
+
+    @Value("${proxy.atlas.parallelism:6}")
+    private int parallelism;
+
+    @Value("${proxy.atlas.max-images:100}")
+    private int maxImages;
+
+    @Value("${proxy.atlas.image-cache-mb:128}")
+    private long imageCacheMb;
+
+    @Value("${proxy.atlas.image-cache-minutes:30}")
+    private long imageCacheMinutes;
+
+    @Value("${proxy.atlas.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    // key：图片上游地址的稳定短ID，value：图片
+    private Cache<String, AtlasImage> imageCache;
+
+    private final LongAdder bundles = new LongAdder();
+    private final LongAdder imagesFetched = new LongAdder();
+    private final LongAdder imageFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        imageCache = Caffeine.newBuilder()
+                .maximumWeight(imageCacheMb * 1024 * 1024)
+                .weigher((String key, AtlasImage image) -> image.data.length)
+                .expireAfterWrite(imageCacheMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取用户解析记录中的图集地址
+     *
+     * @param recordId 解析记录ID
+     * @param openId 用户openId，必须与记录所属用户一致
+     * @return 图集地址，记录不存在、不属于该用户或没有图集时返回null
+     */
+    public List<String> getAtlasImages(Long recordId, String openId) {
+        Optional<VideoParseRecord> record = videoParseRecordRepository.findById(recordId);
+        if (!record.isPresent() || !openId.equals(record.get().getOpenId())
+                || !StringUtils.hasText(record.get().getImageAtlas())) {
+            return null;
+        }
+        try {
+            List<String> images = objectMapper.readValue(record.get().getImageAtlas(),
+                    new TypeReference<List<String>>() {});
+            return images.size() > maxImages ? images.subList(0, maxImages) : images;
+        } catch (IOException e) {
+            log.warn("解析图集失败，记录：{}，错误：{}", recordId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 并行下载图集并按完成顺序写入ZIP，文件名按图集顺序编号
+     *
+     * @param images 图片地址
+     * @param outputStream 输出流
+     * @return 成功写入的图片数量
+     * @throws IOException 写出失败或等待下载超时
+     */
+    public int writeZip(List<String> images, OutputStream outputStream) throws IOException {
+        bundles.increment();
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        CompletionService<AtlasImage> completion = new ExecutorCompletionService<>(atlasExecutor);
+        int digits = String.valueOf(images.size()).length();
+        int next = 0;
+        int pending = 0;
+        int written = 0;
+
+        while (next < images.size() || pending > 0) {
+            // 保持最多parallelism张图片同时下载
+            while (pending < parallelism && next < images.size()) {
+                int index = next++;
+                String url = images.get(index);
+                try {
+                    completion.submit(() -> load(index, url));
+                    pending++;
+                } catch (RejectedExecutionException e) {
+                    // 线程池已满时在当前线程下载
+                    written += writeEntry(zip, load(index, url), digits);
+                }
+            }
+            if (pending == 0) {
+                continue;
+            }
+
+            Future<AtlasImage> done;
+            try {
+                done = completion.poll(waitTimeoutMs, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    throw new IOException("等待图集图片下载超时");
+                }
+                pending--;
+                written += writeEntry(zip, done.get(), digits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("图集打包被中断");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        zip.finish();
+        return written;
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 打包次数、图片缓存命中率
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("bundles", bundles.sum());
+        stats.put("cachedImages", imageCache.estimatedSize());
+        stats.put("hitRate", imageCache.stats().hitRate());
+        stats.put("imagesFetched", imagesFetched.sum());
+        stats.put("imageFailures", imageFailures.sum());
+        return stats;
+    }
+
+    /**
+     * 下载单张图片，失败时返回不含数据的结果，不影响其他图片
+     */
+    private AtlasImage load(int index, String url) {
+        String key = ProxyTokenService.stableLinkId(url);
+        AtlasImage cached = imageCache.getIfPresent(key);
+        if (cached != null) {
+            return cached.withIndex(index);
+        }
+        try {
+            // 按域名识别平台，设置对应的User-Agent和Referer
+            PlatformRegistry.PlatformProfile profile = platformRegistry.resolveHost(new URL(url).getHost());
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("User-Agent", profile.getUserAgent());
+            headers.set("Accept", "image/*,*/*;q=0.8");
+            if (profile.getReferer() != null) {
+                headers.set("Referer", profile.getReferer());
+            }
+            ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET,
+                    new HttpEntity<>(headers), byte[].class);
+            if (response.getBody() == null || response.getBody().length == 0) {
+                throw new IOException("上游返回空内容");
+            }
+            String contentType = response.getHeaders().getContentType() != null
+                    ? response.getHeaders().getContentType().toString() : null;
+            AtlasImage image = new AtlasImage(0, response.getBody(), extensionOf(contentType, url));
+            imageCache.put(key, image);
+            imagesFetched.increment();
+            return image.withIndex(index);
+        } catch (Exception e) {
+            imageFailures.increment();
+            log.warn("下载图集图片失败，第{}张，错误：{}", index + 1, e.getMessage());
+            return new AtlasImage(index, null, null);
+        }
+    }
+
+    private int writeEntry(ZipOutputStream zip, AtlasImage image, int digits) throws IOException {
+        if (image.data == null) {
+            return 0;
+        }
+        // 图片已压缩，不再压缩，直接存储
+        CRC32 crc = new CRC32();
+        crc.update(image.data);
+        ZipEntry entry = new ZipEntry(String.format("%0" + digits + "d.%s", image.index + 1, image.extension));
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(image.data.length);
+        entry.setCompressedSize(image.data.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(image.data);
+        zip.closeEntry();
+        zip.flush();
+        return 1;
+    }
+
+    private static String extensionOf(String contentType, String url) {
+        String type = contentType != null ? contentType.toLowerCase() : "";
+        if (type.contains("png")) {
+            return "png";
+        }
+        if (type.contains("webp")) {
+            return "webp";
+        }
+        if (type.contains("gif")) {
+            return "gif";
+        }
+        if (type.contains("heic") || type.contains("heif")) {
+            return "heic";
+        }
+        if (type.contains("jpeg") || type.contains("jpg")) {
+            return "jpg";
+        }
+        String path = url.toLowerCase();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        for (String extension : new String[]{"png", "webp", "gif", "heic", "jpeg"}) {
+            if (path.endsWith("." + extension)) {
+                return "jpeg".equals(extension) ? "jpg" : extension;
+            }
+        }
+        return "jpg";
+    }
+
+    /**
+     * 图集中的一张图片
+     */
+    private static class AtlasImage {
+        private final int index;
+        private final byte[] data;
+        private final String extension;
+
+        AtlasImage(int index, byte[] data, String extension) {
+            this.index = index;
+            this.data = data;
+            this.extension = extension;
+        }
+
+        AtlasImage withIndex(int index) {
+            return new AtlasImage(index, data, extension);
+        }
+    }
+}
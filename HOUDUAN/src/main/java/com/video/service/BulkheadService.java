@@ -0,0 +1,204 @@
+package com.video.service;
+
+import com.video.common.TrafficClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按流量类别隔离的并发舱壁
+ * 解析、代理、登录和进度查询各自拥有独立的并发名额和有界等待队列，某一类请求堆积时只会在本类别内排队或被拒绝，
+ * 不会占满Tomcat的全部工作线程。同时统计每个类别的排队时间。
+ * 排队的请求同样占用工作线程，因此启动时校验所有类别的并发名额与队列长度之和不超过Tomcat最大线程数减去保留线程数。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class BulkheadService {
+
+    @Value("${bulkhead.enabled:true}")
+    private boolean enabled;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatMaxThreads;
+
+    @Value("${bulkhead.reserved-threads:20}")
+    private int reservedThreads;
+
+    @Value("${bulkhead.parse.max-concurrent:30}")
+    private int parseMaxConcurrent;
+
+    @Value("${bulkhead.parse.max-queue:20}")
+    private int parseMaxQueue;
+
+    @Value("${bulkhead.parse.max-wait-ms:2000}")
+    private long parseMaxWaitMs;
+
+    @Value("${bulkhead.proxy.max-concurrent:80}")
+    private int proxyMaxConcurrent;
+
+    @Value("${bulkhead.proxy.max-queue:10}")
+    private int proxyMaxQueue;
+
+    @Value("${bulkhead.proxy.max-wait-ms:500}")
+    private long proxyMaxWaitMs;
+
+    @Value("${bulkhead.auth.max-concurrent:15}")
+    private int authMaxConcurrent;
+
+    @Value("${bulkhead.auth.max-queue:10}")
+    private int authMaxQueue;
+
+    @Value("${bulkhead.auth.max-wait-ms:2000}")
+    private long authMaxWaitMs;
+
+    @Value("${bulkhead.progress.max-concurrent:10}")
+    private int progressMaxConcurrent;
+
+    @Value("${bulkhead.progress.max-queue:5}")
+    private int progressMaxQueue;
+
+    @Value("${bulkhead.progress.max-wait-ms:500}")
+    private long progressMaxWaitMs;
+
+    private final Map<TrafficClass, Bulkhead> bulkheads = new EnumMap<>(TrafficClass.class);
+
+    @PostConstruct
+    public void init() {
+        bulkheads.put(TrafficClass.PARSE, new Bulkhead(parseMaxConcurrent, parseMaxQueue, parseMaxWaitMs));
+        bulkheads.put(TrafficClass.PROXY, new Bulkhead(proxyMaxConcurrent, proxyMaxQueue, proxyMaxWaitMs));
+        bulkheads.put(TrafficClass.AUTH, new Bulkhead(authMaxConcurrent, authMaxQueue, authMaxWaitMs));
+        bulkheads.put(TrafficClass.PROGRESS, new Bulkhead(progressMaxConcurrent, progressMaxQueue, progressMaxWaitMs));
+
+        int threads = 0;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            threads += bulkhead.maxConcurrent + bulkhead.maxQueue;
+        }
+        int budget = tomcatMaxThreads - reservedThreads;
+        if (enabled && threads > budget) {
+            throw new IllegalStateException("舱壁并发名额与队列长度之和（" + threads + "）超过可用工作线程数（"
+                    + tomcatMaxThreads + " - 保留" + reservedThreads + " = " + budget + "）");
+        }
+        log.info("舱壁隔离初始化，各类别最多占用{}个工作线程，可用{}个", threads, budget);
+    }
+
+    /**
+     * 占用指定类别的并发名额，名额已满时在有界队列中等待
+     *
+     * @param trafficClass 流量类别
+     * @return 是否占用成功，成功后必须调用release
+     */
+    public boolean tryAcquire(TrafficClass trafficClass) throws InterruptedException {
+        Bulkhead bulkhead = bulkheads.get(trafficClass);
+        return !enabled || bulkhead == null || bulkhead.tryAcquire();
+    }
+
+    /**
+     * 获取指定类别的并发名额
+     *
+     * @param trafficClass 流量类别
+     * @return 并发名额，未启用舱壁或类别不受限时返回Integer.MAX_VALUE
+     */
+    public int getMaxConcurrent(TrafficClass trafficClass) {
+        Bulkhead bulkhead = bulkheads.get(trafficClass);
+        return enabled && bulkhead != null ? bulkhead.maxConcurrent : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 释放指定类别的并发名额
+     *
+     * @param trafficClass 流量类别
+     */
+    public void release(TrafficClass trafficClass) {
+        Bulkhead bulkhead = bulkheads.get(trafficClass);
+        if (enabled && bulkhead != null) {
+            bulkhead.permits.release();
+        }
+    }
+
+    /**
+     * 获取各类别的并发和排队统计
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<TrafficClass, Bulkhead> entry : bulkheads.entrySet()) {
+            Bulkhead bulkhead = entry.getValue();
+            long acquired = bulkhead.acquired.sum();
+            Map<String, Object> classStats = new HashMap<>();
+            classStats.put("maxConcurrent", bulkhead.maxConcurrent);
+            classStats.put("inFlight", bulkhead.maxConcurrent - bulkhead.permits.availablePermits());
+            classStats.put("queued", bulkhead.waiting.get());
+            classStats.put("acquired", acquired);
+            classStats.put("rejected", bulkhead.rejected.sum());
+            classStats.put("avgQueueMs", acquired > 0 ? bulkhead.queueNanos.sum() / acquired / 1_000_000.0 : 0);
+            classStats.put("maxQueueMs", bulkhead.maxQueueNanos.get() / 1_000_000.0);
+            stats.put(entry.getKey().getCode(), classStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 单个类别的舱壁
+     */
+    private static class Bulkhead {
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final long maxWaitMs;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+
+        Bulkhead(int maxConcurrent, int maxQueue, long maxWaitMs) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxWaitMs = maxWaitMs;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+        boolean tryAcquire() throws InterruptedException {
+            if (permits.tryAcquire()) {
+                acquired.increment();
+                return true;
+            }
+
+            // 等待队列已满时直接拒绝
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            long start = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                    rejected.increment();
+                    return false;
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+
+            long queued = System.nanoTime() - start;
+            acquired.increment();
+            queueNanos.add(queued);
+            maxQueueNanos.accumulateAndGet(queued, Math::max);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.video.service;
+
+import com.video.repository.VideoParseRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每日解析次数限制
+ * 按openId在内存中计数，调用外部解析API前O(1)检查并占用次数，零点切换到新的一天。
+ * 只有解析成功才计入次数：解析失败或系统异常时归还占用的次数，重启时按当天解析成功且未删除的记录恢复计数。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class DailyParseQuota {
+
+    /**
+     * system_config中的配置键
+     */
+    public static final String CONFIG_KEY = "max_daily_parse_count";
+
+    @Autowired
+    private InitConfigService initConfigService;
+
+    @Autowired
+    private VideoParseRecordRepository videoParseRecordRepository;
+
+    @Value("${business.parse.max-daily-count:50}")
+    private int defaultLimit;
+
+    // 当天的计数，跨天时整体替换
+    private volatile DayCounters current;
+
+    @PostConstruct
+    public void init() {
+        current = new DayCounters(LocalDate.now());
+        try {
+            recover();
+        } catch (Exception e) {
+            log.warn("恢复每日解析计数失败，从0开始计数：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 尝试占用一次解析次数
+     *
+     * @param openId 用户openId
+     * @return 是否占用成功，当天次数已用完返回false
+     */
+    public boolean tryAcquire(String openId) {
+        int limit = getLimit();
+        if (limit <= 0 || !StringUtils.hasText(openId)) {
+            return true;
+        }
+
+        AtomicInteger counter = counters().get(openId);
+        while (true) {
+            int used = counter.get();
+            if (used >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(used, used + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还一次占用的解析次数，解析失败或系统异常时调用
+     *
+     * @param openId 用户openId
+     */
+    public void release(String openId) {
+        if (!StringUtils.hasText(openId)) {
+            return;
+        }
+        AtomicInteger counter = counters().counts.get(openId);
+        if (counter == null) {
+            return;
+        }
+        // 占用后跨天时新一天可能没有计数，不减到负数
+        while (true) {
+            int used = counter.get();
+            if (used <= 0 || counter.compareAndSet(used, used - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取用户当天已使用的解析次数
+     *
+     * @param openId 用户openId
+     * @return 已使用次数
+     */
+    public int getUsed(String openId) {
+        AtomicInteger counter = counters().counts.get(openId);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * 获取每日解析次数上限，优先使用system_config中的配置，小于等于0表示不限制
+     *
+     * @return 次数上限
+     */
+    public int getLimit() {
+        InitConfigService.ConfigSnapshot snapshot = initConfigService.getSnapshot();
+        Object value = snapshot != null ? snapshot.getData().get(CONFIG_KEY) : null;
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                log.debug("max_daily_parse_count配置无效：{}", value);
+            }
+        }
+        return defaultLimit;
+    }
+
+    /**
+     * 零点切换到新的一天
+     */
+    @Scheduled(cron = "0 0 0 * * ?")
+    public void rollover() {
+        counters();
+    }
+
+    /**
+     * 根据当天解析成功的记录恢复计数
+     */
+    private void recover() {
+        DayCounters counters = current;
+        List<Object[]> rows = videoParseRecordRepository.countGroupByOpenIdSince(counters.day.atStartOfDay(), 1, 0);
+        for (Object[] row : rows) {
+            counters.counts.put((String) row[0], new AtomicInteger(((Number) row[1]).intValue()));
+        }
+        log.info("已恢复每日解析计数，用户数：{}", rows.size());
+    }
+
+    private DayCounters counters() {
+        DayCounters counters = current;
+        if (System.currentTimeMillis() < counters.endMillis) {
+            return counters;
+        }
+        synchronized (this) {
+            if (System.currentTimeMillis() >= current.endMillis) {
+                current = new DayCounters(LocalDate.now());
+                log.info("每日解析计数已切换到：{}", current.day);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 某一天的计数
+     */
+    private static class DayCounters {
+        private final LocalDate day;
+        private final long endMillis;
+        private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+        DayCounters(LocalDate day) {
+            this.day = day;
+            LocalDateTime nextDay = day.plusDays(1).atStartOfDay();
+            this.endMillis = nextDay.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        AtomicInteger get(String openId) {
+            AtomicInteger counter = counts.get(openId);
+            return counter != null ? counter : counts.computeIfAbsent(openId, key -> new AtomicInteger());
+        }
+    }
+}
@@ -112,6 +112,20 @@ public class DownloadProgressService {
         }
     }
 
+    /**
+     * 记录一次上游断线续传
+     *
+     * @param taskId 任务ID
+     * @param resumeFrom 续传起始字节
+     */
+    public void recordResume(String taskId, long resumeFrom) {
+        DownloadProgress progress = progressMap.get(taskId);
+        if (progress != null) {
+            progress.setResumeCount(progress.getResumeCount() + 1);
+            log.info("下载任务上游断线续传: {}, 第{}次, 起始字节: {}", taskId, progress.getResumeCount(), resumeFrom);
+        }
+    }
+
     /**
      * 取消下载任务
      *
@@ -193,6 +207,7 @@ public class DownloadProgressService {
         private long endTime;
         private long lastUpdateTime;
         private String errorMessage;
+        private int resumeCount; // 上游断线续传次数
         
         /**
          * 获取下载百分比
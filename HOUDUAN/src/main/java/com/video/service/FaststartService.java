@@ -0,0 +1,276 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.common.Mp4Parser;
+import com.video.dto.MediaMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MP4 faststart重排服务
+ * moov位于文件末尾的MP4，播放器要先读到文件末尾才能开始播放。代理按 [ftyp][moov][ftyp与moov之间的数据]
+ * 的布局发送，moov中的chunk偏移统一加上moov大小；文件总大小不变，任意Range都可以映射回上游区间。
+ * 重排布局（ftyp和调整后的moov）按链接缓存，同一链接的所有请求使用同一布局；链接的上游地址变化后重新生成。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class FaststartService {
+
+    @Autowired
+    private Mp4MetadataService mp4MetadataService;
+
+    @Value("${proxy.faststart.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.faststart.max-moov-size-mb:8}")
+    private int maxMoovSizeMb;
+
+    @Value("${proxy.faststart.layout-cache-mb:128}")
+    private long layoutCacheMb;
+
+    @Value("${proxy.faststart.cache-ttl-hours:6}")
+    private long cacheTtlHours;
+
+    @Value("${proxy.faststart.skip-ttl-minutes:10}")
+    private long skipTtlMinutes;
+
+    // key：代理链接ID，value：重排布局
+    private Cache<String, Layout> layoutCache;
+
+    // 不需要或无法重排的链接，避免每次请求都读取元数据；value：检测时的上游地址
+    private Cache<String, String> skipCache;
+
+    private final LongAdder remuxed = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        layoutCache = Caffeine.newBuilder()
+                .maximumWeight(layoutCacheMb * 1024 * 1024)
+                .weigher((String key, Layout layout) -> layout.header.length + layout.moov.length)
+                .expireAfterAccess(cacheTtlHours, TimeUnit.HOURS)
+                .recordStats()
+                .build();
+        skipCache = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(skipTtlMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 获取链接的faststart布局，moov不在末尾或无法重排时返回null
+     *
+     * @param linkId 代理链接ID
+     * @param targetUrl 上游地址
+     * @return 重排布局
+     */
+    public Layout prepare(String linkId, String targetUrl) {
+        if (!enabled) {
+            return null;
+        }
+        Layout layout = layoutCache.getIfPresent(linkId);
+        if (layout != null && layout.targetUrl.equals(targetUrl)) {
+            return layout;
+        }
+        if (layout == null && targetUrl.equals(skipCache.getIfPresent(linkId))) {
+            return null;
+        }
+        // 上游地址已重新解析，旧布局可能对应另一个文件
+        invalidate(linkId);
+        layout = null;
+        try {
+            layout = buildLayout(targetUrl);
+        } catch (IOException e) {
+            log.debug("读取moov失败，不重排：{}", e.getMessage());
+        }
+        if (layout == null) {
+            skipCache.put(linkId, targetUrl);
+            return null;
+        }
+        layoutCache.put(linkId, layout);
+        remuxed.increment();
+        log.info("moov位于文件末尾，按faststart布局发送：{}，moov大小：{} bytes", linkId, layout.moov.length);
+        return layout;
+    }
+
+    /**
+     * 移除链接的布局和检测结果
+     *
+     * @param linkId 代理链接ID
+     */
+    public void invalidate(String linkId) {
+        layoutCache.invalidate(linkId);
+        skipCache.invalidate(linkId);
+    }
+
+    /**
+     * 发送布局中位于内存的部分（ftyp和moov），返回下一个需要发送的位置
+     *
+     * @param layout 重排布局
+     * @param start 起始位置（含）
+     * @param end 结束位置（含）
+     * @param sink 数据接收方
+     * @return 下一个需要从上游读取的位置，大于end时表示已发送完毕
+     * @throws IOException 写出失败
+     */
+    public long writeHead(Layout layout, long start, long end, SegmentedFetchService.SegmentSink sink)
+            throws IOException {
+        long position = start;
+        int headerLength = layout.header.length;
+        if (position < headerLength && position <= end) {
+            int length = (int) (Math.min(end + 1, headerLength) - position);
+            sink.write(layout.header, (int) position, length);
+            position += length;
+        }
+        long moovEnd = headerLength + layout.moov.length;
+        if (position < moovEnd && position <= end) {
+            int length = (int) (Math.min(end + 1, moovEnd) - position);
+            sink.write(layout.moov, (int) (position - headerLength), length);
+            position += length;
+        }
+        return position;
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 布局缓存数量和命中率
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("layouts", layoutCache.estimatedSize());
+        stats.put("hitRate", layoutCache.stats().hitRate());
+        stats.put("remuxed", remuxed.sum());
+        return stats;
+    }
+
+    private Layout buildLayout(String targetUrl) throws IOException {
+        MediaMetadata metadata = mp4MetadataService.getMetadata(targetUrl);
+        Long totalSize = metadata.getContentLength();
+        long ftypSize = metadata.getFtypSize();
+        long moovOffset = metadata.getMoovOffset();
+        long moovSize = metadata.getMoovSize();
+        // 只处理moov是最后一个盒子的文件，其余数据整体后移moov大小
+        if (!Boolean.TRUE.equals(metadata.getMoovAtEnd()) || totalSize == null || ftypSize <= 0
+                || moovOffset <= ftypSize || moovOffset + moovSize != totalSize
+                || moovSize > maxMoovSizeMb * 1024L * 1024L) {
+            return null;
+        }
+
+        Mp4MetadataService.RangeData header = mp4MetadataService.readRange(targetUrl, 0, ftypSize - 1);
+        Mp4MetadataService.RangeData moov = mp4MetadataService.readRange(targetUrl, moovOffset, totalSize - 1);
+        if (header.getLength() < ftypSize || moov.getLength() < moovSize) {
+            throw new IOException("ftyp或moov数据不完整");
+        }
+        byte[] moovData = moov.getData();
+        if (!Mp4Parser.shiftChunkOffsets(moovData, moovSize)) {
+            log.info("chunk偏移超出32位范围，不重排：{}", targetUrl);
+            return null;
+        }
+        return new Layout(targetUrl, header.getData(), moovData, totalSize, metadata.getContentType(),
+                moov.getValidator());
+    }
+
+    /**
+     * faststart布局
+     * 重排后的位置p：p < ftyp大小时来自header，其后moov大小的部分来自moov，再之后对应上游的 p - moov大小
+     */
+    public static class Layout {
+        private final String targetUrl;
+        private final byte[] header;
+        private final byte[] moov;
+        private final long totalSize;
+        private final String contentType;
+        private final String validator;
+
+        Layout(String targetUrl, byte[] header, byte[] moov, long totalSize, String contentType, String validator) {
+            this.targetUrl = targetUrl;
+            this.header = header;
+            this.moov = moov;
+            this.totalSize = totalSize;
+            this.contentType = contentType;
+            this.validator = validator;
+        }
+
+        /**
+         * 将重排后的区间映射为上游区间（区间必须位于moov之后）
+         *
+         * @param start 起始位置（含）
+         * @param end 结束位置（含）
+         * @return 上游区间 [start, end]
+         */
+        public long[] toSourceSpan(long start, long end) {
+            return new long[]{start - moov.length, end - moov.length};
+        }
+
+        /**
+         * 按客户端Range请求头确定重排后需要发送的区间
+         *
+         * @param rangeHeader Range请求头，为空时返回整个文件
+         * @return [start, end]（均包含），区间无效时返回null
+         */
+        public long[] resolveRange(String rangeHeader) {
+            long end = totalSize - 1;
+            if (rangeHeader == null || rangeHeader.trim().isEmpty()) {
+                return new long[]{0, end};
+            }
+            String range = rangeHeader.trim();
+            int dash = range.indexOf('-');
+            if (!range.startsWith("bytes=") || dash < 0 || range.indexOf(',') >= 0) {
+                return null;
+            }
+            String first = range.substring(6, dash).trim();
+            String last = range.substring(dash + 1).trim();
+            long start;
+            try {
+                if (first.isEmpty()) {
+                    // bytes=-N：最后N个字节
+                    start = Math.max(0, totalSize - Long.parseLong(last));
+                } else {
+                    start = Long.parseLong(first);
+                    if (!last.isEmpty()) {
+                        end = Math.min(end, Long.parseLong(last));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return start < totalSize && start <= end ? new long[]{start, end} : null;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        /**
+         * @return 位于内存的部分（ftyp和moov）的长度，之后的数据来自上游
+         */
+        public long getHeadLength() {
+            return header.length + moov.length;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return 上游的ETag或Last-Modified，可为空
+         */
+        public String getValidator() {
+            return validator;
+        }
+    }
+}
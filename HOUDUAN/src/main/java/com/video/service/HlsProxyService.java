@@ -0,0 +1,631 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HLS代理服务
+ * 改写m3u8播放列表：子播放列表签发独立的代理令牌，分片、密钥和初始化分片改为播放列表令牌下的相对地址
+ * （{token}/seg/{序号}、{token}/res/{编号}），所有请求都经过代理并带上平台的Referer。
+ * 分片按上游地址缓存在内存中，客户端请求某个分片时并行预取后续K个分片。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class HlsProxyService {
+
+    private static final String PLAYLIST_HEADER = "#EXTM3U";
+
+    private static final Pattern URI_ATTR = Pattern.compile("URI=\"([^\"]*)\"");
+    private static final Pattern BYTERANGE_ATTR = Pattern.compile(",?BYTERANGE=\"([^\"]*)\"");
+    private static final Pattern BANDWIDTH_ATTR = Pattern.compile("(?:^|,)BANDWIDTH=(\\d+)");
+    private static final Pattern METHOD_ATTR = Pattern.compile("METHOD=([A-Z0-9-]+)");
+
+    @Autowired
+    @Qualifier("proxyRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    private ProxyTokenService proxyTokenService;
+
+    @Autowired
+    private LinkRefreshService linkRefreshService;
+
+    @Autowired
+    @Qualifier("hlsPrefetchExecutor")
+    private TaskExecutor hlsPrefetchExecutor;
+
+    @Value("${proxy.hls.prefetch-count:3}")
+    private int prefetchCount;
+
+    @Value("${proxy.hls.segment-cache-mb:256}")
+    private long segmentCacheMb;
+
+    @Value("${proxy.hls.segment-cache-minutes:30}")
+    private long segmentCacheMinutes;
+
+    @Value("${proxy.hls.playlist-cache-seconds:600}")
+    private long playlistCacheSeconds;
+
+    @Value("${proxy.hls.live-playlist-cache-seconds:2}")
+    private long livePlaylistCacheSeconds;
+
+    @Value("${proxy.hls.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    // key：播放列表的代理链接ID，value：解析后的播放列表
+    private Cache<String, Playlist> playlistCache;
+
+    // key：分片上游地址的稳定短ID（含字节区间），value：分片数据
+    private Cache<String, byte[]> segmentCache;
+
+    // 正在下载的分片，同一分片同时只下载一次
+    private final Map<String, CompletableFuture<byte[]>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder segmentHits = new LongAdder();
+    private final LongAdder segmentMisses = new LongAdder();
+    private final LongAdder prefetched = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        playlistCache = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfter(new Expiry<String, Playlist>() {
+                    @Override
+                    public long expireAfterCreate(String key, Playlist value, long currentTime) {
+                        // 直播列表会持续更新，只短时间缓存
+                        return TimeUnit.SECONDS.toNanos(value.endList ? playlistCacheSeconds : livePlaylistCacheSeconds);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Playlist value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Playlist value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        segmentCache = Caffeine.newBuilder()
+                .maximumWeight(segmentCacheMb * 1024 * 1024)
+                .weigher((String key, byte[] value) -> value.length)
+                .expireAfterWrite(segmentCacheMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 判断上游响应是否为m3u8播放列表
+     *
+     * @param contentType 响应类型，可为空
+     * @param body 响应内容
+     * @return 是否为播放列表
+     */
+    public boolean isPlaylist(String contentType, byte[] body) {
+        if (contentType != null && contentType.toLowerCase().contains("mpegurl")) {
+            return true;
+        }
+        if (body == null || body.length < PLAYLIST_HEADER.length()) {
+            return false;
+        }
+        // 兼容UTF-8 BOM
+        int start = body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB ? 3 : 0;
+        return new String(body, start, Math.min(body.length - start, PLAYLIST_HEADER.length()),
+                StandardCharsets.UTF_8).equals(PLAYLIST_HEADER);
+    }
+
+    /**
+     * 解析并缓存上游播放列表
+     *
+     * @param link 播放列表的代理链接
+     * @param token 播放列表的代理令牌，作为改写后地址的前缀
+     * @param playlistUrl 播放列表的上游地址（用于解析相对地址）
+     * @param body 播放列表内容
+     * @return 解析后的播放列表
+     */
+    public Playlist load(ProxyTokenService.ResolvedLink link, String token, String playlistUrl, byte[] body) {
+        Playlist playlist = parse(link, token, playlistUrl, new String(body, StandardCharsets.UTF_8));
+        playlistCache.put(link.getLinkId(), playlist);
+        return playlist;
+    }
+
+    /**
+     * 获取播放列表，未缓存时请求上游
+     *
+     * @param link 播放列表的代理链接
+     * @param token 播放列表的代理令牌
+     * @return 播放列表
+     * @throws IOException 上游返回的不是播放列表
+     */
+    public Playlist getPlaylist(ProxyTokenService.ResolvedLink link, String token) throws IOException {
+        Playlist playlist = playlistCache.getIfPresent(link.getLinkId());
+        return playlist != null ? playlist : reload(link, token);
+    }
+
+    /**
+     * 获取分片数据，优先使用缓存，正在预取的分片等待预取完成
+     *
+     * @param playlist 播放列表
+     * @param resource 分片
+     * @return 分片数据
+     * @throws IOException 下载失败
+     */
+    public byte[] getResource(Playlist playlist, Resource resource) throws IOException {
+        String key = resource.cacheKey();
+        byte[] data = segmentCache.getIfPresent(key);
+        if (data != null) {
+            segmentHits.increment();
+            return data;
+        }
+
+        CompletableFuture<byte[]> own = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inflight.putIfAbsent(key, own);
+        if (existing != null) {
+            return await(existing);
+        }
+        segmentMisses.increment();
+        try {
+            data = download(playlist, resource);
+            segmentCache.put(key, data);
+            own.complete(data);
+            return data;
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, own);
+        }
+    }
+
+    /**
+     * 后台预取指定分片之后的K个分片，线程池已满时停止预取
+     *
+     * @param playlist 播放列表
+     * @param sequence 当前分片序号
+     */
+    public void prefetch(Playlist playlist, long sequence) {
+        for (long next = sequence + 1; next <= sequence + prefetchCount; next++) {
+            Resource resource = playlist.segments.get(next);
+            if (resource == null) {
+                return;
+            }
+            String key = resource.cacheKey();
+            if (segmentCache.getIfPresent(key) != null || inflight.containsKey(key)) {
+                continue;
+            }
+            try {
+                hlsPrefetchExecutor.execute(() -> {
+                    try {
+                        getResource(playlist, resource);
+                        prefetched.increment();
+                    } catch (Exception e) {
+                        log.debug("预取HLS分片失败：{}", e.getMessage());
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.debug("HLS预取线程池已满，停止预取");
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 分片缓存命中、预取数量
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("playlists", playlistCache.estimatedSize());
+        stats.put("segments", segmentCache.estimatedSize());
+        stats.put("segmentHits", segmentHits.sum());
+        stats.put("segmentMisses", segmentMisses.sum());
+        stats.put("prefetched", prefetched.sum());
+        stats.put("inflight", inflight.size());
+        return stats;
+    }
+
+    /**
+     * 重新请求上游播放列表，上游地址过期时重新解析
+     */
+    private Playlist reload(ProxyTokenService.ResolvedLink link, String token) throws IOException {
+        String playlistUrl = link.getTargetUrl();
+        byte[] body;
+        try {
+            body = fetch(playlistUrl, link.getRoute(), null);
+        } catch (HttpClientErrorException e) {
+            String freshUrl = linkRefreshService.isExpiredResponse(e.getRawStatusCode())
+                    ? linkRefreshService.refresh(link, playlistUrl) : null;
+            if (freshUrl == null) {
+                throw e;
+            }
+            playlistUrl = freshUrl;
+            body = fetch(playlistUrl, link.getRoute(), null);
+        }
+        if (!isPlaylist(null, body)) {
+            throw new IOException("上游返回的不是HLS播放列表");
+        }
+        return load(link, token, playlistUrl, body);
+    }
+
+    /**
+     * 下载分片，分片地址过期时重新获取播放列表后重试一次
+     */
+    private byte[] download(Playlist playlist, Resource resource) throws IOException {
+        try {
+            return fetch(resource.url, playlist.link.getRoute(), resource.rangeHeader());
+        } catch (HttpClientErrorException e) {
+            if (!linkRefreshService.isExpiredResponse(e.getRawStatusCode())) {
+                throw e;
+            }
+            log.info("HLS分片地址已过期（{}），重新获取播放列表", e.getRawStatusCode());
+            playlistCache.invalidate(playlist.link.getLinkId());
+            Playlist fresh = reload(playlist.link, playlist.token);
+            Resource freshResource = fresh.counterpart(playlist, resource);
+            if (freshResource == null) {
+                throw e;
+            }
+            return fetch(freshResource.url, playlist.link.getRoute(), freshResource.rangeHeader());
+        }
+    }
+
+    private byte[] fetch(String url, String route, String range) throws IOException {
+        // 按域名识别平台，未识别时按路由平台兜底
+        PlatformRegistry.PlatformProfile profile = platformRegistry.resolveHost(new URL(url).getHost());
+        if (profile.isGeneral()) {
+            profile = platformRegistry.getByRoute(route);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", profile.getUserAgent());
+        headers.set("Accept", "*/*");
+        if (profile.getReferer() != null) {
+            headers.set("Referer", profile.getReferer());
+        }
+        if (range != null) {
+            headers.set("Range", range);
+        }
+        ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        if (response.getBody() == null) {
+            throw new IOException("上游返回空内容：" + response.getStatusCodeValue());
+        }
+        return response.getBody();
+    }
+
+    private byte[] await(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待分片下载被中断");
+        } catch (TimeoutException e) {
+            throw new IOException("等待分片下载超时");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 解析播放列表并生成改写后的内容
+     */
+    private Playlist parse(ProxyTokenService.ResolvedLink link, String token, String playlistUrl, String text) {
+        Playlist playlist = new Playlist(link, token);
+        StringBuilder out = new StringBuilder(text.length() + 256);
+        long sequence = 0;
+        boolean variantNext = false;
+        long variantBandwidth = 0;
+        // 当前分片的字节区间（EXT-X-BYTERANGE）
+        long[] pendingRange = null;
+        Map<String, Long> rangeEnds = new HashMap<>();
+
+        for (String rawLine : text.split("\r?\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("\uFEFF")) {
+                line = line.substring(1).trim();
+            }
+
+            if (line.startsWith("#")) {
+                if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                    sequence = parseLong(line.substring(line.indexOf(':') + 1), 0);
+                } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                    playlist.endList = true;
+                } else if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                    variantNext = true;
+                    variantBandwidth = bandwidthOf(line);
+                } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                    pendingRange = parseByteRange(line.substring(line.indexOf(':') + 1));
+                    // 改写后的分片已是对应区间，不再输出区间标签
+                    continue;
+                } else if (line.startsWith("#EXT-X-KEY:")) {
+                    Matcher method = METHOD_ATTR.matcher(line);
+                    if (method.find() && !"NONE".equals(method.group(1))) {
+                        playlist.encrypted = true;
+                    }
+                }
+                out.append(rewriteTag(playlist, playlistUrl, line)).append('\n');
+                continue;
+            }
+
+            String absolute = resolve(playlistUrl, line);
+            if (absolute == null) {
+                out.append(line).append('\n');
+                variantNext = false;
+                pendingRange = null;
+                continue;
+            }
+            if (variantNext || isPlaylistUri(line)) {
+                // 子播放列表使用独立令牌，相对地址解析到同一路由下
+                String variantToken = proxyTokenService.issue(absolute, link.getRoute());
+                playlist.variants.add(new Variant(variantBandwidth, variantToken));
+                out.append(variantToken).append('\n');
+            } else {
+                Resource resource = new Resource(absolute);
+                if (pendingRange != null) {
+                    long offset = pendingRange[1] >= 0 ? pendingRange[1] : rangeEnds.getOrDefault(absolute, 0L);
+                    resource.offset = offset;
+                    resource.length = pendingRange[0];
+                    rangeEnds.put(absolute, offset + pendingRange[0]);
+                }
+                playlist.segments.put(sequence, resource);
+                out.append(token).append("/seg/").append(sequence).append('\n');
+                sequence++;
+            }
+            variantNext = false;
+            variantBandwidth = 0;
+            pendingRange = null;
+        }
+        playlist.text = out.toString();
+        return playlist;
+    }
+
+    /**
+     * 改写标签中的URI属性（EXT-X-KEY、EXT-X-MAP、EXT-X-MEDIA等）
+     */
+    private String rewriteTag(Playlist playlist, String playlistUrl, String line) {
+        Matcher matcher = URI_ATTR.matcher(line);
+        if (!matcher.find()) {
+            return line;
+        }
+        String absolute = resolve(playlistUrl, matcher.group(1));
+        if (absolute == null) {
+            return line;
+        }
+
+        String replacement;
+        if (line.startsWith("#EXT-X-MEDIA:") || line.startsWith("#EXT-X-I-FRAME-STREAM-INF:")) {
+            replacement = proxyTokenService.issue(absolute, playlist.link.getRoute());
+        } else {
+            Resource resource = new Resource(absolute);
+            if (line.startsWith("#EXT-X-MAP:")) {
+                Matcher range = BYTERANGE_ATTR.matcher(line);
+                if (range.find()) {
+                    long[] bounds = parseByteRange(range.group(1));
+                    resource.offset = Math.max(0, bounds[1]);
+                    resource.length = bounds[0];
+                    line = range.replaceFirst("");
+                    matcher = URI_ATTR.matcher(line);
+                    matcher.find();
+                }
+                if (playlist.mapIndex < 0) {
+                    playlist.mapIndex = playlist.resources.size();
+                }
+            }
+            replacement = playlist.token + "/res/" + playlist.resources.size();
+            playlist.resources.add(resource);
+        }
+        return line.substring(0, matcher.start(1)) + replacement + line.substring(matcher.end(1));
+    }
+
+    private static String resolve(String base, String uri) {
+        try {
+            return new URL(new URL(base), uri).toString();
+        } catch (Exception e) {
+            log.debug("无法解析HLS地址：{}", uri);
+            return null;
+        }
+    }
+
+    private static boolean isPlaylistUri(String uri) {
+        int query = uri.indexOf('?');
+        String path = (query >= 0 ? uri.substring(0, query) : uri).toLowerCase();
+        return path.endsWith(".m3u8") || path.endsWith(".m3u");
+    }
+
+    private static long bandwidthOf(String line) {
+        Matcher matcher = BANDWIDTH_ATTR.matcher(line.substring(line.indexOf(':') + 1));
+        return matcher.find() ? parseLong(matcher.group(1), 0) : 0;
+    }
+
+    /**
+     * 解析 n[@o]，返回 [长度, 偏移]，偏移缺省时为-1
+     */
+    private static long[] parseByteRange(String value) {
+        int at = value.indexOf('@');
+        long length = parseLong(at >= 0 ? value.substring(0, at) : value, 0);
+        long offset = at >= 0 ? parseLong(value.substring(at + 1), -1) : -1;
+        return new long[]{length, offset};
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 解析后的播放列表
+     */
+    public static class Playlist {
+        private final ProxyTokenService.ResolvedLink link;
+        private final String token;
+        // key：分片序号（EXT-X-MEDIA-SEQUENCE起），按播放顺序
+        private final Map<Long, Resource> segments = new LinkedHashMap<>();
+        // 密钥、初始化分片等其他资源
+        private final List<Resource> resources = new ArrayList<>();
+        private final List<Variant> variants = new ArrayList<>();
+        private int mapIndex = -1;
+        private boolean encrypted;
+        private boolean endList;
+        private String text;
+
+        Playlist(ProxyTokenService.ResolvedLink link, String token) {
+            this.link = link;
+            this.token = token;
+        }
+
+        /**
+         * @return 改写后的播放列表内容
+         */
+        public String getText() {
+            return text;
+        }
+
+        public Resource getSegment(long sequence) {
+            return segments.get(sequence);
+        }
+
+        public Resource getResource(int index) {
+            return index >= 0 && index < resources.size() ? resources.get(index) : null;
+        }
+
+        public Map<Long, Resource> getSegments() {
+            return Collections.unmodifiableMap(segments);
+        }
+
+        /**
+         * @return 初始化分片（fMP4的EXT-X-MAP），没有时返回null
+         */
+        public Resource getMap() {
+            return mapIndex >= 0 ? resources.get(mapIndex) : null;
+        }
+
+        public boolean isMaster() {
+            return !variants.isEmpty() && segments.isEmpty();
+        }
+
+        /**
+         * @return 码率最高的子播放列表令牌，非主播放列表返回null
+         */
+        public String getBestVariantToken() {
+            Variant best = null;
+            for (Variant variant : variants) {
+                if (best == null || variant.bandwidth > best.bandwidth) {
+                    best = variant;
+                }
+            }
+            return best != null ? best.token : null;
+        }
+
+        public boolean isEncrypted() {
+            return encrypted;
+        }
+
+        public boolean isEndList() {
+            return endList;
+        }
+
+        /**
+         * 找到旧播放列表中的资源在本播放列表中同一位置的资源
+         */
+        Resource counterpart(Playlist old, Resource resource) {
+            int index = old.resources.indexOf(resource);
+            if (index >= 0) {
+                return getResource(index);
+            }
+            for (Map.Entry<Long, Resource> entry : old.segments.entrySet()) {
+                if (entry.getValue() == resource) {
+                    return segments.get(entry.getKey());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 播放列表中的分片或其他资源
+     */
+    public static class Resource {
+        private final String url;
+        private long offset = -1;
+        private long length = -1;
+
+        Resource(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        String rangeHeader() {
+            return length > 0 ? "bytes=" + Math.max(0, offset) + "-" + (Math.max(0, offset) + length - 1) : null;
+        }
+
+        String cacheKey() {
+            String key = ProxyTokenService.stableLinkId(url);
+            return length > 0 ? key + ":" + offset + ":" + length : key;
+        }
+    }
+
+    /**
+     * 子播放列表
+     */
+    private static class Variant {
+        private final long bandwidth;
+        private final String token;
+
+        Variant(long bandwidth, String token) {
+            this.bandwidth = bandwidth;
+            this.token = token;
+        }
+    }
+}
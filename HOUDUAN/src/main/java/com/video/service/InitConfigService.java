@@ -0,0 +1,267 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.common.Result;
+import com.video.entity.SystemConfig;
+import com.video.repository.SystemConfigRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 小程序初始化配置服务
+ * 将system_config编译为不可变快照，并预先序列化为JSON及gzip字节，配合ETag让重复启动的小程序直接得到304。
+ * 定时检查配置的更新时间和数量，变更后重新编译。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class InitConfigService {
+
+    private static final String DEFAULT_ICON = "/images/video-icon/logo-douyin.png";
+
+    private static final String[] DEFAULT_PLATFORMS = {"抖音", "快手", "小红书", "微视", "火山", "西瓜视频", "皮皮虾", "最右", "微博"};
+
+    // 平台名称与图标文件的映射
+    private static final Map<String, String> PLATFORM_ICON_MAP;
+
+    static {
+        Map<String, String> iconMap = new HashMap<>();
+        iconMap.put("抖音", "/images/video-icon/logo-douyin.png");
+        iconMap.put("快手", "/images/video-icon/logo-gitShow.png");
+        iconMap.put("小红书", "/images/video-icon/logo-music.png");
+        iconMap.put("微视", "/images/video-icon/logo-microview.png");
+        iconMap.put("火山", "/images/video-icon/logo-volcano.png");
+        iconMap.put("西瓜视频", "/images/video-icon/logo-watermelon.png");
+        iconMap.put("皮皮虾", "/images/video-icon/logo-ppx.png");
+        iconMap.put("最右", "/images/video-icon/logo-zuiyou.png");
+        iconMap.put("美拍", "/images/video-icon/logo-meipai.png");
+        iconMap.put("微博", "/images/video-icon/logo-365yg.png");
+        iconMap.put("秒拍", "/images/video-icon/logo-miaopai.png");
+        iconMap.put("头条", "/images/video-icon/logo-toutiao.png");
+        iconMap.put("小咖秀", "/images/video-icon/logo-xiaokaxiu.png");
+        iconMap.put("音乐", "/images/video-icon/logo-music.png");
+        iconMap.put("365yg", "/images/video-icon/logo-365yg.png");
+        PLATFORM_ICON_MAP = Collections.unmodifiableMap(iconMap);
+    }
+
+    @Autowired
+    private SystemConfigRepository systemConfigRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${business.sign.daily-points}")
+    private int dailySigninPoints;
+
+    // 当前生效的配置快照，整体替换以保证读取无锁
+    private volatile ConfigSnapshot snapshot;
+
+    // 已加载配置的版本，用于判断是否需要重新编译
+    private long loadedConfigCount = -1;
+    private LocalDateTime loadedConfigTime;
+
+    @PostConstruct
+    public void init() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("加载小程序配置失败，将在首次请求时重试：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 获取当前配置快照
+     *
+     * @return 配置快照，配置从未加载成功时返回null
+     */
+    public ConfigSnapshot getSnapshot() {
+        ConfigSnapshot current = snapshot;
+        if (current == null) {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.error("加载小程序配置失败：{}", e.getMessage(), e);
+            }
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * 定时检查system_config是否变更
+     */
+    @Scheduled(fixedDelayString = "${business.init-config.reload-interval-ms:60000}",
+            initialDelayString = "${business.init-config.reload-interval-ms:60000}")
+    public void refreshIfChanged() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("检查小程序配置更新失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载配置
+     * 配置的最新更新时间和总数都未变化时跳过，否则重新编译快照
+     */
+    public synchronized void reload() throws IOException {
+        long configCount = systemConfigRepository.count();
+        LocalDateTime configTime = systemConfigRepository.findLatestUpdateTime();
+        if (snapshot != null && configCount == loadedConfigCount && Objects.equals(configTime, loadedConfigTime)) {
+            return;
+        }
+
+        Map<String, Object> configData = buildConfigData(systemConfigRepository.findAllEnabled());
+        byte[] json = objectMapper.writeValueAsBytes(Result.success(configData));
+        snapshot = new ConfigSnapshot(Collections.unmodifiableMap(configData), json, gzip(json), digest(json));
+        loadedConfigCount = configCount;
+        loadedConfigTime = configTime;
+        log.info("小程序配置已编译，配置项：{}，大小：{} bytes（gzip {} bytes），ETag：{}",
+                configData.size(), json.length, snapshot.getGzipJson().length, snapshot.getEtag());
+    }
+
+    /**
+     * 根据启用的配置项构建小程序配置
+     */
+    private Map<String, Object> buildConfigData(List<SystemConfig> configs) {
+        Map<String, Object> configData = new LinkedHashMap<>();
+        for (SystemConfig config : configs) {
+            configData.put(config.getConfigKey(), config.getConfigValue());
+        }
+
+        // 添加一些默认配置
+        configData.putIfAbsent("appName", "短视频去水印");
+        configData.putIfAbsent("version", "1.0.0");
+        configData.putIfAbsent("dailySigninPoints", dailySigninPoints);
+
+        // 从supported_platforms配置中获取支持的平台列表
+        List<Map<String, String>> videoIconList = new ArrayList<>();
+        Object supportedPlatforms = configData.get("supported_platforms");
+        if (supportedPlatforms instanceof String && StringUtils.hasText((String) supportedPlatforms)) {
+            try {
+                JsonNode platformsNode = objectMapper.readTree((String) supportedPlatforms);
+                if (platformsNode.isArray()) {
+                    for (JsonNode platformNode : platformsNode) {
+                        videoIconList.add(iconItem(platformNode.asText()));
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("解析supported_platforms配置失败: {}", e.getMessage());
+            }
+        }
+
+        // 如果没有配置或解析失败，使用默认的平台图标列表
+        if (videoIconList.isEmpty()) {
+            for (String platform : DEFAULT_PLATFORMS) {
+                videoIconList.add(iconItem(platform));
+            }
+        }
+        configData.put("videoIcon", videoIconList);
+
+        // 添加顶部小程序跳转信息
+        configData.putIfAbsent("topMiniImg", "/images/watermark_before.png");
+        configData.putIfAbsent("topMiniTitle", "推荐小程序");
+        configData.putIfAbsent("topMiniAppId", "");
+        configData.putIfAbsent("topMiniPath", "");
+        return configData;
+    }
+
+    private static Map<String, String> iconItem(String platformName) {
+        Map<String, String> iconItem = new HashMap<>();
+        iconItem.put("name", platformName);
+        // 根据平台名称获取对应的图标路径，如果没有则使用抖音图标
+        iconItem.put("imgPath", PLATFORM_ICON_MAP.getOrDefault(platformName, DEFAULT_ICON));
+        return iconItem;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 以内容摘要作为强ETag，内容不变时重启服务ETag也不变
+     */
+    private static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(34);
+            sb.append('"');
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return sb.append('"').toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("计算配置摘要失败", e);
+        }
+    }
+
+    /**
+     * 配置快照
+     */
+    public static class ConfigSnapshot {
+        private final Map<String, Object> data;
+        private final byte[] json;
+        private final byte[] gzipJson;
+        private final String etag;
+
+        ConfigSnapshot(Map<String, Object> data, byte[] json, byte[] gzipJson, String etag) {
+            this.data = data;
+            this.json = json;
+            this.gzipJson = gzipJson;
+            this.etag = etag;
+        }
+
+        /**
+         * 配置数据（只读）
+         */
+        public Map<String, Object> getData() {
+            return data;
+        }
+
+        /**
+         * 完整响应的JSON字节
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * 完整响应的gzip压缩字节
+         */
+        public byte[] getGzipJson() {
+            return gzipJson;
+        }
+
+        /**
+         * 强ETag（含引号）
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
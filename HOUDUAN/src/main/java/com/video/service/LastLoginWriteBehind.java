@@ -0,0 +1,163 @@
+package com.video.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 最后登录信息延迟写入
+ * 已存在用户的登录时间和IP先记录在内存中，同一openId只保留最新一次，定时合并为一条UPDATE语句批量写入，
+ * 服务关闭时写入剩余数据。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class LastLoginWriteBehind {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${business.last-login.batch-size:200}")
+    private int batchSize;
+
+    @Value("${business.last-login.max-pending:50000}")
+    private int maxPending;
+
+    // key：openId，value：最新的登录信息
+    private final ConcurrentHashMap<String, LoginInfo> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 记录登录信息
+     *
+     * @param openId 微信openId
+     * @param loginTime 登录时间
+     * @param loginIp 登录IP
+     * @return 是否已记录，待写入数量达到上限时返回false，由调用方直接写入
+     */
+    public boolean record(String openId, LocalDateTime loginTime, String loginIp) {
+        if (pending.size() >= maxPending && !pending.containsKey(openId)) {
+            return false;
+        }
+        pending.merge(openId, new LoginInfo(loginTime, loginIp),
+                (current, latest) -> latest.loginTime.isBefore(current.loginTime) ? current : latest);
+        return true;
+    }
+
+    /**
+     * 定时写入待更新的登录信息
+     */
+    @Scheduled(fixedDelayString = "${business.last-login.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("写入最后登录信息失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 服务关闭时写入剩余数据
+     */
+    @PreDestroy
+    public void drain() {
+        flush();
+    }
+
+    /**
+     * 写入全部待更新的登录信息
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> openIds = new ArrayList<>(batchSize);
+        List<LoginInfo> infos = new ArrayList<>(batchSize);
+        int total = 0;
+        Iterator<Map.Entry<String, LoginInfo>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, LoginInfo> entry = iterator.next();
+            // 按值移除，移除后到达的新登录信息留到下次写入
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            openIds.add(entry.getKey());
+            infos.add(entry.getValue());
+            if (openIds.size() >= batchSize) {
+                total += writeBatch(openIds, infos);
+                openIds.clear();
+                infos.clear();
+            }
+        }
+        if (!openIds.isEmpty()) {
+            total += writeBatch(openIds, infos);
+        }
+        log.debug("最后登录信息已写入，共{}个用户", total);
+    }
+
+    /**
+     * 使用一条UPDATE ... CASE语句写入一批登录信息，失败时放回待写入队列
+     */
+    private int writeBatch(List<String> openIds, List<LoginInfo> infos) {
+        int size = openIds.size();
+        StringBuilder timeCase = new StringBuilder("CASE open_id");
+        StringBuilder ipCase = new StringBuilder("CASE open_id");
+        StringBuilder inClause = new StringBuilder();
+        List<Object> timeArgs = new ArrayList<>(size * 2);
+        List<Object> ipArgs = new ArrayList<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            timeCase.append(" WHEN ? THEN ?");
+            ipCase.append(" WHEN ? THEN ?");
+            inClause.append(i == 0 ? "?" : ", ?");
+            timeArgs.add(openIds.get(i));
+            timeArgs.add(Timestamp.valueOf(infos.get(i).loginTime));
+            ipArgs.add(openIds.get(i));
+            ipArgs.add(infos.get(i).loginIp);
+        }
+        timeCase.append(" ELSE last_login_time END");
+        ipCase.append(" ELSE last_login_ip END");
+
+        String sql = "UPDATE t_user SET last_login_time = " + timeCase + ", last_login_ip = " + ipCase
+                + " WHERE open_id IN (" + inClause + ")";
+        List<Object> args = new ArrayList<>(size * 5);
+        args.addAll(timeArgs);
+        args.addAll(ipArgs);
+        args.addAll(openIds);
+
+        try {
+            return jdbcTemplate.update(sql, args.toArray());
+        } catch (RuntimeException e) {
+            for (int i = 0; i < size; i++) {
+                pending.putIfAbsent(openIds.get(i), infos.get(i));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 登录信息
+     */
+    private static class LoginInfo {
+        private final LocalDateTime loginTime;
+        private final String loginIp;
+
+        LoginInfo(LocalDateTime loginTime, String loginIp) {
+            this.loginTime = loginTime;
+            this.loginIp = loginIp;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.entity.ProxyLink;
+import com.video.entity.VideoParseRecord;
+import com.video.repository.ProxyLinkRepository;
+import com.video.repository.VideoParseRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过期链接刷新服务
+ * 平台CDN地址带有签名时效，上游返回403/410时，按代理链接记录的解析记录重新解析原始链接，
+ * 得到新的上游地址后更新代理链接，已签发的代理令牌继续有效。
+ * 同一链接的并发刷新在缓存之外合并为一次（重新解析包含等待并发许可、查库和付费API调用，不放在缓存的计算函数中执行），
+ * 刷新成功的地址和失败的链接分别短时缓存，全局刷新并发数有上限，避免集中重新解析。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class LinkRefreshService {
+
+    @Autowired
+    private ProxyLinkRepository proxyLinkRepository;
+
+    @Autowired
+    private VideoParseRecordRepository videoParseRecordRepository;
+
+    @Autowired
+    private VideoParsingService videoParsingService;
+
+    @Autowired
+    private ProxyTokenService proxyTokenService;
+
+    @Value("${proxy.link-refresh.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.link-refresh.max-size:10000}")
+    private long maxSize;
+
+    @Value("${proxy.link-refresh.fresh-ttl-seconds:600}")
+    private long freshTtlSeconds;
+
+    @Value("${proxy.link-refresh.failure-ttl-seconds:60}")
+    private long failureTtlSeconds;
+
+    @Value("${proxy.link-refresh.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${proxy.link-refresh.acquire-timeout-ms:3000}")
+    private long acquireTimeoutMs;
+
+    @Value("${proxy.link-refresh.wait-timeout-ms:35000}")
+    private long waitTimeoutMs;
+
+    // key：链接短ID，value：刷新得到的上游地址
+    private Cache<String, String> freshCache;
+
+    // key：链接短ID，刷新失败的链接短时间内不再重试
+    private Cache<String, Boolean> failureCache;
+
+    // key：链接短ID，value：正在进行的重新解析，同一链接的并发刷新共用一次解析
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+
+    private Semaphore permits;
+
+    private final LongAdder refreshed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        freshCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(freshTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        failureCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(failureTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * 判断上游响应是否表示签名地址已过期
+     *
+     * @param statusCode 上游响应状态码
+     * @return 是否过期
+     */
+    public boolean isExpiredResponse(int statusCode) {
+        return enabled && (statusCode == 403 || statusCode == 410);
+    }
+
+    /**
+     * 重新解析获取代理链接的最新上游地址
+     *
+     * @param link 代理令牌解析结果
+     * @param expiredUrl 已过期的上游地址
+     * @return 新的上游地址，无法刷新时返回null
+     */
+    public String refresh(ProxyTokenService.ResolvedLink link, String expiredUrl) {
+        String linkId = link.getLinkId();
+        if (!enabled || linkId == null || failureCache.getIfPresent(linkId) != null) {
+            return null;
+        }
+
+        // 刷新结果仍是已过期的地址时说明是其他请求较早刷新的结果，需要重新解析
+        String fresh = freshCache.getIfPresent(linkId);
+        if (fresh != null && fresh.equals(expiredUrl)) {
+            freshCache.invalidate(linkId);
+        }
+
+        fresh = freshCache.getIfPresent(linkId);
+        if (fresh != null) {
+            return fresh;
+        }
+
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflight.putIfAbsent(linkId, own);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // 并发的上一次刷新可能刚写入缓存并结束合并，再检查一次缓存
+            fresh = freshCache.getIfPresent(linkId);
+            if (fresh == null && failureCache.getIfPresent(linkId) == null) {
+                fresh = reparse(linkId);
+                if (fresh != null) {
+                    freshCache.put(linkId, fresh);
+                } else {
+                    failureCache.put(linkId, Boolean.TRUE);
+                    failed.increment();
+                }
+            }
+            own.complete(fresh);
+            return fresh;
+        } finally {
+            // 异常退出时等待方按刷新失败处理
+            own.complete(null);
+            inflight.remove(linkId, own);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 刷新成功和失败次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("refreshed", refreshed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("cached", freshCache.estimatedSize());
+        stats.put("inflight", inflight.size());
+        return stats;
+    }
+
+    /**
+     * 等待同一链接正在进行的刷新
+     *
+     * @return 新的上游地址，刷新失败或等待超时返回null
+     */
+    private String await(CompletableFuture<String> future) {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (TimeoutException e) {
+            log.warn("等待过期链接刷新超时（{}ms）", waitTimeoutMs);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按解析记录重新解析
+     *
+     * @return 新的上游地址，无法刷新时返回null
+     */
+    private String reparse(String linkId) {
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                log.warn("过期链接刷新并发已满，linkId：{}", linkId);
+                return null;
+            }
+
+            Optional<ProxyLink> linkOpt = proxyLinkRepository.findByLinkId(linkId);
+            if (!linkOpt.isPresent() || linkOpt.get().getRecordId() == null) {
+                log.info("代理链接没有对应的解析记录，无法刷新，linkId：{}", linkId);
+                return null;
+            }
+            Optional<VideoParseRecord> recordOpt = videoParseRecordRepository.findById(linkOpt.get().getRecordId());
+            if (!recordOpt.isPresent() || !StringUtils.hasText(recordOpt.get().getOriginalUrl())) {
+                return null;
+            }
+
+            String mediaField = linkOpt.get().getMediaField();
+            String freshUrl = videoParsingService.resolveMediaUrl(recordOpt.get().getOriginalUrl(), mediaField);
+            if (freshUrl == null) {
+                return null;
+            }
+
+            proxyTokenService.updateTarget(linkId, freshUrl);
+            refreshed.increment();
+            log.info("上游地址已过期，重新解析成功，linkId：{}，解析记录：{}", linkId, recordOpt.get().getId());
+            return freshUrl;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.warn("过期链接刷新失败，linkId：{}，错误：{}", linkId, e.getMessage());
+            return null;
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+}
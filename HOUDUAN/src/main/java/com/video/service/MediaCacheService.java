@@ -0,0 +1,453 @@
+package com.video.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 媒体文件本地缓存服务
+ * 完整下载过的媒体文件按代理链接短ID保存在本地目录，再次请求时不再经过Java复制数据：
+ * nginx部署使用X-Accel-Redirect交给nginx发送，否则使用Tomcat的sendfile发送。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class MediaCacheService {
+
+    /**
+     * 由nginx通过X-Accel-Redirect发送
+     */
+    public static final String OFFLOAD_X_ACCEL = "x-accel";
+
+    /**
+     * 由Tomcat通过sendfile发送
+     */
+    public static final String OFFLOAD_SENDFILE = "sendfile";
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // 缓存文件扩展名与内容类型的对应关系
+    private static final String[][] EXTENSION_TYPES = {
+            {".mp4", "video/mp4"},
+            {".jpg", "image/jpeg"},
+            {".png", "image/png"},
+            {".webp", "image/webp"},
+            {".gif", "image/gif"},
+            {".bin", "application/octet-stream"}
+    };
+
+    @Value("${proxy.media-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${proxy.media-cache.dir:cache/media}")
+    private String cacheDir;
+
+    @Value("${proxy.media-cache.max-size-mb:10240}")
+    private long maxSizeMb;
+
+    @Value("${proxy.media-cache.max-file-size-mb:500}")
+    private long maxFileSizeMb;
+
+    @Value("${proxy.media-cache.max-age-hours:24}")
+    private long maxAgeHours;
+
+    @Value("${proxy.media-cache.offload:sendfile}")
+    private String offload;
+
+    @Value("${proxy.media-cache.accel-prefix:/internal-media/}")
+    private String accelPrefix;
+
+    private Path cacheRoot;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            cacheRoot = Paths.get(cacheDir).toAbsolutePath();
+            Files.createDirectories(cacheRoot);
+            log.info("媒体缓存已启用，目录：{}，发送方式：{}", cacheRoot, offload);
+        } catch (IOException e) {
+            log.error("创建媒体缓存目录失败，已禁用媒体缓存：{}", e.getMessage());
+            enabled = false;
+        }
+    }
+
+    /**
+     * 是否启用媒体缓存
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查找已缓存的媒体文件
+     *
+     * @param linkId 代理链接短ID
+     * @return 缓存文件，不存在返回null
+     */
+    public Path findCached(String linkId) {
+        if (!enabled || !StringUtils.hasText(linkId)) {
+            return null;
+        }
+        for (String[] extensionType : EXTENSION_TYPES) {
+            Path file = cacheRoot.resolve(linkId + extensionType[0]);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 若媒体已缓存，则只完成鉴权后的响应头设置，把文件发送交给nginx或Tomcat
+     *
+     * @param linkId 代理链接短ID
+     * @param request HTTP请求
+     * @param response HTTP响应
+     * @param fileName 下载文件名，为空时不设置Content-Disposition
+     * @param maxAgeSeconds 响应的Cache-Control缓存时间（秒）
+     * @return 是否已由缓存处理
+     */
+    public boolean serveCached(String linkId, HttpServletRequest request, HttpServletResponse response,
+                               String fileName, long maxAgeSeconds) throws IOException {
+        Path file = findCached(linkId);
+        if (file == null) {
+            return false;
+        }
+
+        long length = Files.size(file);
+        String contentType = contentTypeOf(file);
+        touch(file);
+
+        response.setContentType(contentType);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        response.setHeader("ETag", "\"" + linkId + "\"");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        if (StringUtils.hasText(fileName)) {
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        }
+
+        if (OFFLOAD_X_ACCEL.equalsIgnoreCase(offload)) {
+            // nginx根据内部location发送文件，并自行处理Range请求
+            response.setHeader("X-Accel-Redirect", accelPrefix + file.getFileName());
+            log.debug("媒体缓存命中，交由nginx发送：{}", file.getFileName());
+            return true;
+        }
+
+        long[] range = parseRange(request.getHeader("Range"), length);
+        if (range == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return true;
+        }
+        long start = range[0];
+        long end = range[1];
+        if (start > 0 || end < length - 1) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        response.setContentLengthLong(end - start + 1);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            // Tomcat在请求处理结束后以零拷贝方式发送文件
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            log.debug("媒体缓存命中，使用sendfile发送：{}", file.getFileName());
+            return true;
+        }
+
+        // 不支持sendfile时直接在通道间传输
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 为完整下载的媒体创建缓存写入器
+     *
+     * @param linkId 代理链接短ID
+     * @param contentType 内容类型
+     * @param contentLength 内容长度
+     * @return 缓存写入器，不满足缓存条件时返回null
+     */
+    public CacheWriter openWriter(String linkId, String contentType, long contentLength) {
+        if (!enabled || !StringUtils.hasText(linkId) || contentLength <= 0
+                || contentLength > maxFileSizeMb * 1024 * 1024) {
+            return null;
+        }
+        try {
+            Path target = cacheRoot.resolve(linkId + extensionOf(contentType));
+            Path temp = cacheRoot.resolve(linkId + "." + UUID.randomUUID() + TEMP_SUFFIX);
+            return new CacheWriter(temp, target, contentLength, Files.newOutputStream(temp));
+        } catch (IOException e) {
+            log.warn("创建媒体缓存文件失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 缓存已完整读入内存的媒体
+     *
+     * @param linkId 代理链接短ID
+     * @param contentType 内容类型
+     * @param body 媒体内容
+     */
+    public void store(String linkId, String contentType, byte[] body) {
+        if (body == null) {
+            return;
+        }
+        CacheWriter writer = openWriter(linkId, contentType, body.length);
+        if (writer != null) {
+            writer.write(body, 0, body.length);
+            writer.commit();
+        }
+    }
+
+    /**
+     * 定时清理缓存：删除过期文件和遗留的临时文件，总大小超限时按最近访问时间淘汰
+     */
+    @Scheduled(fixedDelayString = "${proxy.media-cache.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long maxAgeMillis = maxAgeHours * 3600 * 1000;
+        long totalSize = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheRoot)) {
+            for (Path file : stream) {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (now - modified > maxAgeMillis) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    files.add(file);
+                    totalSize += Files.size(file);
+                }
+            }
+
+            long maxBytes = maxSizeMb * 1024 * 1024;
+            if (totalSize > maxBytes) {
+                files.sort(Comparator.comparingLong(MediaCacheService::lastModifiedMillis));
+                for (Path file : files) {
+                    if (totalSize <= maxBytes) {
+                        break;
+                    }
+                    long size = Files.size(file);
+                    Files.deleteIfExists(file);
+                    totalSize -= size;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理媒体缓存失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 解析单个Range请求，多段Range按完整内容处理
+     *
+     * @return [start, end]（包含end），Range不可满足时返回null
+     */
+    private static long[] parseRange(String rangeHeader, long length) {
+        long[] full = {0, length - 1};
+        if (!StringUtils.hasText(rangeHeader) || !rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') >= 0) {
+            return full;
+        }
+        try {
+            String spec = rangeHeader.substring(6).trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return full;
+            }
+            String startStr = spec.substring(0, dash).trim();
+            String endStr = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (startStr.isEmpty()) {
+                // bytes=-N 表示最后N个字节
+                long suffix = Long.parseLong(endStr);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(startStr);
+                end = endStr.isEmpty() ? length - 1 : Math.min(Long.parseLong(endStr), length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return full;
+        }
+    }
+
+    private static String extensionOf(String contentType) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            for (String[] extensionType : EXTENSION_TYPES) {
+                if (type.startsWith(extensionType[1])) {
+                    return extensionType[0];
+                }
+            }
+            if (type.startsWith("video/")) {
+                return ".mp4";
+            }
+        }
+        return ".bin";
+    }
+
+    private static String contentTypeOf(Path file) {
+        String name = file.getFileName().toString();
+        for (String[] extensionType : EXTENSION_TYPES) {
+            if (name.endsWith(extensionType[0])) {
+                return extensionType[1];
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    private static long lastModifiedMillis(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 更新访问时间，用于按最近访问淘汰
+     */
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("更新缓存文件访问时间失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存写入器
+     * 先写入临时文件，写满预期长度后原子替换为正式缓存文件；写入出错时自动放弃，不影响客户端传输
+     */
+    public static class CacheWriter {
+        private final Path temp;
+        private final Path target;
+        private final long expectedLength;
+        private OutputStream out;
+        private long written;
+
+        CacheWriter(Path temp, Path target, long expectedLength, OutputStream out) {
+            this.temp = temp;
+            this.target = target;
+            this.expectedLength = expectedLength;
+            this.out = out;
+        }
+
+        /**
+         * 写入数据
+         */
+        public void write(byte[] buffer, int offset, int length) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                log.warn("写入媒体缓存失败：{}", e.getMessage());
+                abort();
+            }
+        }
+
+        /**
+         * 完成写入，长度与预期一致时生效
+         */
+        public void commit() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                if (written == expectedLength) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    log.debug("媒体已缓存：{}，大小：{} bytes", target.getFileName(), written);
+                } else {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                log.warn("保存媒体缓存失败：{}", e.getMessage());
+                abort();
+            }
+        }
+
+        /**
+         * 放弃写入并删除临时文件
+         */
+        public void abort() {
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.debug("删除媒体缓存临时文件失败：{}", e.getMessage());
+            }
+        }
+    }
+}
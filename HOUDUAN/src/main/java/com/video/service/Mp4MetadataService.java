@@ -0,0 +1,358 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.common.Mp4Parser;
+import com.video.dto.MediaMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MP4元数据服务
+ * 通过Range请求读取文件开头，按盒子头逐个跳转找到moov，只下载moov本身即可得到时长、分辨率、编码和码率。
+ * 结果按上游地址的稳定短ID缓存（签名参数变化不影响缓存命中）。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class Mp4MetadataService {
+
+    // 第一次读取的文件开头长度
+    private static final int HEAD_BYTES = 64 * 1024;
+
+    // 跳转查找moov时读取的盒子头长度
+    private static final int BOX_HEADER_BYTES = 16;
+
+    // 查找moov时最多跳转的盒子数
+    private static final int MAX_BOX_HOPS = 32;
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    @Qualifier("downloadExecutor")
+    private TaskExecutor downloadExecutor;
+
+    @Value("${proxy.metadata.max-moov-size-mb:16}")
+    private int maxMoovSizeMb;
+
+    @Value("${proxy.metadata.cache-size:10000}")
+    private long cacheSize;
+
+    @Value("${proxy.metadata.cache-ttl-hours:24}")
+    private long cacheTtlHours;
+
+    @Value("${proxy.metadata.connect-timeout-ms:5000}")
+    private int connectTimeout;
+
+    @Value("${proxy.metadata.read-timeout-ms:10000}")
+    private int readTimeout;
+
+    // key：上游地址的稳定短ID，value：元数据
+    private Cache<String, MediaMetadata> metadataCache;
+
+    private final LongAdder rangeReads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        metadataCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtlHours, TimeUnit.HOURS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取媒体元数据，未缓存时读取上游
+     *
+     * @param targetUrl 上游地址
+     * @return 元数据
+     * @throws IOException 读取上游失败
+     */
+    public MediaMetadata getMetadata(String targetUrl) throws IOException {
+        String key = ProxyTokenService.stableLinkId(targetUrl);
+        MediaMetadata cached = metadataCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        MediaMetadata metadata;
+        try {
+            metadata = load(targetUrl);
+        } catch (IOException e) {
+            loadFailures.increment();
+            throw e;
+        }
+        metadataCache.put(key, metadata);
+        return metadata;
+    }
+
+    /**
+     * 获取已缓存的元数据
+     *
+     * @param targetUrl 上游地址
+     * @return 元数据，未缓存返回null
+     */
+    public MediaMetadata getIfCached(String targetUrl) {
+        return StringUtils.hasText(targetUrl)
+                ? metadataCache.getIfPresent(ProxyTokenService.stableLinkId(targetUrl)) : null;
+    }
+
+    /**
+     * 后台预读元数据，线程池已满时跳过
+     *
+     * @param targetUrl 上游地址
+     */
+    public void prefetch(String targetUrl) {
+        if (!StringUtils.hasText(targetUrl) || getIfCached(targetUrl) != null) {
+            return;
+        }
+        try {
+            downloadExecutor.execute(() -> {
+                try {
+                    getMetadata(targetUrl);
+                } catch (Exception e) {
+                    log.debug("预读媒体元数据失败：{}", e.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.debug("预读媒体元数据线程池已满，跳过");
+        }
+    }
+
+    /**
+     * 读取上游的内容类型和文件大小（只请求1个字节）
+     *
+     * @param targetUrl 上游地址
+     * @return 元数据（仅包含内容类型和大小）
+     * @throws IOException 读取上游失败
+     */
+    public MediaMetadata probe(String targetUrl) throws IOException {
+        RangeData range = readRange(targetUrl, 0, 0);
+        MediaMetadata metadata = new MediaMetadata();
+        metadata.setContentType(range.contentType);
+        metadata.setContentLength(range.totalSize > 0 ? range.totalSize : null);
+        return metadata;
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 命中率、缓存数量和Range请求次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", metadataCache.estimatedSize());
+        stats.put("hitRate", metadataCache.stats().hitRate());
+        stats.put("rangeReads", rangeReads.sum());
+        stats.put("loadFailures", loadFailures.sum());
+        return stats;
+    }
+
+    /**
+     * 读取上游文件的指定区间
+     *
+     * @param targetUrl 上游地址
+     * @param start 起始字节（含）
+     * @param end 结束字节（含）
+     * @return 区间数据和文件总大小
+     * @throws IOException 上游不支持Range或读取失败
+     */
+    public RangeData readRange(String targetUrl, long start, long end) throws IOException {
+        rangeReads.increment();
+        URL url = new URL(targetUrl);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            PlatformRegistry.PlatformProfile profile = platformRegistry.resolveUrl(targetUrl);
+            // 与下载代理使用相同的请求头，faststart拼接的数据来自同一上游响应；未配置Referer时使用视频域名
+            connection.setRequestProperty("User-Agent", profile.getDownloadUserAgent());
+            String referer = profile.getDownloadReferer() != null
+                    ? profile.getDownloadReferer() : url.getProtocol() + "://" + url.getHost() + "/";
+            connection.setRequestProperty("Referer", referer);
+            connection.setRequestProperty("Accept", "*/*");
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setInstanceFollowRedirects(true);
+            connection.setUseCaches(false);
+
+            int responseCode = connection.getResponseCode();
+            long totalSize;
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                totalSize = parseTotalSize(connection.getHeaderField("Content-Range"));
+            } else if (responseCode == HttpURLConnection.HTTP_OK && start == 0) {
+                // 上游忽略Range时只读取需要的部分
+                totalSize = connection.getContentLengthLong();
+            } else {
+                throw new IOException("上游不支持Range请求，状态码：" + responseCode);
+            }
+
+            int length = (int) (end - start + 1);
+            byte[] data = new byte[length];
+            int offset = 0;
+            try (InputStream inputStream = connection.getInputStream()) {
+                int bytesRead;
+                while (offset < length && (bytesRead = inputStream.read(data, offset, length - offset)) != -1) {
+                    offset += bytesRead;
+                }
+            }
+            RangeData range = new RangeData();
+            range.data = data;
+            range.length = offset;
+            range.totalSize = totalSize;
+            range.contentType = connection.getContentType();
+            range.validator = StringUtils.hasText(connection.getHeaderField("ETag"))
+                    ? connection.getHeaderField("ETag") : connection.getHeaderField("Last-Modified");
+            return range;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 读取文件开头，按盒子头跳转找到并解析moov
+     */
+    private MediaMetadata load(String targetUrl) throws IOException {
+        RangeData head = readRange(targetUrl, 0, HEAD_BYTES - 1);
+        MediaMetadata metadata = new MediaMetadata();
+        metadata.setContentType(head.contentType);
+        long totalSize = head.totalSize;
+        if (totalSize > 0) {
+            metadata.setContentLength(totalSize);
+        }
+
+        boolean sawMdat = false;
+        long offset = 0;
+        for (int hops = 0; hops < MAX_BOX_HOPS && (totalSize <= 0 || offset < totalSize); hops++) {
+            Mp4Parser.Box box = offset < head.length
+                    ? Mp4Parser.readBox(head.data, (int) offset, head.length, offset, totalSize) : null;
+            if (box == null && offset + BOX_HEADER_BYTES > head.length) {
+                // 盒子头不在已读取的开头数据中，单独读取盒子头
+                long headerEnd = offset + BOX_HEADER_BYTES - 1;
+                if (totalSize > 0) {
+                    headerEnd = Math.min(totalSize - 1, headerEnd);
+                }
+                RangeData header = readRange(targetUrl, offset, headerEnd);
+                box = Mp4Parser.readBox(header.data, 0, header.length, offset, totalSize);
+            }
+            if (box == null) {
+                break;
+            }
+
+            if (offset == 0 && !"ftyp".equals(box.getType())) {
+                log.debug("不是MP4文件，跳过元数据解析：{}", box.getType());
+                return metadata;
+            }
+            if ("ftyp".equals(box.getType()) && offset + 12 <= head.length) {
+                metadata.setFtypSize(box.getSize());
+                metadata.setMajorBrand(new String(head.data, (int) offset + 8, 4, StandardCharsets.ISO_8859_1).trim());
+            } else if ("mdat".equals(box.getType())) {
+                sawMdat = true;
+            } else if ("moov".equals(box.getType())) {
+                parseMoov(targetUrl, head, box, metadata);
+                metadata.setMoovAtEnd(sawMdat);
+                break;
+            }
+            offset += box.getSize();
+        }
+
+        if (metadata.getDurationSeconds() != null && metadata.getDurationSeconds() > 0 && totalSize > 0) {
+            metadata.setBitrate((long) (totalSize * 8 / metadata.getDurationSeconds()));
+        }
+        log.info("读取媒体元数据完成，时长：{}秒，分辨率：{}x{}，moov在末尾：{}", metadata.getDurationSeconds(),
+                metadata.getWidth(), metadata.getHeight(), metadata.getMoovAtEnd());
+        return metadata;
+    }
+
+    private void parseMoov(String targetUrl, RangeData head, Mp4Parser.Box box, MediaMetadata metadata)
+            throws IOException {
+        if (box.getSize() > maxMoovSizeMb * 1024L * 1024L) {
+            log.warn("moov过大，跳过解析：{} bytes", box.getSize());
+            return;
+        }
+        byte[] moov;
+        long offset = box.getOffset();
+        int size = (int) box.getSize();
+        if (offset + size <= head.length) {
+            moov = new byte[size];
+            System.arraycopy(head.data, (int) offset, moov, 0, size);
+        } else {
+            RangeData range = readRange(targetUrl, offset, offset + size - 1);
+            if (range.length < size) {
+                throw new IOException("moov数据不完整");
+            }
+            moov = range.data;
+        }
+        metadata.setMoovOffset(offset);
+        metadata.setMoovSize(size);
+        Mp4Parser.parseMoov(moov, metadata);
+    }
+
+    private static long parseTotalSize(String contentRange) {
+        // Content-Range: bytes start-end/total
+        if (contentRange != null) {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0 && slash < contentRange.length() - 1 && contentRange.charAt(slash + 1) != '*') {
+                try {
+                    return Long.parseLong(contentRange.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Range读取结果
+     */
+    public static class RangeData {
+        private byte[] data;
+        private int length;
+        private long totalSize;
+        private String contentType;
+        private String validator;
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return 上游的ETag或Last-Modified，可为空
+         */
+        public String getValidator() {
+            return validator;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析失败负缓存
+ * 记录解析失败的链接及错误码，避免用户反复重试同一无效链接时重复调用付费的去水印API
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class ParseFailureCache {
+
+    /**
+     * 错误码：提取链接无效或暂不支持此平台
+     */
+    private static final String CODE_UNSUPPORTED = "400";
+
+    /**
+     * 错误码：未检测到链接
+     */
+    private static final String CODE_NO_LINK = "301";
+
+    @Value("${business.parse.negative-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${business.parse.negative-cache.unsupported-ttl-seconds:21600}")
+    private long unsupportedTtlSeconds;
+
+    @Value("${business.parse.negative-cache.no-link-ttl-seconds:1800}")
+    private long noLinkTtlSeconds;
+
+    @Value("${business.parse.negative-cache.transient-ttl-seconds:30}")
+    private long transientTtlSeconds;
+
+    // key：规范化后的链接，value：错误码
+    private Cache<String, String> failureCache;
+
+    @PostConstruct
+    public void init() {
+        failureCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, String>() {
+                    @Override
+                    public long expireAfterCreate(String key, String errorCode, long currentTime) {
+                        return ttlNanos(errorCode);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, String errorCode, long currentTime, long currentDuration) {
+                        return ttlNanos(errorCode);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, String errorCode, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 查询链接是否命中失败缓存
+     *
+     * @param videoUrl 视频链接
+     * @return 缓存的错误码，未命中返回null
+     */
+    public String getFailureCode(String videoUrl) {
+        String key = canonicalize(videoUrl);
+        return key != null ? failureCache.getIfPresent(key) : null;
+    }
+
+    /**
+     * 记录解析失败的链接
+     *
+     * @param videoUrl 视频链接
+     * @param errorCode 错误码
+     */
+    public void recordFailure(String videoUrl, String errorCode) {
+        String key = canonicalize(videoUrl);
+        if (key == null || !StringUtils.hasText(errorCode)) {
+            return;
+        }
+        failureCache.put(key, errorCode);
+        log.debug("记录解析失败缓存，链接：{}，错误码：{}", key, errorCode);
+    }
+
+    /**
+     * 根据错误码计算缓存时间（纳秒）
+     * 不支持的平台长期缓存，未检测到链接中等时长，其余视为临时错误短期缓存
+     *
+     * @param errorCode 错误码
+     * @return 缓存时间
+     */
+    private long ttlNanos(String errorCode) {
+        if (CODE_UNSUPPORTED.equals(errorCode)) {
+            return TimeUnit.SECONDS.toNanos(unsupportedTtlSeconds);
+        }
+        if (CODE_NO_LINK.equals(errorCode)) {
+            return TimeUnit.SECONDS.toNanos(noLinkTtlSeconds);
+        }
+        return TimeUnit.SECONDS.toNanos(transientTtlSeconds);
+    }
+
+    /**
+     * 规范化链接：去除首尾空白和锚点，协议和域名转小写，去除路径末尾的斜杠
+     *
+     * @param videoUrl 视频链接
+     * @return 规范化后的链接
+     */
+    static String canonicalize(String videoUrl) {
+        if (!StringUtils.hasText(videoUrl)) {
+            return null;
+        }
+
+        String trimmed = videoUrl.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return trimmed;
+            }
+
+            StringBuilder sb = new StringBuilder(trimmed.length());
+            sb.append(uri.getScheme().toLowerCase(Locale.ROOT)).append("://")
+                    .append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (uri.getPort() != -1) {
+                sb.append(':').append(uri.getPort());
+            }
+
+            String path = uri.getRawPath();
+            if (path != null) {
+                int end = path.length();
+                while (end > 0 && path.charAt(end - 1) == '/') {
+                    end--;
+                }
+                sb.append(path, 0, end);
+            }
+            if (uri.getRawQuery() != null) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return trimmed;
+        }
+    }
+}
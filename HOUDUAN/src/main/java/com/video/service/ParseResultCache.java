@@ -0,0 +1,234 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.video.dto.VideoParseData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 解析结果缓存
+ * 缓存去水印API返回的原始解析数据，同一链接在有效期内不再重复调用外部API。
+ * 每条缓存的有效期（硬过期）按结果中媒体地址的签名过期时间计算（取最早过期的地址并预留安全时间），
+ * 无法识别过期时间时使用配置的最大缓存时间，地址即将过期的结果不缓存。
+ * 超过软过期时间后仍直接返回缓存结果，同时在后台刷新一次；刷新失败时推迟下次刷新，继续使用旧结果直到硬过期。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class ParseResultCache {
+
+    @Autowired
+    private UrlExpiryExtractor urlExpiryExtractor;
+
+    @Value("${business.parse.result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${business.parse.result-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${business.parse.result-cache.max-ttl-seconds:1800}")
+    private long maxTtlSeconds;
+
+    @Value("${business.parse.result-cache.safety-margin-seconds:120}")
+    private long safetyMarginSeconds;
+
+    @Value("${business.parse.result-cache.soft-ttl-seconds:600}")
+    private long softTtlSeconds;
+
+    @Value("${business.parse.result-cache.refresh-retry-seconds:30}")
+    private long refreshRetrySeconds;
+
+    @Autowired
+    @Qualifier("parseRefreshExecutor")
+    private TaskExecutor parseRefreshExecutor;
+
+    // key：规范化后的链接，value：解析数据及缓存时间
+    private Cache<String, CachedResult> resultCache;
+
+    // 正在后台刷新的链接，同一链接同时只刷新一次
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        resultCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedResult>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResult value, long currentTime) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 查询缓存的解析数据，超过软过期时间时触发一次后台刷新
+     *
+     * @param videoUrl 视频链接
+     * @param refresher 刷新时调用的解析方法，返回原始解析数据，失败返回null
+     * @return 解析数据副本，未命中返回null
+     */
+    public VideoParseData get(String videoUrl, Function<String, VideoParseData> refresher) {
+        String key = ParseFailureCache.canonicalize(videoUrl);
+        if (!enabled || key == null) {
+            return null;
+        }
+        CachedResult cached = resultCache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.nanoTime() - cached.refreshAfter >= 0) {
+            staleHits.increment();
+            scheduleRefresh(key, videoUrl, cached, refresher);
+        }
+        return cached.data.copy();
+    }
+
+    /**
+     * 缓存解析成功的原始数据（处理前）
+     *
+     * @param videoUrl 视频链接
+     * @param data 原始解析数据
+     */
+    public void put(String videoUrl, VideoParseData data) {
+        String key = ParseFailureCache.canonicalize(videoUrl);
+        if (!enabled || key == null || data == null) {
+            return;
+        }
+        long ttlSeconds = ttlSeconds(data);
+        if (ttlSeconds <= 0) {
+            log.debug("解析结果中的地址即将过期，不缓存：{}", key);
+            return;
+        }
+        // 有效期较短时按比例提前刷新，保证硬过期前有机会刷新
+        long softSeconds = Math.min(softTtlSeconds, ttlSeconds * 3 / 4);
+        resultCache.put(key, new CachedResult(data.copy(), TimeUnit.SECONDS.toNanos(ttlSeconds),
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(softSeconds)));
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 命中率和缓存数量
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", resultCache.estimatedSize());
+        stats.put("hitRate", resultCache.stats().hitRate());
+        stats.put("staleHits", staleHits.sum());
+        stats.put("refreshing", refreshing.size());
+        stats.put("refreshFailures", refreshFailures.sum());
+        return stats;
+    }
+
+    /**
+     * 后台刷新缓存，线程池已满时跳过，下次命中时再尝试
+     */
+    private void scheduleRefresh(String key, String videoUrl, CachedResult cached,
+                                 Function<String, VideoParseData> refresher) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            parseRefreshExecutor.execute(() -> {
+                try {
+                    VideoParseData data = refresher.apply(videoUrl);
+                    if (data != null) {
+                        put(videoUrl, data);
+                        log.debug("解析结果后台刷新成功：{}", key);
+                    } else {
+                        onRefreshFailure(key, cached);
+                    }
+                } catch (Exception e) {
+                    log.warn("解析结果后台刷新异常，链接：{}，错误：{}", key, e.getMessage());
+                    onRefreshFailure(key, cached);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            log.debug("解析结果刷新线程池已满，跳过刷新：{}", key);
+        }
+    }
+
+    /**
+     * 刷新失败时推迟下次刷新，旧结果继续使用直到硬过期
+     */
+    private void onRefreshFailure(String key, CachedResult cached) {
+        refreshFailures.increment();
+        cached.refreshAfter = System.nanoTime() + TimeUnit.SECONDS.toNanos(refreshRetrySeconds);
+        log.info("解析结果后台刷新失败，继续使用缓存结果：{}", key);
+    }
+
+    /**
+     * 按媒体地址中最早的过期时间计算缓存时间
+     */
+    private long ttlSeconds(VideoParseData data) {
+        long ttl = maxTtlSeconds;
+        ttl = Math.min(ttl, remainingFor(data.getVideoSrc()));
+        ttl = Math.min(ttl, remainingFor(data.getImageSrc()));
+        if (data.getImageAtlas() != null) {
+            for (String image : data.getImageAtlas()) {
+                ttl = Math.min(ttl, remainingFor(image));
+            }
+        }
+        return ttl;
+    }
+
+    private long remainingFor(String url) {
+        if (!StringUtils.hasText(url)) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = urlExpiryExtractor.remainingSeconds(url);
+        return remaining < 0 ? Long.MAX_VALUE : remaining - safetyMarginSeconds;
+    }
+
+    /**
+     * 缓存的解析数据
+     */
+    private static class CachedResult {
+        private final VideoParseData data;
+        private final long ttlNanos;
+        // 下次需要刷新的时间（System.nanoTime）
+        private volatile long refreshAfter;
+
+        CachedResult(VideoParseData data, long ttlNanos, long refreshAfter) {
+            this.data = data;
+            this.ttlNanos = ttlNanos;
+            this.refreshAfter = refreshAfter;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.video.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.entity.SystemConfig;
+import com.video.repository.SystemConfigRepository;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * 平台注册表
+ * 统一维护各平台的域名、Referer、User-Agent和代理路由，启动时编译为按域名后缀倒序的字典树，
+ * 一次查找即可得到平台的全部信息。支持通过system_config中的platform_registry配置热更新。
+ * 在线播放代理使用移动端User-Agent和平台Referer；下载代理沿用桌面端User-Agent和下载专用的Referer，
+ * 两者分别配置，互不影响。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class PlatformRegistry {
+
+    /**
+     * 热更新使用的配置键
+     */
+    public static final String CONFIG_KEY = "platform_registry";
+
+    /**
+     * 移动端User-Agent
+     */
+    public static final String MOBILE_USER_AGENT =
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 14_0 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/14.0 Mobile/15E148 Safari/604.1";
+
+    /**
+     * 桌面端User-Agent（下载代理默认使用）
+     */
+    public static final String DESKTOP_USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+
+    /**
+     * 通用代理路由
+     */
+    public static final String GENERAL_ROUTE = "general";
+
+    // 未匹配任何平台时使用的默认配置
+    private static final PlatformProfile DEFAULT_PROFILE =
+            profile("general", "其他", GENERAL_ROUTE, null, null);
+
+    @Autowired
+    private SystemConfigRepository systemConfigRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 当前生效的注册表快照，整体替换以保证读取无锁
+    private volatile Snapshot snapshot;
+
+    // 已加载配置的状态，用于判断是否需要重新编译
+    private boolean configLoaded;
+    private LocalDateTime loadedConfigTime;
+
+    @PostConstruct
+    public void init() {
+        snapshot = compile(defaultProfiles());
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("加载平台配置失败，使用内置配置：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 根据域名查找平台
+     *
+     * @param host 域名
+     * @return 平台配置，未匹配时返回默认配置
+     */
+    public PlatformProfile resolveHost(String host) {
+        if (host == null) {
+            return DEFAULT_PROFILE;
+        }
+        return snapshot.lookup(host, 0, host.length());
+    }
+
+    /**
+     * 根据完整URL查找平台，直接在原字符串上定位域名，不创建中间对象
+     *
+     * @param url 完整URL
+     * @return 平台配置，未匹配时返回默认配置
+     */
+    public PlatformProfile resolveUrl(String url) {
+        if (url == null) {
+            return DEFAULT_PROFILE;
+        }
+
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        int length = url.length();
+        while (end < length) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '@') {
+                start = end + 1;
+            }
+            end++;
+        }
+        // 去掉端口
+        for (int i = start; i < end; i++) {
+            if (url.charAt(i) == ':') {
+                end = i;
+                break;
+            }
+        }
+        return snapshot.lookup(url, start, end);
+    }
+
+    /**
+     * 根据代理路由查找平台
+     *
+     * @param route 代理路由
+     * @return 平台配置，未匹配时返回默认配置
+     */
+    public PlatformProfile getByRoute(String route) {
+        PlatformProfile profile = route != null ? snapshot.byRoute.get(route) : null;
+        return profile != null ? profile : DEFAULT_PROFILE;
+    }
+
+    /**
+     * 获取全部平台配置（按注册顺序）
+     *
+     * @return 平台配置列表
+     */
+    public List<PlatformProfile> getProfiles() {
+        return snapshot.profiles;
+    }
+
+    /**
+     * 定时检查system_config中的平台配置是否变更
+     */
+    @Scheduled(fixedDelayString = "${business.platform.reload-interval-ms:60000}",
+            initialDelayString = "${business.platform.reload-interval-ms:60000}")
+    public void refreshIfChanged() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("检查平台配置更新失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载平台配置
+     * 配置存在且启用时使用配置中的平台列表，否则使用内置平台列表
+     */
+    public synchronized void reload() {
+        Optional<SystemConfig> configOpt = systemConfigRepository.findActiveByConfigKey(CONFIG_KEY);
+        SystemConfig config = configOpt.isPresent() && Integer.valueOf(1).equals(configOpt.get().getIsEnabled())
+                ? configOpt.get() : null;
+        LocalDateTime configTime = config != null ? config.getUpdateTime() : null;
+
+        if (configLoaded == (config != null) && Objects.equals(loadedConfigTime, configTime)) {
+            return;
+        }
+        configLoaded = config != null;
+        loadedConfigTime = configTime;
+
+        if (config == null) {
+            snapshot = compile(defaultProfiles());
+            log.info("平台注册表使用内置配置，共{}个平台", snapshot.profiles.size());
+            return;
+        }
+
+        try {
+            List<PlatformProfile> profiles = objectMapper.readValue(config.getConfigValue(),
+                    new TypeReference<List<PlatformProfile>>() {});
+            snapshot = compile(profiles);
+            log.info("平台注册表已从配置加载，共{}个平台", snapshot.profiles.size());
+        } catch (Exception e) {
+            log.error("解析平台配置失败，继续使用当前配置：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 编译平台列表为查找快照
+     * 同一后缀重复注册时以先注册的为准，查找时取最长匹配后缀，结果与注册顺序一致
+     */
+    private Snapshot compile(List<PlatformProfile> profiles) {
+        MutableNode root = new MutableNode();
+        List<PlatformProfile> normalized = new ArrayList<>();
+        Map<String, PlatformProfile> byRoute = new LinkedHashMap<>();
+
+        for (PlatformProfile source : profiles) {
+            if (source == null || !StringUtils.hasText(source.getCode())) {
+                continue;
+            }
+            PlatformProfile profile = normalize(source);
+            normalized.add(profile);
+            if (!byRoute.containsKey(profile.getProxyRoute()) && !GENERAL_ROUTE.equals(profile.getProxyRoute())) {
+                byRoute.put(profile.getProxyRoute(), profile);
+            }
+
+            for (String suffix : profile.getHosts()) {
+                MutableNode node = root;
+                for (int i = suffix.length() - 1; i >= 0; i--) {
+                    node = node.children.computeIfAbsent(suffix.charAt(i), c -> new MutableNode());
+                }
+                if (node.profile == null) {
+                    node.profile = profile;
+                }
+            }
+        }
+
+        Snapshot compiled = new Snapshot();
+        compiled.root = root.freeze();
+        compiled.byRoute = byRoute;
+        compiled.profiles = Collections.unmodifiableList(normalized);
+        return compiled;
+    }
+
+    /**
+     * 补全平台配置的默认值并规范化域名
+     */
+    private static PlatformProfile normalize(PlatformProfile source) {
+        PlatformProfile profile = new PlatformProfile();
+        profile.setCode(source.getCode());
+        profile.setName(StringUtils.hasText(source.getName()) ? source.getName() : source.getCode());
+        profile.setProxyRoute(StringUtils.hasText(source.getProxyRoute()) ? source.getProxyRoute() : GENERAL_ROUTE);
+        profile.setReferer(StringUtils.hasText(source.getReferer()) ? source.getReferer() : null);
+        profile.setUserAgent(StringUtils.hasText(source.getUserAgent()) ? source.getUserAgent() : MOBILE_USER_AGENT);
+        profile.setDownloadReferer(StringUtils.hasText(source.getDownloadReferer()) ? source.getDownloadReferer() : null);
+        profile.setDownloadUserAgent(StringUtils.hasText(source.getDownloadUserAgent())
+                ? source.getDownloadUserAgent() : DESKTOP_USER_AGENT);
+
+        List<String> hosts = new ArrayList<>();
+        if (source.getHosts() != null) {
+            for (String host : source.getHosts()) {
+                if (StringUtils.hasText(host)) {
+                    String suffix = host.trim().toLowerCase(Locale.ROOT);
+                    while (suffix.startsWith(".")) {
+                        suffix = suffix.substring(1);
+                    }
+                    hosts.add(suffix);
+                }
+            }
+        }
+        profile.setHosts(Collections.unmodifiableList(hosts));
+
+        if (source.getExpiryParams() != null && !source.getExpiryParams().isEmpty()) {
+            List<String> expiryParams = new ArrayList<>();
+            for (String param : source.getExpiryParams()) {
+                if (StringUtils.hasText(param)) {
+                    expiryParams.add(param.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            profile.setExpiryParams(Collections.unmodifiableList(expiryParams));
+        }
+        return profile;
+    }
+
+    /**
+     * 内置平台列表
+     */
+    private static List<PlatformProfile> defaultProfiles() {
+        return Arrays.asList(
+                profile("douyin", "抖音", "douyin", "https://www.douyin.com/", "https://www.douyin.com/",
+                        "douyin.com", "iesdouyin.com", "douyinvod.com", "douyinpic.com", "douyincdn.com",
+                        "douyinstatic.com", "amemv.com", "snssdk.com", "bytedance.com", "byteimg.com", "zjcdn.com"),
+                profile("kuaishou", "快手", "kuaishou", "https://www.kuaishou.com/", "https://www.kuaishou.com/",
+                        "kuaishou.com", "gifshow.com", "kwaicdn.com", "kwimgs.com", "yximgs.com", "chenzhongtech.com"),
+                profile("xiaohongshu", "小红书", "xiaohongshu", "https://www.xiaohongshu.com/", "https://www.xiaohongshu.com/",
+                        "xiaohongshu.com", "xhslink.com", "xhscdn.com"),
+                profile("weishi", "微视", GENERAL_ROUTE, "https://weishi.qq.com/", "https://weishi.qq.com/",
+                        "weishi.qq.com"),
+                profile("huoshan", "火山", "huoshan", "https://www.huoshan.com/", null,
+                        "huoshan.com"),
+                profile("xigua", "西瓜视频", "xigua", "https://www.ixigua.com/", "https://www.ixigua.com/",
+                        "ixigua.com"),
+                profile("pipixia", "皮皮虾", "pipixia", "https://h5.pipix.com/", "https://www.pipix.com/",
+                        "pipix.com"),
+                profile("zuiyou", "最右", "zuiyou", "https://www.izuiyou.com/", null,
+                        "izuiyou.com", "zuiyou.com", "xiaochuankeji.cn"),
+                profile("weibo", "微博", "weibo", "https://weibo.com/", "https://weibo.com/",
+                        "weibo.com", "weibo.cn", "weibocdn.com", "sinaimg.cn"),
+                profile("bilibili", "B站", "bilibili", "https://www.bilibili.com/", null,
+                        "bilibili.com", "b23.tv", "bilivideo.com", "bilivideo.cn", "hdslb.com"),
+                profile("haokan", "好看视频", "haokan", "https://haokan.baidu.com/", null,
+                        "haokan.baidu.com"),
+                profile("tiktok", "TikTok", GENERAL_ROUTE, "https://www.tiktok.com/", null,
+                        "tiktok.com")
+        );
+    }
+
+    private static PlatformProfile profile(String code, String name, String proxyRoute, String referer,
+                                           String downloadReferer, String... hosts) {
+        PlatformProfile profile = new PlatformProfile();
+        profile.setCode(code);
+        profile.setName(name);
+        profile.setProxyRoute(proxyRoute);
+        profile.setReferer(referer);
+        profile.setUserAgent(MOBILE_USER_AGENT);
+        profile.setDownloadReferer(downloadReferer);
+        profile.setDownloadUserAgent(DESKTOP_USER_AGENT);
+        profile.setHosts(Arrays.asList(hosts));
+        return profile;
+    }
+
+    /**
+     * 平台配置
+     */
+    @Data
+    public static class PlatformProfile {
+        /**
+         * 平台编码
+         */
+        private String code;
+
+        /**
+         * 平台名称
+         */
+        private String name;
+
+        /**
+         * 代理路由（对应 /proxy/{route}/ 路径）
+         */
+        private String proxyRoute;
+
+        /**
+         * 请求上游时使用的Referer，为空时由调用方决定
+         */
+        private String referer;
+
+        /**
+         * 请求上游时使用的User-Agent
+         */
+        private String userAgent;
+
+        /**
+         * 下载代理请求上游时使用的Referer，为空时使用视频地址的域名
+         */
+        private String downloadReferer;
+
+        /**
+         * 下载代理请求上游时使用的User-Agent，默认为桌面端User-Agent
+         */
+        private String downloadUserAgent;
+
+        /**
+         * 域名后缀列表，匹配域名本身及其子域名
+         */
+        private List<String> hosts;
+
+        /**
+         * 上游签名地址中表示过期时间的查询参数名，为空时使用通用参数列表
+         */
+        private List<String> expiryParams;
+
+        /**
+         * 是否为默认（未识别）平台
+         */
+        public boolean isGeneral() {
+            return this == DEFAULT_PROFILE;
+        }
+    }
+
+    /**
+     * 注册表快照
+     */
+    private static final class Snapshot {
+        private Node root;
+        private Map<String, PlatformProfile> byRoute;
+        private List<PlatformProfile> profiles;
+
+        /**
+         * 从域名末尾逐字符向前匹配，在标签边界处记录命中的平台，取最长匹配
+         */
+        PlatformProfile lookup(String s, int start, int end) {
+            PlatformProfile matched = DEFAULT_PROFILE;
+            Node node = root;
+            for (int i = end - 1; i >= start; i--) {
+                char c = s.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                node = node.child(c);
+                if (node == null) {
+                    break;
+                }
+                if (node.profile != null && (i == start || s.charAt(i - 1) == '.')) {
+                    matched = node.profile;
+                }
+            }
+            return matched;
+        }
+    }
+
+    /**
+     * 编译后的字典树节点，子节点按字符排序后二分查找
+     */
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final PlatformProfile profile;
+
+        Node(char[] keys, Node[] children, PlatformProfile profile) {
+            this.keys = keys;
+            this.children = children;
+            this.profile = profile;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    /**
+     * 构建阶段使用的字典树节点
+     */
+    private static final class MutableNode {
+        private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+        private PlatformProfile profile;
+
+        Node freeze() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().freeze();
+                i++;
+            }
+            return new Node(keys, nodes, profile);
+        }
+    }
+}
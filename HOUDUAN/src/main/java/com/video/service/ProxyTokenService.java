@@ -0,0 +1,429 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.entity.ProxyLink;
+import com.video.repository.ProxyLinkRepository;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 代理令牌服务
+ * 代理地址使用"短ID.过期时间.签名"形式的令牌代替Base64编码的完整上游地址，
+ * 短ID由去掉签名参数后的上游地址计算得出，同一资源的令牌在同一过期时间段内保持不变
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class ProxyTokenService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // 签名长度（字节）
+    private static final int SIGNATURE_BYTES = 12;
+
+    // 短ID长度（字节）
+    private static final int LINK_ID_BYTES = 9;
+
+    // 计算短ID时忽略的签名、时效类查询参数
+    private static final Set<String> VOLATILE_PARAMS = new HashSet<>(Arrays.asList(
+            "x-expires", "x-signature", "x-sign", "expires", "expire", "sign", "signature",
+            "auth_key", "policy", "key-pair-id", "ts"
+    ));
+
+    // 代理地址格式：/proxy/{route}/{token}
+    private static final Pattern PROXY_PATH = Pattern.compile("/proxy/([\\w-]+)/([\\w.=-]+)");
+
+    @Autowired
+    private ProxyLinkRepository proxyLinkRepository;
+
+    @Value("${proxy.token.secret:}")
+    private String secret;
+
+    @Value("${proxy.token.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${proxy.token.expire-bucket-minutes:60}")
+    private long expireBucketMinutes;
+
+    @Value("${proxy.token.cache-size:50000}")
+    private long cacheSize;
+
+    @Value("${proxy.token.allow-legacy:false}")
+    private boolean allowLegacy;
+
+    private SecretKeySpec signingKey;
+
+    private ThreadLocal<Mac> macHolder;
+
+    // 短ID到上游地址的内存映射
+    private Cache<String, LinkEntry> linkCache;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (StringUtils.hasText(secret)) {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("未配置proxy.token.secret，已随机生成签名密钥，服务重启后已签发的代理链接将失效");
+        }
+        signingKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        macHolder = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(signingKey);
+                return mac;
+            } catch (Exception e) {
+                throw new IllegalStateException("初始化签名算法失败", e);
+            }
+        });
+
+        linkCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttlHours * 60 + expireBucketMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 为上游地址签发代理令牌
+     *
+     * @param targetUrl 上游资源地址
+     * @param route 代理路由
+     * @return 代理令牌
+     */
+    public String issue(String targetUrl, String route) {
+        return issue(targetUrl, route, null, null);
+    }
+
+    /**
+     * 为解析结果中的上游地址签发代理令牌，同时记录来源，上游地址过期时可重新解析
+     *
+     * @param targetUrl 上游资源地址
+     * @param route 代理路由
+     * @param recordId 解析记录ID，可为空
+     * @param mediaField 解析结果字段，可为空
+     * @return 代理令牌
+     */
+    public String issue(String targetUrl, String route, Long recordId, String mediaField) {
+        String linkId = stableLinkId(targetUrl);
+        long expireAt = bucketedExpireAt();
+
+        // 仅在地址变化、需要延长有效期或补充来源时写库
+        LinkEntry cached = linkCache.getIfPresent(linkId);
+        if (cached == null || !cached.getTargetUrl().equals(targetUrl) || cached.getExpireAt() < expireAt
+                || (recordId != null && cached.getRecordId() == null)) {
+            Long entryRecordId = recordId != null ? recordId : cached != null ? cached.getRecordId() : null;
+            linkCache.put(linkId, new LinkEntry(targetUrl, route, expireAt, entryRecordId));
+            try {
+                proxyLinkRepository.upsert(linkId, targetUrl, route, recordId, mediaField,
+                        toDateTime(expireAt), LocalDateTime.now());
+            } catch (Exception e) {
+                log.warn("保存代理链接失败，仅保留内存映射，linkId：{}，错误：{}", linkId, e.getMessage());
+            }
+        }
+
+        return linkId + "." + Long.toString(expireAt, 36) + "." + sign(route, linkId, expireAt);
+    }
+
+    /**
+     * 更新短ID对应的上游地址，已签发的令牌继续有效
+     *
+     * @param linkId 链接短ID
+     * @param targetUrl 新的上游资源地址
+     */
+    public void updateTarget(String linkId, String targetUrl) {
+        LinkEntry cached = linkCache.getIfPresent(linkId);
+        if (cached != null) {
+            linkCache.put(linkId, new LinkEntry(targetUrl, cached.getRoute(), cached.getExpireAt(), cached.getRecordId()));
+        }
+        try {
+            proxyLinkRepository.updateTargetUrl(linkId, targetUrl, LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("更新代理链接失败，仅更新内存映射，linkId：{}，错误：{}", linkId, e.getMessage());
+        }
+    }
+
+    /**
+     * 解析代理路径中的令牌
+     * 兼容模式下，不含分隔符的值按旧版Base64编码的完整地址处理
+     *
+     * @param route 代理路由
+     * @param token 代理令牌
+     * @return 解析结果
+     */
+    public ResolvedLink resolve(String route, String token) {
+        if (!StringUtils.hasText(token)) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+
+        int first = token.indexOf('.');
+        if (first < 0) {
+            return resolveLegacy(route, token);
+        }
+        int second = token.indexOf('.', first + 1);
+        if (first == 0 || second < 0 || second == first + 1 || second == token.length() - 1) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+
+        String linkId = token.substring(0, first);
+        long expireAt;
+        try {
+            expireAt = Long.parseLong(token.substring(first + 1, second), 36);
+        } catch (NumberFormatException e) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+
+        byte[] expected = sign(route, linkId, expireAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(second + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+        if (expireAt < System.currentTimeMillis() / 1000) {
+            return ResolvedLink.of(TokenStatus.EXPIRED);
+        }
+
+        LinkEntry entry = linkCache.get(linkId, this::loadLink);
+        if (entry == null) {
+            return ResolvedLink.of(TokenStatus.NOT_FOUND);
+        }
+        ResolvedLink resolved = ResolvedLink.valid(linkId, entry.getTargetUrl(), route);
+        resolved.setExpireAt(expireAt);
+        return resolved;
+    }
+
+    /**
+     * 解析完整的代理地址（/proxy/{route}/{token}）
+     * 兼容模式下，非代理地址按原始上游地址处理
+     *
+     * @param url 代理地址
+     * @return 解析结果
+     */
+    public ResolvedLink resolveProxyUrl(String url) {
+        if (!StringUtils.hasText(url)) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+
+        Matcher matcher = PROXY_PATH.matcher(url);
+        if (matcher.find()) {
+            return resolve(matcher.group(1), matcher.group(2));
+        }
+        if (allowLegacy) {
+            return ResolvedLink.valid(null, url, PlatformRegistry.GENERAL_ROUTE);
+        }
+        return ResolvedLink.of(TokenStatus.INVALID);
+    }
+
+    /**
+     * 定时清理已过期的代理链接
+     */
+    @Scheduled(cron = "${proxy.token.cleanup-cron:0 30 3 * * ?}")
+    public void cleanupExpired() {
+        try {
+            int deleted = proxyLinkRepository.deleteExpired(LocalDateTime.now());
+            log.info("清理过期代理链接：{}条", deleted);
+        } catch (Exception e) {
+            log.warn("清理过期代理链接失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 旧版Base64编码的完整地址
+     */
+    private ResolvedLink resolveLegacy(String route, String encodedUrl) {
+        if (!allowLegacy) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+        try {
+            String url = new String(Base64.getUrlDecoder().decode(encodedUrl), StandardCharsets.UTF_8);
+            return ResolvedLink.valid(null, url, route);
+        } catch (IllegalArgumentException e) {
+            return ResolvedLink.of(TokenStatus.INVALID);
+        }
+    }
+
+    /**
+     * 从数据库加载短ID对应的地址
+     */
+    private LinkEntry loadLink(String linkId) {
+        try {
+            Optional<ProxyLink> linkOpt = proxyLinkRepository.findByLinkId(linkId);
+            if (linkOpt.isPresent()) {
+                ProxyLink link = linkOpt.get();
+                long expireAt = link.getExpireTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+                return new LinkEntry(link.getTargetUrl(), link.getProxyRoute(), expireAt, link.getRecordId());
+            }
+        } catch (Exception e) {
+            log.warn("加载代理链接失败，linkId：{}，错误：{}", linkId, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 计算过期时间，向上取整到时间段边界，使同一时间段内签发的令牌相同
+     */
+    private long bucketedExpireAt() {
+        long bucketSeconds = Math.max(1, expireBucketMinutes * 60);
+        long expireAt = System.currentTimeMillis() / 1000 + ttlHours * 3600;
+        return (expireAt + bucketSeconds - 1) / bucketSeconds * bucketSeconds;
+    }
+
+    private static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    /**
+     * 计算令牌签名
+     */
+    private String sign(String route, String linkId, long expireAt) {
+        Mac mac = macHolder.get();
+        byte[] digest = mac.doFinal((route + ":" + linkId + ":" + expireAt).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, SIGNATURE_BYTES));
+    }
+
+    /**
+     * 计算上游地址的稳定短ID：去掉锚点和签名类参数后取SHA-256前缀
+     *
+     * @param url 上游地址
+     * @return 短ID
+     */
+    static String stableLinkId(String url) {
+        String base = url;
+        int hash = base.indexOf('#');
+        if (hash >= 0) {
+            base = base.substring(0, hash);
+        }
+
+        int query = base.indexOf('?');
+        if (query >= 0) {
+            StringBuilder sb = new StringBuilder(base.length());
+            sb.append(base, 0, query);
+            char separator = '?';
+            for (String param : base.substring(query + 1).split("&")) {
+                if (param.isEmpty()) {
+                    continue;
+                }
+                int eq = param.indexOf('=');
+                String name = (eq >= 0 ? param.substring(0, eq) : param).toLowerCase(Locale.ROOT);
+                if (VOLATILE_PARAMS.contains(name)) {
+                    continue;
+                }
+                sb.append(separator).append(param);
+                separator = '&';
+            }
+            base = sb.toString();
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(base.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, LINK_ID_BYTES));
+        } catch (Exception e) {
+            throw new IllegalStateException("计算链接ID失败", e);
+        }
+    }
+
+    /**
+     * 内存中的链接映射
+     */
+    @Data
+    private static class LinkEntry {
+        private final String targetUrl;
+        private final String route;
+        private final long expireAt;
+        private final Long recordId;
+    }
+
+    /**
+     * 令牌状态
+     */
+    public enum TokenStatus {
+        VALID(HttpStatus.OK),
+        INVALID(HttpStatus.FORBIDDEN),
+        EXPIRED(HttpStatus.GONE),
+        NOT_FOUND(HttpStatus.NOT_FOUND);
+
+        private final HttpStatus httpStatus;
+
+        TokenStatus(HttpStatus httpStatus) {
+            this.httpStatus = httpStatus;
+        }
+
+        public HttpStatus getHttpStatus() {
+            return httpStatus;
+        }
+    }
+
+    /**
+     * 令牌解析结果
+     */
+    @Data
+    public static class ResolvedLink {
+        private TokenStatus status;
+
+        /**
+         * 链接短ID，可作为稳定的缓存键（旧版地址为null）
+         */
+        private String linkId;
+
+        /**
+         * 上游资源地址
+         */
+        private String targetUrl;
+
+        /**
+         * 代理路由
+         */
+        private String route;
+
+        /**
+         * 令牌过期时间（秒级时间戳），旧版地址为0
+         */
+        private long expireAt;
+
+        public static ResolvedLink of(TokenStatus status) {
+            ResolvedLink link = new ResolvedLink();
+            link.setStatus(status);
+            return link;
+        }
+
+        public static ResolvedLink valid(String linkId, String targetUrl, String route) {
+            ResolvedLink link = of(TokenStatus.VALID);
+            link.setLinkId(linkId);
+            link.setTargetUrl(targetUrl);
+            link.setRoute(route);
+            return link;
+        }
+
+        public boolean isValid() {
+            return status == TokenStatus.VALID;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.common.TrafficClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求限流服务
+ * 按流量类别分别对openId和IP做滑动窗口限流：每个key对应一组按时间分桶的计数器环，
+ * 保存在有容量上限的缓存中，长时间不活跃的key自动淘汰。代理下载另外限制单个IP的并发数。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class RateLimitService {
+
+    // 每个窗口划分的时间桶数量
+    private static final int BUCKETS = 6;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.max-keys:100000}")
+    private long maxKeys;
+
+    @Value("${rate-limit.parse.window-seconds:60}")
+    private int parseWindowSeconds;
+
+    @Value("${rate-limit.parse.user-limit:20}")
+    private int parseUserLimit;
+
+    @Value("${rate-limit.parse.ip-limit:60}")
+    private int parseIpLimit;
+
+    @Value("${rate-limit.proxy.window-seconds:60}")
+    private int proxyWindowSeconds;
+
+    @Value("${rate-limit.proxy.ip-limit:300}")
+    private int proxyIpLimit;
+
+    @Value("${rate-limit.proxy.max-concurrent-per-ip:8}")
+    private int proxyMaxConcurrentPerIp;
+
+    @Value("${rate-limit.auth.window-seconds:60}")
+    private int authWindowSeconds;
+
+    @Value("${rate-limit.auth.user-limit:10}")
+    private int authUserLimit;
+
+    @Value("${rate-limit.auth.ip-limit:30}")
+    private int authIpLimit;
+
+    private final Map<TrafficClass, Rule> rules = new EnumMap<>(TrafficClass.class);
+
+    // key：类别:维度:标识，value：滑动窗口计数器
+    private Cache<String, SlidingWindow> windows;
+
+    // key：IP，value：正在进行的代理请求数
+    private Cache<String, AtomicInteger> proxyConcurrency;
+
+    @PostConstruct
+    public void init() {
+        rules.put(TrafficClass.PARSE, new Rule(parseWindowSeconds, parseUserLimit, parseIpLimit));
+        rules.put(TrafficClass.PROXY, new Rule(proxyWindowSeconds, 0, proxyIpLimit));
+        rules.put(TrafficClass.AUTH, new Rule(authWindowSeconds, authUserLimit, authIpLimit));
+
+        int maxWindowSeconds = Math.max(parseWindowSeconds, Math.max(proxyWindowSeconds, authWindowSeconds));
+        windows = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(maxWindowSeconds, TimeUnit.SECONDS)
+                .build();
+        proxyConcurrency = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+    }
+
+    /**
+     * 检查请求是否允许通过，允许时计入窗口
+     *
+     * @param trafficClass 流量类别
+     * @param openId 用户openId，可为空
+     * @param ip 客户端IP
+     * @return 需要等待的秒数，0表示允许通过
+     */
+    public int tryAcquire(TrafficClass trafficClass, String openId, String ip) {
+        Rule rule = rules.get(trafficClass);
+        if (!enabled || rule == null) {
+            return 0;
+        }
+
+        int retryAfter = 0;
+        if (rule.userLimit > 0 && StringUtils.hasText(openId)) {
+            retryAfter = window(trafficClass, "user:", openId, rule).tryAcquire(rule.limitFor(true));
+        }
+        if (retryAfter == 0 && rule.ipLimit > 0 && StringUtils.hasText(ip)) {
+            retryAfter = window(trafficClass, "ip:", ip, rule).tryAcquire(rule.limitFor(false));
+        }
+
+        if (retryAfter == 0) {
+            rule.allowed.increment();
+        } else {
+            rule.rejected.increment();
+        }
+        return retryAfter;
+    }
+
+    /**
+     * 占用一个代理并发名额
+     *
+     * @param ip 客户端IP
+     * @return 是否占用成功，成功后必须调用releaseProxy释放
+     */
+    public boolean tryAcquireProxy(String ip) {
+        if (!enabled || proxyMaxConcurrentPerIp <= 0 || !StringUtils.hasText(ip)) {
+            return true;
+        }
+        AtomicInteger inFlight = proxyConcurrency.get(ip, key -> new AtomicInteger());
+        if (inFlight.incrementAndGet() > proxyMaxConcurrentPerIp) {
+            inFlight.decrementAndGet();
+            rules.get(TrafficClass.PROXY).rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 释放代理并发名额
+     *
+     * @param ip 客户端IP
+     */
+    public void releaseProxy(String ip) {
+        if (!enabled || proxyMaxConcurrentPerIp <= 0 || !StringUtils.hasText(ip)) {
+            return;
+        }
+        AtomicInteger inFlight = proxyConcurrency.getIfPresent(ip);
+        if (inFlight != null) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 获取限流统计信息
+     *
+     * @return 各类别的通过和拒绝数量
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<TrafficClass, Rule> entry : rules.entrySet()) {
+            Map<String, Object> classStats = new HashMap<>();
+            classStats.put("allowed", entry.getValue().allowed.sum());
+            classStats.put("rejected", entry.getValue().rejected.sum());
+            stats.put(entry.getKey().getCode(), classStats);
+        }
+        stats.put("trackedKeys", windows.estimatedSize());
+        return stats;
+    }
+
+    private SlidingWindow window(TrafficClass trafficClass, String dimension, String id, Rule rule) {
+        return windows.get(trafficClass.getCode() + ':' + dimension + id,
+                key -> new SlidingWindow(rule.windowMillis / BUCKETS));
+    }
+
+    /**
+     * 限流规则
+     */
+    private static class Rule {
+        private final long windowMillis;
+        private final int userLimit;
+        private final int ipLimit;
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        Rule(int windowSeconds, int userLimit, int ipLimit) {
+            this.windowMillis = Math.max(BUCKETS, windowSeconds * 1000L);
+            this.userLimit = userLimit;
+            this.ipLimit = ipLimit;
+        }
+
+        int limitFor(boolean user) {
+            return user ? userLimit : ipLimit;
+        }
+    }
+
+    /**
+     * 滑动窗口计数器
+     * 窗口由固定数量的时间桶组成环，桶过期后复用，统计时只累加仍在窗口内的桶
+     */
+    private static class SlidingWindow {
+        private final long bucketMillis;
+        private final long[] bucketStarts = new long[BUCKETS];
+        private final int[] counts = new int[BUCKETS];
+
+        SlidingWindow(long bucketMillis) {
+            this.bucketMillis = bucketMillis;
+        }
+
+        /**
+         * @return 需要等待的秒数，0表示允许通过
+         */
+        synchronized int tryAcquire(int limit) {
+            long now = System.currentTimeMillis();
+            long currentStart = now - now % bucketMillis;
+            long windowStart = currentStart - bucketMillis * (BUCKETS - 1);
+
+            int total = 0;
+            long oldestStart = currentStart;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (bucketStarts[i] >= windowStart) {
+                    total += counts[i];
+                    if (counts[i] > 0 && bucketStarts[i] < oldestStart) {
+                        oldestStart = bucketStarts[i];
+                    }
+                }
+            }
+            if (total >= limit) {
+                // 最早的桶移出窗口后才会有新的名额
+                long waitMillis = oldestStart + bucketMillis * BUCKETS - now;
+                return (int) Math.max(1, (waitMillis + 999) / 1000);
+            }
+
+            int index = (int) ((currentStart / bucketMillis) % BUCKETS);
+            if (bucketStarts[index] != currentStart) {
+                bucketStarts[index] = currentStart;
+                counts[index] = 0;
+            }
+            counts[index]++;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.video.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分段并行回源服务
+ * 部分CDN对单个连接限速，大文件拆分为多个Range请求并行下载，再按顺序写给客户端。
+ * 同时下载的分段数量有上限，已下载但未轮到写出的分段暂存在内存中，内存占用不超过 并行数 × 分段大小；
+ * 每个域名的回源连接数另有全局上限。某个分段失败时只重试该分段。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class SegmentedFetchService {
+
+    @Value("${proxy.segmented.enabled:false}")
+    private boolean enabled;
+
+    @Value("${proxy.segmented.platforms:xiaohongshu,weibo}")
+    private String platforms;
+
+    @Value("${proxy.segmented.min-size-mb:16}")
+    private long minSizeMb;
+
+    @Value("${proxy.segmented.segment-size-kb:2048}")
+    private int segmentSizeKb;
+
+    @Value("${proxy.segmented.parallelism:4}")
+    private int parallelism;
+
+    @Value("${proxy.segmented.max-connections-per-host:16}")
+    private int maxConnectionsPerHost;
+
+    @Value("${proxy.segmented.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${proxy.segmented.connect-timeout-ms:8000}")
+    private int connectTimeout;
+
+    @Value("${proxy.segmented.read-timeout-ms:30000}")
+    private int readTimeout;
+
+    @Autowired
+    @Qualifier("segmentExecutor")
+    private TaskExecutor segmentExecutor;
+
+    private Set<String> enabledPlatforms;
+
+    // key：域名，value：该域名剩余的回源连接名额
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private final LongAdder segmentedDownloads = new LongAdder();
+    private final LongAdder segmentRetries = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        enabledPlatforms = new HashSet<>();
+        for (String platform : platforms.split(",")) {
+            if (StringUtils.hasText(platform)) {
+                enabledPlatforms.add(platform.trim());
+            }
+        }
+    }
+
+    /**
+     * 判断是否应使用分段下载
+     *
+     * @param platformCode 平台编码
+     * @param length 需要下载的字节数
+     * @param acceptRanges 上游是否支持Range
+     * @return 是否分段下载
+     */
+    public boolean shouldSegment(String platformCode, long length, boolean acceptRanges) {
+        return enabled && acceptRanges && enabledPlatforms.contains(platformCode)
+                && length >= minSizeMb * 1024 * 1024 && length > segmentSizeKb * 1024L;
+    }
+
+    /**
+     * 分段下载指定区间并按顺序写入
+     *
+     * @param targetUrl 上游URL
+     * @param headers 回源请求头
+     * @param validator 上游的ETag或Last-Modified，用于确认各分段来自同一文件，可为空
+     * @param start 起始字节（含）
+     * @param end 结束字节（含）
+     * @param sink 数据接收方
+     * @return 写出的字节数
+     * @throws IOException 某个分段重试后仍失败或写出失败
+     */
+    public long fetch(String targetUrl, Map<String, String> headers, String validator,
+                      long start, long end, SegmentSink sink) throws IOException {
+        String host = new URL(targetUrl).getHost();
+        Semaphore permits = hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnectionsPerHost));
+        long segmentSize = segmentSizeKb * 1024L;
+        long nextStart = start;
+        long written = 0;
+        Deque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+        segmentedDownloads.increment();
+
+        try {
+            while (nextStart <= end || !window.isEmpty()) {
+                // 补充下载窗口：没有进行中的分段时必须等待名额，否则只在有空闲名额时补充
+                while (nextStart <= end && window.size() < parallelism) {
+                    if (!window.isEmpty() && !permits.tryAcquire()) {
+                        break;
+                    }
+                    if (window.isEmpty() && !permits.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+                        throw new IOException("等待回源连接名额超时：" + host);
+                    }
+                    long segmentStart = nextStart;
+                    long segmentEnd = Math.min(end, segmentStart + segmentSize - 1);
+                    window.addLast(submit(targetUrl, headers, validator, segmentStart, segmentEnd, permits));
+                    nextStart = segmentEnd + 1;
+                }
+
+                byte[] data = await(window.peekFirst());
+                window.pollFirst();
+                sink.write(data, 0, data.length);
+                written += data.length;
+            }
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分段下载被中断", e);
+        } finally {
+            // 客户端断开或出错时取消剩余分段，已开始的分段结束后自行释放名额
+            for (CompletableFuture<byte[]> future : window) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 分段下载次数和分段重试次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("downloads", segmentedDownloads.sum());
+        stats.put("retries", segmentRetries.sum());
+        return stats;
+    }
+
+    private CompletableFuture<byte[]> submit(String targetUrl, Map<String, String> headers, String validator,
+                                             long start, long end, Semaphore permits) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        try {
+            segmentExecutor.execute(() -> {
+                try {
+                    if (!future.isCancelled()) {
+                        future.complete(fetchSegmentWithRetry(targetUrl, headers, validator, start, end, future));
+                    }
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private byte[] fetchSegmentWithRetry(String targetUrl, Map<String, String> headers, String validator,
+                                         long start, long end, CompletableFuture<byte[]> future) throws IOException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries && !future.isCancelled(); attempt++) {
+            if (attempt > 0) {
+                segmentRetries.increment();
+                log.debug("分段下载重试，区间：{}-{}，第{}次", start, end, attempt);
+            }
+            try {
+                return fetchSegment(targetUrl, headers, validator, start, end);
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : new IOException("分段下载已取消");
+    }
+
+    private byte[] fetchSegment(String targetUrl, Map<String, String> headers, String validator,
+                                long start, long end) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(targetUrl).openConnection();
+        try {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+            if (StringUtils.hasText(validator)) {
+                // 文件已变化时上游返回200完整内容，按失败处理
+                connection.setRequestProperty("If-Range", validator);
+            }
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setInstanceFollowRedirects(true);
+            connection.setUseCaches(false);
+
+            int responseCode = connection.getResponseCode();
+            String contentRange = connection.getHeaderField("Content-Range");
+            if (responseCode != HttpURLConnection.HTTP_PARTIAL || contentRange == null
+                    || !contentRange.startsWith("bytes " + start + "-" + end + "/")) {
+                throw new IOException("上游未返回预期的分段，状态码：" + responseCode + "，Content-Range：" + contentRange);
+            }
+
+            int length = (int) (end - start + 1);
+            byte[] data = new byte[length];
+            int offset = 0;
+            try (InputStream inputStream = connection.getInputStream()) {
+                int bytesRead;
+                while (offset < length && (bytesRead = inputStream.read(data, offset, length - offset)) != -1) {
+                    offset += bytesRead;
+                }
+            }
+            if (offset < length) {
+                throw new IOException("分段数据不完整，期望" + length + "字节，实际" + offset + "字节");
+            }
+            return data;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> future) throws IOException, InterruptedException {
+        try {
+            // 单个分段包含全部重试的最长等待时间
+            return future.get((long) (maxRetries + 1) * (connectTimeout + readTimeout) * 2, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (TimeoutException e) {
+            throw new IOException("分段下载超时", e);
+        }
+    }
+
+    /**
+     * 分段数据接收方，按文件顺序调用
+     */
+    @FunctionalInterface
+    public interface SegmentSink {
+        void write(byte[] buffer, int offset, int length) throws IOException;
+    }
+}
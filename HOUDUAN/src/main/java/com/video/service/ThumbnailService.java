@@ -0,0 +1,414 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 封面缩略图服务
+ * 原图只下载和解码一次，按配置的几个宽度缩放并编码（JDK ImageIO），结果按（上游地址，宽度）缓存在内存中。
+ * 请求的宽度向上取最接近的配置宽度，不放大原图；无法解码的原图（如WebP、CMYK JPEG）直接返回原图。
+ * 原图流式下载，超过大小上限时立即中止。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    @Autowired
+    @Qualifier("proxyRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    private LinkRefreshService linkRefreshService;
+
+    @Value("${proxy.thumbnail.widths:160,320,640}")
+    private String widthsConfig;
+
+    @Value("${proxy.thumbnail.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${proxy.thumbnail.cache-mb:64}")
+    private long cacheMb;
+
+    @Value("${proxy.thumbnail.cache-hours:24}")
+    private long cacheHours;
+
+    @Value("${proxy.thumbnail.max-source-mb:10}")
+    private long maxSourceMb;
+
+    @Value("${proxy.thumbnail.max-source-pixels:40000000}")
+    private long maxSourcePixels;
+
+    @Value("${proxy.thumbnail.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${proxy.thumbnail.wait-timeout-ms:15000}")
+    private long waitTimeoutMs;
+
+    private int[] widths;
+
+    // key：上游地址的稳定短ID:宽度，value：缩略图
+    private Cache<String, Thumbnail> thumbnailCache;
+
+    // 正在生成的原图，同一原图同时只下载和解码一次
+    private final Map<String, CompletableFuture<Map<Integer, Thumbnail>>> inflight = new ConcurrentHashMap<>();
+
+    // 解码和缩放占用较多内存和CPU，限制同时处理的原图数量
+    private Semaphore permits;
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder passthrough = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        TreeSet<Integer> configured = new TreeSet<>();
+        for (String width : widthsConfig.split(",")) {
+            if (!width.trim().isEmpty()) {
+                configured.add(Integer.parseInt(width.trim()));
+            }
+        }
+        widths = configured.stream().mapToInt(Integer::intValue).toArray();
+        permits = new Semaphore(maxConcurrent);
+        thumbnailCache = Caffeine.newBuilder()
+                .maximumWeight(cacheMb * 1024 * 1024)
+                .weigher((String key, Thumbnail thumbnail) -> thumbnail.data.length)
+                .expireAfterAccess(cacheHours, TimeUnit.HOURS)
+                .recordStats()
+                .build();
+        log.info("封面缩略图宽度：{}", Arrays.toString(widths));
+    }
+
+    /**
+     * 获取封面缩略图
+     *
+     * @param link 封面的代理链接
+     * @param width 请求的宽度，向上取最接近的配置宽度
+     * @return 缩略图
+     * @throws IOException 下载或解码失败
+     */
+    public Thumbnail getThumbnail(ProxyTokenService.ResolvedLink link, int width) throws IOException {
+        int target = snapWidth(width);
+        String sourceKey = ProxyTokenService.stableLinkId(link.getTargetUrl());
+        Thumbnail cached = thumbnailCache.getIfPresent(sourceKey + ":" + target);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<Map<Integer, Thumbnail>> own = new CompletableFuture<>();
+        CompletableFuture<Map<Integer, Thumbnail>> existing = inflight.putIfAbsent(sourceKey, own);
+        if (existing != null) {
+            return await(existing).get(target);
+        }
+        try {
+            Map<Integer, Thumbnail> variants = generate(link);
+            for (Map.Entry<Integer, Thumbnail> entry : variants.entrySet()) {
+                thumbnailCache.put(sourceKey + ":" + entry.getKey(), entry.getValue());
+            }
+            own.complete(variants);
+            return variants.get(target);
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(sourceKey, own);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 缓存数量、命中率和生成次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("widths", widths);
+        stats.put("size", thumbnailCache.estimatedSize());
+        stats.put("hitRate", thumbnailCache.stats().hitRate());
+        stats.put("generated", generated.sum());
+        stats.put("passthrough", passthrough.sum());
+        return stats;
+    }
+
+    private int snapWidth(int width) {
+        for (int configured : widths) {
+            if (configured >= width) {
+                return configured;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    /**
+     * 下载原图并生成所有配置宽度的缩略图
+     */
+    private Map<Integer, Thumbnail> generate(ProxyTokenService.ResolvedLink link) throws IOException {
+        try {
+            if (!permits.tryAcquire(waitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("缩略图处理繁忙");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缩略图处理被中断");
+        }
+        try {
+            Thumbnail original = fetchSource(link);
+            Map<Integer, Thumbnail> variants = new HashMap<>();
+            try {
+                BufferedImage image = decode(original.data);
+                if (image != null) {
+                    boolean alpha = image.getColorModel().hasAlpha();
+                    for (int width : widths) {
+                        // 不放大原图，所有更大的宽度共用原图
+                        variants.put(width, width >= image.getWidth() ? original : encode(resize(image, width), alpha));
+                    }
+                    generated.increment();
+                    return variants;
+                }
+            } catch (IOException | RuntimeException e) {
+                // CMYK JPEG等ImageIO无法处理的图片按不支持的格式处理
+                log.debug("解码封面失败，返回原图：{}", e.getMessage());
+            }
+
+            // ImageIO不支持或解码失败时直接返回原图
+            passthrough.increment();
+            for (int width : widths) {
+                variants.put(width, original);
+            }
+            return variants;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 下载原图，上游地址过期时重新解析后重试一次
+     */
+    private Thumbnail fetchSource(ProxyTokenService.ResolvedLink link) throws IOException {
+        String url = link.getTargetUrl();
+        try {
+            return fetch(url, link.getRoute());
+        } catch (HttpClientErrorException e) {
+            String freshUrl = linkRefreshService.isExpiredResponse(e.getRawStatusCode())
+                    ? linkRefreshService.refresh(link, url) : null;
+            if (freshUrl == null) {
+                throw e;
+            }
+            return fetch(freshUrl, link.getRoute());
+        }
+    }
+
+    /**
+     * 流式读取原图，Content-Length或已读取的数据超过上限时立即中止，不缓冲完整响应
+     */
+    private Thumbnail fetch(String url, String route) throws IOException {
+        // 按域名识别平台，未识别时按路由平台兜底
+        PlatformRegistry.PlatformProfile profile = platformRegistry.resolveHost(new URL(url).getHost());
+        if (profile.isGeneral()) {
+            profile = platformRegistry.getByRoute(route);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", profile.getUserAgent());
+        headers.set("Accept", "image/jpeg,image/png,image/*;q=0.8");
+        if (profile.getReferer() != null) {
+            headers.set("Referer", profile.getReferer());
+        }
+        long maxBytes = maxSourceMb * 1024 * 1024;
+        Thumbnail source;
+        try {
+            source = restTemplate.execute(url, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(new HttpEntity<>(headers)),
+                    response -> {
+                        MediaType contentType = response.getHeaders().getContentType();
+                        long contentLength = response.getHeaders().getContentLength();
+                        if (contentLength > maxBytes) {
+                            throw new IOException("原图过大：" + contentLength + " bytes");
+                        }
+                        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                                contentLength > 0 ? (int) contentLength : 64 * 1024);
+                        try (InputStream body = response.getBody()) {
+                            byte[] buffer = new byte[16 * 1024];
+                            int read;
+                            while ((read = body.read(buffer)) >= 0) {
+                                if (output.size() + read > maxBytes) {
+                                    throw new IOException("原图过大：超过" + maxBytes + " bytes");
+                                }
+                                output.write(buffer, 0, read);
+                            }
+                        }
+                        return new Thumbnail(output.toByteArray(),
+                                contentType != null ? contentType.toString() : "image/jpeg");
+                    });
+        } catch (ResourceAccessException e) {
+            // 超过大小上限等读取错误由RestTemplate包装，还原为IOException
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        if (source == null || source.data.length == 0) {
+            throw new IOException("上游返回空内容");
+        }
+        return source;
+    }
+
+    /**
+     * 解码原图，先读取尺寸，像素过多时拒绝解码
+     *
+     * @return 图片，格式不支持时返回null
+     * @throws IOException 解码失败或像素过多
+     */
+    private BufferedImage decode(byte[] data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxSourcePixels) {
+                    throw new IOException("原图像素过多：" + reader.getWidth(0) + "x" + reader.getHeight(0));
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 逐步减半缩放到目标宽度，避免一次缩放过多产生锯齿
+     */
+    private static BufferedImage resize(BufferedImage source, int targetWidth) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage scaled = new BufferedImage(width, height, type);
+            Graphics2D graphics = scaled.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = scaled;
+        } while (width > targetWidth);
+        return current;
+    }
+
+    /**
+     * 编码缩略图：带透明通道的使用PNG，其余使用JPEG
+     */
+    private Thumbnail encode(BufferedImage image, boolean alpha) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (alpha) {
+            ImageIO.write(image, "png", output);
+            return new Thumbnail(output.toByteArray(), "image/png");
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new Thumbnail(output.toByteArray(), "image/jpeg");
+    }
+
+    private Map<Integer, Thumbnail> await(CompletableFuture<Map<Integer, Thumbnail>> future) throws IOException {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缩略图生成被中断");
+        } catch (TimeoutException e) {
+            throw new IOException("等待缩略图生成超时");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 编码后的缩略图
+     */
+    public static class Thumbnail {
+        private final byte[] data;
+        private final String contentType;
+
+        Thumbnail(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.video.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 签名地址过期时间解析
+ * 从平台CDN地址的查询参数（x-expires、expire、t、e等）中提取过期时间，用于计算解析结果缓存时间和响应的Cache-Control。
+ * 参数名按平台配置，未配置时使用通用列表；参数值支持十进制秒、毫秒和十六进制秒，
+ * 只接受未来一定范围内的时间，避免把签发时间等参数误认为过期时间。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Service
+public class UrlExpiryExtractor {
+
+    // 通用的过期时间参数名（按优先级）
+    private static final List<String> DEFAULT_EXPIRY_PARAMS = Collections.unmodifiableList(Arrays.asList(
+            "x-expires", "x-oss-expires", "expires", "expire", "deadline", "e", "t", "wstime"
+    ));
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Value("${business.url-expiry.max-horizon-days:30}")
+    private long maxHorizonDays;
+
+    /**
+     * 提取上游地址的过期时间
+     *
+     * @param url 上游地址
+     * @return 过期时间（秒级时间戳），无法识别时返回0
+     */
+    public long extractExpireAt(String url) {
+        if (!StringUtils.hasText(url)) {
+            return 0;
+        }
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return 0;
+        }
+        int hash = url.indexOf('#', query);
+        String[] params = url.substring(query + 1, hash >= 0 ? hash : url.length()).split("&");
+
+        List<String> names = platformRegistry.resolveUrl(url).getExpiryParams();
+        if (names == null) {
+            names = DEFAULT_EXPIRY_PARAMS;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        for (String name : names) {
+            for (String param : params) {
+                int eq = param.indexOf('=');
+                if (eq <= 0 || !name.equals(param.substring(0, eq).toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                long expireAt = parseTimestamp(param.substring(eq + 1));
+                if (expireAt > now && expireAt - now <= maxHorizonDays * 86400) {
+                    return expireAt;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 计算上游地址的剩余有效时间
+     *
+     * @param url 上游地址
+     * @return 剩余秒数，无法识别时返回-1
+     */
+    public long remainingSeconds(String url) {
+        long expireAt = extractExpireAt(url);
+        return expireAt > 0 ? Math.max(0, expireAt - System.currentTimeMillis() / 1000) : -1;
+    }
+
+    /**
+     * 计算代理响应的Cache-Control缓存时间，不超过上游地址和代理令牌的剩余有效时间
+     *
+     * @param targetUrl 上游地址
+     * @param tokenExpireAt 代理令牌过期时间（秒级时间戳），0表示不限制
+     * @param defaultMaxAge 默认缓存时间（秒）
+     * @return 缓存时间（秒）
+     */
+    public long cacheMaxAge(String targetUrl, long tokenExpireAt, long defaultMaxAge) {
+        long maxAge = defaultMaxAge;
+        long remaining = remainingSeconds(targetUrl);
+        if (remaining >= 0) {
+            maxAge = Math.min(maxAge, remaining);
+        }
+        if (tokenExpireAt > 0) {
+            maxAge = Math.min(maxAge, Math.max(0, tokenExpireAt - System.currentTimeMillis() / 1000));
+        }
+        return maxAge;
+    }
+
+    /**
+     * 解析时间戳：13位按毫秒，其余十进制按秒，含a-f时按十六进制秒
+     */
+    private static long parseTimestamp(String value) {
+        if (!StringUtils.hasText(value) || value.length() > 16) {
+            return 0;
+        }
+        try {
+            boolean decimal = true;
+            for (int i = 0; i < value.length(); i++) {
+                if (!Character.isDigit(value.charAt(i))) {
+                    decimal = false;
+                    break;
+                }
+            }
+            if (!decimal) {
+                return Long.parseLong(value, 16);
+            }
+            long timestamp = Long.parseLong(value);
+            return value.length() == 13 ? timestamp / 1000 : timestamp;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
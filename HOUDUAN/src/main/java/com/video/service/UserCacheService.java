@@ -0,0 +1,231 @@
+package com.video.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.video.dto.UserBrief;
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户缓存服务
+ * 按openId缓存用户信息，读取时未命中再查询数据库；用户数据被修改后需调用evict使缓存失效
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class UserCacheService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${business.user-cache.max-size:20000}")
+    private long maxSize;
+
+    @Value("${business.user-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${business.user-cache.brief-ttl-seconds:1800}")
+    private long briefTtlSeconds;
+
+    // 完整用户信息，缓存的是独立副本，不与持久化上下文共享
+    private Cache<String, User> userCache;
+
+    // 用户精简信息（主键和状态）
+    private Cache<String, UserBrief> briefCache;
+
+    @PostConstruct
+    public void init() {
+        userCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        briefCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(briefTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取用户信息（未删除）
+     * 返回的是缓存数据的副本，修改后如需保存请通过Repository重新查询
+     *
+     * @param openId 微信openId
+     * @return 用户信息
+     */
+    public Optional<User> getUser(String openId) {
+        if (!StringUtils.hasText(openId)) {
+            return Optional.empty();
+        }
+
+        User cached = userCache.getIfPresent(openId);
+        if (cached == null) {
+            Optional<User> userOpt = userRepository.findByOpenId(openId);
+            if (!userOpt.isPresent()) {
+                // 不缓存不存在的用户，避免首次登录创建后仍读到空值
+                return Optional.empty();
+            }
+            cached = copyOf(userOpt.get());
+            userCache.put(openId, cached);
+            briefCache.put(openId, new UserBrief(cached.getId(), cached.getStatus()));
+        }
+        return Optional.of(copyOf(cached));
+    }
+
+    /**
+     * 获取用户精简信息（仅主键和状态）
+     *
+     * @param openId 微信openId
+     * @return 用户精简信息
+     */
+    public Optional<UserBrief> getBrief(String openId) {
+        if (!StringUtils.hasText(openId)) {
+            return Optional.empty();
+        }
+
+        UserBrief brief = briefCache.getIfPresent(openId);
+        if (brief == null) {
+            Optional<UserBrief> briefOpt = userRepository.findBriefByOpenId(openId);
+            if (!briefOpt.isPresent()) {
+                return Optional.empty();
+            }
+            brief = briefOpt.get();
+            briefCache.put(openId, brief);
+        }
+        return Optional.of(new UserBrief(brief.getId(), brief.getStatus()));
+    }
+
+    /**
+     * 用户是否已在缓存中（不查询数据库，不计入命中率统计）
+     *
+     * @param openId 微信openId
+     * @return 是否已缓存
+     */
+    public boolean isCached(String openId) {
+        return StringUtils.hasText(openId) && briefCache.asMap().containsKey(openId);
+    }
+
+    /**
+     * 更新缓存中的最后登录信息
+     * 登录信息不影响其他字段，直接修改缓存副本而不是使其失效
+     *
+     * @param openId 微信openId
+     * @param lastLoginTime 最后登录时间
+     * @param lastLoginIp 最后登录IP
+     */
+    public void updateLastLogin(String openId, LocalDateTime lastLoginTime, String lastLoginIp) {
+        if (!StringUtils.hasText(openId)) {
+            return;
+        }
+        userCache.asMap().computeIfPresent(openId, (key, cached) -> {
+            User updated = copyOf(cached);
+            updated.setLastLoginTime(lastLoginTime);
+            updated.setLastLoginIp(lastLoginIp);
+            return updated;
+        });
+    }
+
+    /**
+     * 使用户缓存失效
+     * 在事务中调用时，提交后会再次失效，避免并发请求在提交前把旧数据重新加载进缓存
+     *
+     * @param openId 微信openId
+     */
+    public void evict(String openId) {
+        evict(openId, true);
+    }
+
+    /**
+     * 只使完整用户信息缓存失效，保留精简信息
+     * 用于不影响主键和状态的修改（如解析次数），避免高频路径上精简信息反复未命中
+     *
+     * @param openId 微信openId
+     */
+    public void evictDetail(String openId) {
+        evict(openId, false);
+    }
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("user", toStatsMap(userCache.stats(), userCache.estimatedSize()));
+        stats.put("brief", toStatsMap(briefCache.stats(), briefCache.estimatedSize()));
+        return stats;
+    }
+
+    /**
+     * 定时输出缓存命中率
+     */
+    @Scheduled(fixedDelayString = "${business.user-cache.stats-log-interval-ms:300000}")
+    public void logStats() {
+        CacheStats userStats = userCache.stats();
+        CacheStats briefStats = briefCache.stats();
+        log.info("用户缓存命中率：{}（{}/{}），精简信息命中率：{}（{}/{}），缓存数量：{}",
+                String.format("%.2f", userStats.hitRate()), userStats.hitCount(), userStats.requestCount(),
+                String.format("%.2f", briefStats.hitRate()), briefStats.hitCount(), briefStats.requestCount(),
+                userCache.estimatedSize());
+    }
+
+    private void evict(String openId, boolean includeBrief) {
+        if (!StringUtils.hasText(openId)) {
+            return;
+        }
+        invalidate(openId, includeBrief);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(openId, includeBrief);
+                }
+            });
+        }
+    }
+
+    private void invalidate(String openId, boolean includeBrief) {
+        userCache.invalidate(openId);
+        if (includeBrief) {
+            briefCache.invalidate(openId);
+        }
+    }
+
+    private static Map<String, Object> toStatsMap(CacheStats stats, long size) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("size", size);
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        return map;
+    }
+
+    private static User copyOf(User source) {
+        User copy = new User();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+}
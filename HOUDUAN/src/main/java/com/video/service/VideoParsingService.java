@@ -1,18 +1,23 @@
 package com.video.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.video.entity.User;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.video.common.IpUtils;
+import com.video.dto.MediaMetadata;
+import com.video.dto.UserBrief;
+import com.video.dto.VideoParseData;
+import com.video.dto.VideoParseResult;
+import com.video.dto.WatermarkApiResponse;
 import com.video.entity.VideoParseRecord;
 import com.video.repository.UserRepository;
 import com.video.repository.VideoParseRecordRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.LinkedMultiValueMap;
@@ -20,15 +25,13 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.Base64;
 
 /**
  * 视频解析服务类
@@ -40,7 +43,12 @@ import java.util.Base64;
 @Service
 public class VideoParsingService {
 
+    // 代理链接对应的解析结果字段
+    public static final String MEDIA_FIELD_VIDEO = "video";
+    public static final String MEDIA_FIELD_COVER = "cover";
+
     @Autowired
+    @Qualifier("parseRestTemplate")
     private RestTemplate restTemplate;
 
     @Autowired
@@ -49,12 +57,33 @@ public class VideoParsingService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCacheService userCacheService;
+
     @Autowired
     private ObjectMapper objectMapper;
     
     @Autowired
     private VideoUrlPreprocessor videoUrlPreprocessor;
 
+    @Autowired
+    private ParseFailureCache parseFailureCache;
+
+    @Autowired
+    private DailyParseQuota dailyParseQuota;
+
+    @Autowired
+    private PlatformRegistry platformRegistry;
+
+    @Autowired
+    private ProxyTokenService proxyTokenService;
+
+    @Autowired
+    private ParseResultCache parseResultCache;
+
+    @Autowired
+    private Mp4MetadataService mp4MetadataService;
+
     @Value("${watermark.api.url}")
     private String watermarkApiUrl;
 
@@ -64,19 +93,12 @@ public class VideoParsingService {
     @Value("${proxy.domain}")
     private String proxyDomain;
 
-    // 支持的平台正则表达式
-    private static final Map<String, Pattern> PLATFORM_PATTERNS = new HashMap<>();
-    
-    static {
-        PLATFORM_PATTERNS.put("抖音", Pattern.compile("(douyin|iesdouyin)"));
-        PLATFORM_PATTERNS.put("快手", Pattern.compile("kuaishou"));
-        PLATFORM_PATTERNS.put("小红书", Pattern.compile("xiaohongshu|xhslink"));
-        PLATFORM_PATTERNS.put("微视", Pattern.compile("weishi"));
-        PLATFORM_PATTERNS.put("火山", Pattern.compile("huoshan"));
-        PLATFORM_PATTERNS.put("西瓜视频", Pattern.compile("ixigua"));
-        PLATFORM_PATTERNS.put("皮皮虾", Pattern.compile("pipix"));
-        PLATFORM_PATTERNS.put("最右", Pattern.compile("zuiyou"));
-        PLATFORM_PATTERNS.put("微博", Pattern.compile("weibo"));
+    // 预先构建的响应读取器，避免每次调用重复查找反序列化器
+    private ObjectReader watermarkResponseReader;
+
+    @PostConstruct
+    public void init() {
+        watermarkResponseReader = objectMapper.readerFor(WatermarkApiResponse.class);
     }
 
     /**
@@ -88,21 +110,35 @@ public class VideoParsingService {
      * @return 解析结果
      */
     @Transactional
-    public Map<String, Object> parseVideo(String openId, String videoUrl, HttpServletRequest request) {
+    public VideoParseResult parseVideo(String openId, String videoUrl, HttpServletRequest request) {
         log.info("开始解析视频，用户：{}，链接：{}", openId, videoUrl);
         
+        // 命中失败缓存时直接返回，不再调用外部API和写入解析记录
+        String cachedErrorCode = parseFailureCache.getFailureCode(videoUrl);
+        if (cachedErrorCode != null) {
+            String errorMsg = getErrorMessage(cachedErrorCode);
+            log.info("命中解析失败缓存，用户：{}，错误码：{}，错误信息：{}", openId, cachedErrorCode, errorMsg);
+            return VideoParseResult.failure(errorMsg);
+        }
+        
+        // 每日解析次数限制，占用成功才调用外部API并写入解析记录，解析未成功时在finally中归还
+        if (!dailyParseQuota.tryAcquire(openId)) {
+            log.info("用户今日解析次数已达上限，用户：{}，上限：{}", openId, dailyParseQuota.getLimit());
+            return VideoParseResult.failure("今日解析次数已达上限，请明天再试");
+        }
+        
         long startTime = System.currentTimeMillis();
         VideoParseRecord record = new VideoParseRecord();
         record.setOpenId(openId);
         record.setOriginalUrl(videoUrl);
         record.setPlatform(detectPlatform(videoUrl));
-        record.setUserIp(getClientIpAddress(request));
+        record.setUserIp(IpUtils.getClientIpAddress(request));
         record.setUserAgent(request.getHeader("User-Agent"));
         record.setParseStatus(0); // 解析中
         
         try {
             // 查找用户信息
-            Optional<User> userOpt = userRepository.findByOpenIdAndIsDeleted(openId, 0);
+            Optional<UserBrief> userOpt = userCacheService.getBrief(openId);
             if (userOpt.isPresent()) {
                 record.setUserId(userOpt.get().getId());
             }
@@ -110,16 +146,15 @@ public class VideoParsingService {
             // 保存解析记录
             record = videoParseRecordRepository.save(record);
             
-            // 调用外部API解析视频
-            Map<String, Object> parseResult = callWatermarkApi(videoUrl);
+            // 调用外部API解析视频（优先使用未过期的缓存结果）
+            WatermarkApiResponse parseResult = fetchParseResult(videoUrl);
             
             // 处理解析结果
-            if (parseResult != null && "1".equals(String.valueOf(parseResult.get("code")))) {
+            if (parseResult != null && parseResult.isSuccess()) {
                 // 解析成功
-                @SuppressWarnings("unchecked")
-                Map<String, Object> data = (Map<String, Object>) parseResult.get("data");
+                VideoParseData data = parseResult.getData();
                 
-                String videoSrc = (String) data.get("videoSrc");
+                String videoSrc = data.getVideoSrc();
                 
                 // 预处理视频URL
                 VideoUrlPreprocessor.VideoUrlInfo urlInfo = videoUrlPreprocessor.preprocessVideoUrl(videoSrc);
@@ -132,22 +167,21 @@ public class VideoParsingService {
                 }
                 
                 // 转换视频URL为代理URL
-                String proxyVideoUrl = convertToProxyUrl(videoSrc);
-                String proxyCoverUrl = convertToProxyUrl((String) data.get("imageSrc"));
+                String proxyVideoUrl = convertToProxyUrl(videoSrc, record.getId(), MEDIA_FIELD_VIDEO);
+                String proxyCoverUrl = convertToProxyUrl(data.getImageSrc(), record.getId(), MEDIA_FIELD_COVER);
                 
-                record.setVideoTitle((String) data.get("title"));
+                record.setVideoTitle(data.getTitle());
                 record.setParsedVideoUrl(proxyVideoUrl);
                 record.setCoverImageUrl(proxyCoverUrl);
                 
                 // 更新返回数据中的URL
-                data.put("videoSrc", proxyVideoUrl);
-                data.put("imageSrc", proxyCoverUrl);
+                data.setVideoSrc(proxyVideoUrl);
+                data.setImageSrc(proxyCoverUrl);
                 
                 // 处理图集
-                Object imageAtlas = data.get("imageAtlas");
-                if (imageAtlas != null) {
+                if (data.getImageAtlas() != null) {
                     try {
-                        record.setImageAtlas(objectMapper.writeValueAsString(imageAtlas));
+                        record.setImageAtlas(objectMapper.writeValueAsString(data.getImageAtlas()));
                     } catch (Exception e) {
                         log.warn("序列化图集失败：{}", e.getMessage());
                     }
@@ -159,44 +193,47 @@ public class VideoParsingService {
                 // 更新用户解析次数
                 if (userOpt.isPresent()) {
                     userRepository.incrementVideoParseCount(openId);
+                    // 解析次数不影响精简信息，只使完整信息失效，保留精简信息和登录写回路径
+                    userCacheService.evictDetail(openId);
                 }
                 
-                log.info("视频解析成功，用户：{}，标题：{}", openId, data.get("title"));
-                
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", 1);
-                result.put("msg", "解析成功");
+                log.info("视频解析成功，用户：{}，标题：{}", openId, data.getTitle());
                 
                 // 添加URL预处理信息到返回数据中
                 if (urlInfo.isSuccess()) {
-                    Map<String, Object> enhancedData = new HashMap<>(data);
-                    Map<String, Object> urlInfoMap = new HashMap<>();
-                    urlInfoMap.put("host", urlInfo.getHost());
-                    urlInfoMap.put("needsProxy", urlInfo.isNeedsProxy());
-                    urlInfoMap.put("accessible", urlInfo.isAccessible());
-                    enhancedData.put("urlInfo", urlInfoMap);
-                    result.put("data", enhancedData);
+                    data.setUrlInfo(new VideoParseData.UrlInfo(
+                            urlInfo.getHost(), urlInfo.isNeedsProxy(), urlInfo.isAccessible()));
+                }
+                
+                // 添加已缓存的媒体元数据，未缓存时后台预读，供下次解析和/proxy/metadata使用
+                MediaMetadata mediaInfo = mp4MetadataService.getIfCached(videoSrc);
+                if (mediaInfo != null) {
+                    data.setMediaInfo(mediaInfo);
                 } else {
-                    result.put("data", data);
+                    mp4MetadataService.prefetch(videoSrc);
                 }
                 
-                return result;
+                return VideoParseResult.success("解析成功", data);
                 
             } else {
-                // 解析失败
-                String errorCode = String.valueOf(parseResult != null ? parseResult.get("code") : "-1");
-                String errorMsg = getErrorMessage(errorCode);
+                // 解析失败，调用外部API失败（无响应）时不是上游错误码，按临时失败处理
+                boolean upstreamError = parseResult != null && parseResult.getCode() != null
+                        && !"1".equals(parseResult.getCode());
+                String errorCode = upstreamError ? parseResult.getCode() : null;
+                String errorMsg = upstreamError ? getErrorMessage(errorCode) : "解析失败，请稍后重试";
                 
                 record.setParseStatus(-1); // 解析失败
                 record.setFailReason(errorMsg);
                 record.setParseDuration(System.currentTimeMillis() - startTime);
                 
+                // 只记录上游返回的错误码，避免重复调用外部API；网络异常等临时失败允许立即重试
+                if (upstreamError) {
+                    parseFailureCache.recordFailure(videoUrl, errorCode);
+                }
+                
                 log.warn("视频解析失败，用户：{}，错误码：{}，错误信息：{}", openId, errorCode, errorMsg);
                 
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", 0);
-                result.put("msg", errorMsg);
-                return result;
+                return VideoParseResult.failure(errorMsg);
             }
             
         } catch (Exception e) {
@@ -206,24 +243,79 @@ public class VideoParsingService {
             record.setFailReason("系统异常：" + e.getMessage());
             record.setParseDuration(System.currentTimeMillis() - startTime);
             
-            Map<String, Object> result = new HashMap<>();
-            result.put("status", 0);
-            result.put("msg", "解析失败，请稍后重试");
-            return result;
+            return VideoParseResult.failure("解析失败，请稍后重试");
             
         } finally {
+            // 只有解析成功才计入每日解析次数
+            if (!Integer.valueOf(1).equals(record.getParseStatus())) {
+                dailyParseQuota.release(openId);
+            }
             // 更新解析记录
             videoParseRecordRepository.save(record);
         }
     }
 
+    /**
+     * 重新解析原始链接，获取指定字段的最新上游地址（不计入解析次数，不写解析记录）
+     *
+     * @param originalUrl 原始视频链接
+     * @param mediaField 解析结果字段：video-视频，cover-封面
+     * @return 最新的上游地址，解析失败返回null
+     */
+    public String resolveMediaUrl(String originalUrl, String mediaField) {
+        WatermarkApiResponse parseResult = callWatermarkApi(originalUrl);
+        if (parseResult == null || !parseResult.isSuccess() || parseResult.getData() == null) {
+            log.warn("重新解析失败，链接：{}，错误码：{}", originalUrl, parseResult != null ? parseResult.getCode() : null);
+            return null;
+        }
+        VideoParseData data = parseResult.getData();
+        parseResultCache.put(originalUrl, data);
+        String mediaUrl = MEDIA_FIELD_COVER.equals(mediaField) ? data.getImageSrc() : data.getVideoSrc();
+        return StringUtils.hasText(mediaUrl) ? mediaUrl : null;
+    }
+
+    /**
+     * 获取解析结果：命中缓存时直接返回缓存数据的副本（过了软过期时间会在后台刷新），否则调用外部API并缓存成功的结果
+     *
+     * @param videoUrl 视频链接
+     * @return API响应结果
+     */
+    private WatermarkApiResponse fetchParseResult(String videoUrl) {
+        VideoParseData cached = parseResultCache.get(videoUrl, this::refreshParseData);
+        if (cached != null) {
+            log.info("命中解析结果缓存，链接：{}", videoUrl);
+            WatermarkApiResponse response = new WatermarkApiResponse();
+            response.setCode("1");
+            response.setData(cached);
+            return response;
+        }
+
+        WatermarkApiResponse response = callWatermarkApi(videoUrl);
+        if (response != null && response.isSuccess()) {
+            parseResultCache.put(videoUrl, response.getData());
+        }
+        return response;
+    }
+
+    /**
+     * 后台刷新解析结果
+     *
+     * @param videoUrl 视频链接
+     * @return 原始解析数据，失败返回null
+     */
+    private VideoParseData refreshParseData(String videoUrl) {
+        WatermarkApiResponse response = callWatermarkApi(videoUrl);
+        return response != null && response.isSuccess() ? response.getData() : null;
+    }
+
     /**
      * 调用外部去水印API
+     * 直接从响应流反序列化为响应对象，不经过中间字符串和JSON树
      *
      * @param videoUrl 视频链接
      * @return API响应结果
      */
-    private Map<String, Object> callWatermarkApi(String videoUrl) {
+    private WatermarkApiResponse callWatermarkApi(String videoUrl) {
         try {
             HttpHeaders headers = new HttpHeaders();
             headers.add("Content-Type", "application/x-www-form-urlencoded");
@@ -235,18 +327,20 @@ public class VideoParsingService {
             
             HttpEntity<MultiValueMap<String, String>> requestEntity = new HttpEntity<>(params, headers);
             
-            ResponseEntity<String> response = restTemplate.exchange(
+            return restTemplate.execute(
                 watermarkApiUrl, 
                 HttpMethod.POST, 
-                requestEntity, 
-                String.class
+                restTemplate.httpEntityCallback(requestEntity), 
+                response -> {
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        return null;
+                    }
+                    try (InputStream body = response.getBody()) {
+                        return watermarkResponseReader.readValue(body);
+                    }
+                }
             );
             
-            if (response.getStatusCode().is2xxSuccessful() && StringUtils.hasText(response.getBody())) {
-                JsonNode jsonNode = objectMapper.readTree(response.getBody());
-                return objectMapper.convertValue(jsonNode, Map.class);
-            }
-            
         } catch (Exception e) {
             log.error("调用外部API失败：{}", e.getMessage(), e);
         }
@@ -265,15 +359,7 @@ public class VideoParsingService {
             return "未知";
         }
         
-        String lowerUrl = videoUrl.toLowerCase();
-        for (Map.Entry<String, Pattern> entry : PLATFORM_PATTERNS.entrySet()) {
-            Matcher matcher = entry.getValue().matcher(lowerUrl);
-            if (matcher.find()) {
-                return entry.getKey();
-            }
-        }
-        
-        return "其他";
+        return platformRegistry.resolveUrl(videoUrl).getName();
     }
 
     /**
@@ -299,78 +385,33 @@ public class VideoParsingService {
         }
     }
 
-    /**
-     * 获取客户端IP地址
-     *
-     * @param request HTTP请求对象
-     * @return IP地址
-     */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (StringUtils.hasText(xForwardedFor) && !"unknown".equalsIgnoreCase(xForwardedFor)) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (StringUtils.hasText(xRealIp) && !"unknown".equalsIgnoreCase(xRealIp)) {
-            return xRealIp;
-        }
-        
-        return request.getRemoteAddr();
-    }
-
     /**
      * 将原始视频URL转换为代理URL
      *
      * @param originalUrl 原始URL
+     * @param recordId 解析记录ID
+     * @param mediaField 解析结果字段
      * @return 代理URL
      */
-    private String convertToProxyUrl(String originalUrl) {
+    private String convertToProxyUrl(String originalUrl, Long recordId, String mediaField) {
         if (!StringUtils.hasText(originalUrl)) {
             return originalUrl;
         }
         
         try {
             URL url = new URL(originalUrl);
-            String host = url.getHost().toLowerCase();
-            String platform = detectPlatformByHost(host);
+            String route = platformRegistry.resolveHost(url.getHost()).getProxyRoute();
             
-            // 对URL进行Base64编码
-            String encodedUrl = Base64.getUrlEncoder().encodeToString(originalUrl.getBytes(StandardCharsets.UTF_8));
+            // 签发代理令牌，代替完整的上游地址
+            String token = proxyTokenService.issue(originalUrl, route, recordId, mediaField);
             
             // 根据平台生成代理URL
-            switch (platform) {
-                case "抖音":
-                    return proxyDomain + "/proxy/douyin/" + encodedUrl;
-                case "快手":
-                    return proxyDomain + "/proxy/kuaishou/" + encodedUrl;
-                case "小红书":
-                    return proxyDomain + "/proxy/xiaohongshu/" + encodedUrl;
-                default:
-                    return proxyDomain + "/proxy/general/" + encodedUrl;
-            }
+            return proxyDomain + "/proxy/" + route + "/" + token;
         } catch (Exception e) {
             log.warn("URL转换失败，使用原始URL：{}", e.getMessage());
             return originalUrl;
         }
     }
-    
-    /**
-     * 根据域名检测平台
-     *
-     * @param host 域名
-     * @return 平台名称
-     */
-    private String detectPlatformByHost(String host) {
-        if (host.contains("douyin") || host.contains("iesdouyin") || host.contains("bytedance")) {
-            return "抖音";
-        } else if (host.contains("kuaishou")) {
-            return "快手";
-        } else if (host.contains("xiaohongshu") || host.contains("xhslink")) {
-            return "小红书";
-        }
-        return "其他";
-    }
 
     /**
      * 获取用户解析记录
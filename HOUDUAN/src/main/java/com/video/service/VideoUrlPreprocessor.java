@@ -11,9 +11,6 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * 视频URL预处理服务
@@ -29,33 +26,8 @@ public class VideoUrlPreprocessor {
     @Autowired
     private RestTemplate restTemplate;
 
-    // 需要特殊处理的域名模式
-    private static final Map<Pattern, String> DOMAIN_REFERER_MAP = new HashMap<>();
-    
-    static {
-        // 抖音相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*douyin.*"), "https://www.douyin.com/");
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*iesdouyin.*"), "https://www.douyin.com/");
-        
-        // 快手相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*kuaishou.*"), "https://www.kuaishou.com/");
-        
-        // 小红书相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*xiaohongshu.*"), "https://www.xiaohongshu.com/");
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*xhslink.*"), "https://www.xiaohongshu.com/");
-        
-        // 微视相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*weishi.*"), "https://weishi.qq.com/");
-        
-        // 西瓜视频相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*ixigua.*"), "https://www.ixigua.com/");
-        
-        // 皮皮虾相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*pipix.*"), "https://www.pipix.com/");
-        
-        // 微博相关域名
-        DOMAIN_REFERER_MAP.put(Pattern.compile(".*weibo.*"), "https://weibo.com/");
-    }
+    @Autowired
+    private PlatformRegistry platformRegistry;
 
     /**
      * 预处理视频URL
@@ -76,10 +48,11 @@ public class VideoUrlPreprocessor {
             String host = url.getHost().toLowerCase();
             
             // 2. 检测是否需要特殊处理
-            String referer = getRefererForDomain(host);
+            PlatformRegistry.PlatformProfile profile = platformRegistry.resolveHost(host);
+            String referer = getRefererForDomain(profile, host);
             
             // 3. 验证URL可访问性
-            boolean accessible = checkUrlAccessibility(originalUrl, referer);
+            boolean accessible = checkUrlAccessibility(originalUrl, referer, profile.getDownloadUserAgent());
             
             // 4. 构建预处理结果
             VideoUrlInfo info = new VideoUrlInfo();
@@ -107,13 +80,13 @@ public class VideoUrlPreprocessor {
      *
      * @param videoUrl 视频URL
      * @param referer Referer头
+     * @param userAgent User-Agent头
      * @return 是否可访问
      */
-    private boolean checkUrlAccessibility(String videoUrl, String referer) {
+    private boolean checkUrlAccessibility(String videoUrl, String referer, String userAgent) {
         try {
             HttpHeaders headers = new HttpHeaders();
-            headers.add("User-Agent", 
-                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
+            headers.add("User-Agent", userAgent);
             
             if (StringUtils.hasText(referer)) {
                 headers.add("Referer", referer);
@@ -148,22 +121,17 @@ public class VideoUrlPreprocessor {
     /**
      * 根据域名获取合适的Referer
      *
+     * @param profile 平台配置
      * @param host 主机名
      * @return Referer值
      */
-    private String getRefererForDomain(String host) {
-        for (Map.Entry<Pattern, String> entry : DOMAIN_REFERER_MAP.entrySet()) {
-            if (entry.getKey().matcher(host).matches()) {
-                return entry.getValue();
-            }
+    private String getRefererForDomain(PlatformRegistry.PlatformProfile profile, String host) {
+        if (profile.getDownloadReferer() != null) {
+            return profile.getDownloadReferer();
         }
         
         // 默认使用https协议的根域名
-        try {
-            return "https://" + host + "/";
-        } catch (Exception e) {
-            return null;
-        }
+        return "https://" + host + "/";
     }
 
     /**
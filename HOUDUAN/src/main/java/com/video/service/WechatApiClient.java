@@ -0,0 +1,225 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.video.dto.WechatSessionResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 微信API客户端
+ * 使用独立连接池和短超时调用code2Session，失败时有限次数重试（指数退避加随机抖动），
+ * 并发调用数受信号量限制，避免微信接口变慢时占满请求线程。
+ * 同一js_code的结果短时间缓存，小程序重试提交同一凭证时不会重复调用微信接口；
+ * 并发的相同请求在缓存外合并为一次调用，远程调用不占用缓存的计算锁。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@Slf4j
+@Service
+public class WechatApiClient {
+
+    @Autowired
+    @Qualifier("wechatRestTemplate")
+    private RestTemplate wechatRestTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${wechat.miniapp.app-id}")
+    private String appId;
+
+    @Value("${wechat.miniapp.app-secret}")
+    private String appSecret;
+
+    @Value("${wechat.miniapp.api.code2session}")
+    private String code2SessionUrl;
+
+    @Value("${wechat.miniapp.client.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${wechat.miniapp.client.retry-backoff-ms:100}")
+    private long retryBackoffMs;
+
+    @Value("${wechat.miniapp.client.max-concurrent:20}")
+    private int maxConcurrent;
+
+    @Value("${wechat.miniapp.client.acquire-timeout-ms:200}")
+    private long acquireTimeoutMs;
+
+    @Value("${wechat.miniapp.client.code-cache-seconds:300}")
+    private long codeCacheSeconds;
+
+    @Value("${wechat.miniapp.client.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    // 除js_code外固定不变的请求地址前缀
+    private String urlPrefix;
+
+    private ObjectReader sessionResponseReader;
+
+    private Semaphore bulkhead;
+
+    // key：js_code，value：openId
+    private Cache<String, String> codeCache;
+
+    // 正在调用微信接口的js_code，同一js_code同时只调用一次
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws UnsupportedEncodingException {
+        urlPrefix = code2SessionUrl + "?appid=" + URLEncoder.encode(appId, StandardCharsets.UTF_8.name())
+                + "&secret=" + URLEncoder.encode(appSecret, StandardCharsets.UTF_8.name())
+                + "&grant_type=authorization_code&js_code=";
+        sessionResponseReader = objectMapper.readerFor(WechatSessionResponse.class);
+        bulkhead = new Semaphore(maxConcurrent);
+        codeCache = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(codeCacheSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 根据登录凭证获取openId
+     * 同一js_code的并发请求只调用一次微信接口，失败结果不缓存
+     *
+     * @param jsCode 微信登录凭证
+     * @return openId，获取失败返回null
+     */
+    public String getOpenId(String jsCode) {
+        if (!StringUtils.hasText(jsCode)) {
+            return null;
+        }
+        String cached = codeCache.getIfPresent(jsCode);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflight.putIfAbsent(jsCode, own);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // 并发的上一次调用可能刚写入缓存并结束合并，再检查一次缓存
+            String openId = codeCache.getIfPresent(jsCode);
+            if (openId == null) {
+                openId = code2Session(jsCode);
+                if (openId != null) {
+                    codeCache.put(jsCode, openId);
+                }
+            }
+            own.complete(openId);
+            return openId;
+        } finally {
+            // 异常退出时等待方按获取失败处理
+            own.complete(null);
+            inflight.remove(jsCode, own);
+        }
+    }
+
+    /**
+     * 等待同一js_code正在进行的调用
+     *
+     * @return openId，获取失败或等待超时返回null
+     */
+    private String await(CompletableFuture<String> future) {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (TimeoutException e) {
+            log.warn("等待微信API调用超时（{}ms）", waitTimeoutMs);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 调用code2Session接口
+     */
+    private String code2Session(String jsCode) {
+        boolean acquired = false;
+        try {
+            acquired = bulkhead.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                log.warn("微信API并发调用已达上限（{}），拒绝本次调用", maxConcurrent);
+                return null;
+            }
+
+            String url = urlPrefix + URLEncoder.encode(jsCode, StandardCharsets.UTF_8.name());
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    WechatSessionResponse response = wechatRestTemplate.execute(url, HttpMethod.GET, null,
+                            clientResponse -> {
+                                try (InputStream body = clientResponse.getBody()) {
+                                    return sessionResponseReader.<WechatSessionResponse>readValue(body);
+                                }
+                            });
+                    if (response != null && response.isSuccess()) {
+                        return response.getOpenId();
+                    }
+                    if (response != null && response.isBusy() && attempt < maxRetries) {
+                        log.warn("微信系统繁忙，第{}次重试", attempt + 1);
+                        backoff(attempt);
+                        continue;
+                    }
+                    log.error("微信API调用失败，errcode: {}, errmsg: {}",
+                            response != null ? response.getErrCode() : null, response != null ? response.getErrMsg() : null);
+                    return null;
+                } catch (ResourceAccessException | HttpServerErrorException e) {
+                    if (attempt >= maxRetries) {
+                        throw e;
+                    }
+                    log.warn("调用微信API异常，第{}次重试：{}", attempt + 1, e.getMessage());
+                    backoff(attempt);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.error("调用微信API异常: {}", e.getMessage(), e);
+            return null;
+        } finally {
+            if (acquired) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * 指数退避加随机抖动，避免重试请求同时到达
+     */
+    private void backoff(int attempt) throws InterruptedException {
+        long base = retryBackoffMs << attempt;
+        Thread.sleep(base + ThreadLocalRandom.current().nextLong(base + 1));
+    }
+}
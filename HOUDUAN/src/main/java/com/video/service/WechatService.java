@@ -1,26 +1,17 @@
 package com.video.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.video.entity.SystemConfig;
 import com.video.entity.User;
-import com.video.repository.SystemConfigRepository;
 import com.video.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -38,22 +29,13 @@ public class WechatService {
     private UserRepository userRepository;
 
     @Autowired
-    private SystemConfigRepository systemConfigRepository;
+    private UserCacheService userCacheService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private LastLoginWriteBehind lastLoginWriteBehind;
 
     @Autowired
-    private ObjectMapper objectMapper;
-
-    @Value("${wechat.miniapp.app-id}")
-    private String appId;
-
-    @Value("${wechat.miniapp.app-secret}")
-    private String appSecret;
-
-    @Value("${wechat.miniapp.api.code2session}")
-    private String code2SessionUrl;
+    private WechatApiClient wechatApiClient;
 
     @Value("${business.user.default-points}")
     private Integer defaultPoints;
@@ -68,20 +50,16 @@ public class WechatService {
      * @param userIp 用户IP
      * @return openId
      */
-    @Transactional
     public String auth(String jsCode, String userIp) {
         try {
             // 调用微信API获取openId
-            String openId = getOpenIdFromWechat(jsCode);
+            String openId = wechatApiClient.getOpenId(jsCode);
             if (openId == null) {
                 throw new RuntimeException("微信登录失败，无法获取openId");
             }
 
-            // 查找或创建用户
-            User user = findOrCreateUser(openId, userIp);
-            
-            // 更新最后登录信息
-            updateLastLoginInfo(user, userIp);
+            // 创建用户或更新最后登录信息
+            upsertUser(openId, userIp);
 
             log.info("用户登录成功，openId: {}, IP: {}", openId, userIp);
             return openId;
@@ -101,32 +79,15 @@ public class WechatService {
     @Transactional
     public Map<String, Object> login(String openId, String userIp) {
         try {
-            Optional<User> userOpt = userRepository.findByOpenId(openId);
+            // 创建用户或更新最后登录信息
+            upsertUser(openId, userIp);
+
+            Optional<User> userOpt = userCacheService.getUser(openId);
             if (!userOpt.isPresent()) {
-                // 用户不存在，创建新用户
-                try {
-                    User newUser = createNewUser(openId, userIp);
-                    return buildLoginResponse(newUser);
-                } catch (Exception e) {
-                    // 如果是唯一约束冲突，说明其他线程已经创建了用户，重新查询
-                    if (e.getMessage() != null && e.getMessage().contains("Duplicate entry")) {
-                        log.warn("用户创建冲突，重新查询用户，openId: {}", openId);
-                        Optional<User> retryUserOpt = userRepository.findByOpenId(openId);
-                        if (retryUserOpt.isPresent()) {
-                            User user = retryUserOpt.get();
-                            updateLastLoginInfo(user, userIp);
-                            return buildLoginResponse(user);
-                        }
-                    }
-                    throw e;
-                }
+                throw new RuntimeException("用户不存在或已删除");
             }
-
-            User user = userOpt.get();
-            // 更新最后登录信息
-            updateLastLoginInfo(user, userIp);
             
-            return buildLoginResponse(user);
+            return buildLoginResponse(userOpt.get());
         } catch (Exception e) {
             log.error("用户登录初始化失败，openId: {}, error: {}", openId, e.getMessage(), e);
             throw new RuntimeException("登录初始化失败: " + e.getMessage());
@@ -134,77 +95,19 @@ public class WechatService {
     }
 
     /**
-     * 从微信API获取openId
+     * 创建用户或更新最后登录信息
+     * 已缓存的用户一定存在，登录信息交给延迟写入合并提交；其余情况使用单条INSERT ... ON DUPLICATE KEY UPDATE完成，
+     * 并发首次登录无需捕获唯一约束异常后重试
      */
-    private String getOpenIdFromWechat(String jsCode) {
-        try {
-            String url = String.format("%s?appid=%s&secret=%s&js_code=%s&grant_type=authorization_code",
-                    code2SessionUrl, appId, appSecret, jsCode);
-            
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            JsonNode jsonNode = objectMapper.readTree(response.getBody());
-            
-            if (jsonNode.has("errcode")) {
-                int errcode = jsonNode.get("errcode").asInt();
-                String errmsg = jsonNode.get("errmsg").asText();
-                log.error("微信API调用失败，errcode: {}, errmsg: {}", errcode, errmsg);
-                return null;
+    private void upsertUser(String openId, String userIp) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!userCacheService.isCached(openId) || !lastLoginWriteBehind.record(openId, now, userIp)) {
+            int affected = userRepository.upsertOnLogin(openId, defaultPoints, now, userIp);
+            if (affected == 1) {
+                log.info("创建新用户，openId: {}", openId);
             }
-            
-            return jsonNode.get("openid").asText();
-        } catch (Exception e) {
-            log.error("调用微信API异常: {}", e.getMessage(), e);
-            return null;
         }
-    }
-
-    /**
-     * 查找或创建用户
-     */
-    private User findOrCreateUser(String openId, String userIp) {
-        Optional<User> userOpt = userRepository.findByOpenId(openId);
-        if (userOpt.isPresent()) {
-            return userOpt.get();
-        }
-        
-        // 处理并发创建用户的情况
-        try {
-            return createNewUser(openId, userIp);
-        } catch (Exception e) {
-            // 如果是唯一约束冲突，说明其他线程已经创建了用户，重新查询
-            if (e.getMessage() != null && e.getMessage().contains("Duplicate entry")) {
-                log.warn("用户创建冲突，重新查询用户，openId: {}", openId);
-                Optional<User> retryUserOpt = userRepository.findByOpenId(openId);
-                if (retryUserOpt.isPresent()) {
-                    return retryUserOpt.get();
-                }
-            }
-            throw e;
-        }
-    }
-
-    /**
-     * 创建新用户
-     */
-    private User createNewUser(String openId, String userIp) {
-        User user = new User();
-        user.setOpenId(openId);
-        user.setPoints(defaultPoints);
-        user.setSignInCount(0);
-        user.setContinuousSignDays(0);
-        user.setVideoParseCount(0);
-        user.setStatus(0);
-        user.setLastLoginTime(LocalDateTime.now());
-        user.setLastLoginIp(userIp);
-        
-        return userRepository.save(user);
-    }
-
-    /**
-     * 更新最后登录信息
-     */
-    private void updateLastLoginInfo(User user, String userIp) {
-        userRepository.updateLastLoginInfo(user.getOpenId(), LocalDateTime.now(), userIp);
+        userCacheService.updateLastLogin(openId, now, userIp);
     }
 
     /**
@@ -242,6 +145,15 @@ public class WechatService {
         Map<String, Object> result = new HashMap<>();
         
         try {
+            // 条件更新保证并发签到只有一次生效，不会重复发放积分
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime todayStart = now.toLocalDate().atStartOfDay();
+            int updated = userRepository.signIn(openId, dailySigninPoints, now, todayStart, todayStart.minusDays(1));
+            if (updated > 0) {
+                userCacheService.evict(openId);
+            }
+            
+            // 读取签到后的最新状态
             Optional<User> userOpt = userRepository.findByOpenIdAndIsDeleted(openId, 0);
             if (!userOpt.isPresent()) {
                 result.put("status", 0);
@@ -250,38 +162,18 @@ public class WechatService {
             }
             
             User user = userOpt.get();
-            LocalDate today = LocalDate.now();
-            LocalDate lastSignDate = user.getLastSignTime() != null ? 
-                user.getLastSignTime().toLocalDate() : null;
-            
-            // 检查今天是否已签到
-            if (lastSignDate != null && lastSignDate.equals(today)) {
+            if (updated == 0) {
                 result.put("status", 0);
                 result.put("msg", "今日已签到");
                 result.put("data", buildSignInData(user));
                 return result;
             }
             
-            // 计算连续签到天数
-            int continuousDays = 1;
-            if (lastSignDate != null && lastSignDate.equals(today.minusDays(1))) {
-                continuousDays = user.getContinuousSignDays() + 1;
-            }
-            
-            // 更新用户签到信息
-            user.setSignInCount(user.getSignInCount() + 1);
-            user.setContinuousSignDays(continuousDays);
-            user.setLastSignTime(LocalDateTime.now());
-            user.setPoints(user.getPoints() + dailySigninPoints);
-            user.setUpdateTime(LocalDateTime.now());
-            
-            userRepository.save(user);
-            
             result.put("status", 1);
             result.put("msg", "签到成功");
             result.put("data", buildSignInData(user));
             
-            log.info("用户签到成功，openId：{}，连续签到：{}天", openId, continuousDays);
+            log.info("用户签到成功，openId：{}，连续签到：{}天", openId, user.getContinuousSignDays());
             
         } catch (Exception e) {
             log.error("用户签到失败，openId：{}，错误：{}", openId, e.getMessage(), e);
@@ -292,116 +184,6 @@ public class WechatService {
         return result;
     }
 
-    /**
-     * 获取小程序配置
-     *
-     * @return 配置信息
-     */
-    public Map<String, Object> getInitConfig() {
-        Map<String, Object> result = new HashMap<>();
-        
-        try {
-            List<SystemConfig> configs = systemConfigRepository.findAllEnabled();
-            Map<String, Object> configData = new HashMap<>();
-            
-            for (SystemConfig config : configs) {
-                configData.put(config.getConfigKey(), config.getConfigValue());
-            }
-            
-            // 添加一些默认配置
-            if (!configData.containsKey("appName")) {
-                configData.put("appName", "短视频去水印");
-            }
-            if (!configData.containsKey("version")) {
-                configData.put("version", "1.0.0");
-            }
-            if (!configData.containsKey("dailySigninPoints")) {
-                configData.put("dailySigninPoints", dailySigninPoints);
-            }
-            
-            // 添加视频平台图标配置
-            List<Map<String, String>> videoIconList = new ArrayList<>();
-            
-            // 平台名称与图标文件的映射
-            Map<String, String> platformIconMap = new HashMap<>();
-            platformIconMap.put("抖音", "/images/video-icon/logo-douyin.png");
-            platformIconMap.put("快手", "/images/video-icon/logo-gitShow.png");
-            platformIconMap.put("小红书", "/images/video-icon/logo-music.png");
-            platformIconMap.put("微视", "/images/video-icon/logo-microview.png");
-            platformIconMap.put("火山", "/images/video-icon/logo-volcano.png");
-            platformIconMap.put("西瓜视频", "/images/video-icon/logo-watermelon.png");
-            platformIconMap.put("皮皮虾", "/images/video-icon/logo-ppx.png");
-            platformIconMap.put("最右", "/images/video-icon/logo-zuiyou.png");
-            platformIconMap.put("美拍", "/images/video-icon/logo-meipai.png");
-            platformIconMap.put("微博", "/images/video-icon/logo-365yg.png");
-            platformIconMap.put("秒拍", "/images/video-icon/logo-miaopai.png");
-            platformIconMap.put("头条", "/images/video-icon/logo-toutiao.png");
-            platformIconMap.put("小咖秀", "/images/video-icon/logo-xiaokaxiu.png");
-            platformIconMap.put("音乐", "/images/video-icon/logo-music.png");
-            platformIconMap.put("365yg", "/images/video-icon/logo-365yg.png");
-            
-            // 从supported_platforms配置中获取支持的平台列表
-            String supportedPlatformsJson = (String) configData.get("supported_platforms");
-            if (StringUtils.hasText(supportedPlatformsJson)) {
-                try {
-                    JsonNode platformsNode = objectMapper.readTree(supportedPlatformsJson);
-                    if (platformsNode.isArray()) {
-                        for (JsonNode platformNode : platformsNode) {
-                            String platformName = platformNode.asText();
-                            Map<String, String> iconItem = new HashMap<>();
-                            iconItem.put("name", platformName);
-                            // 根据平台名称获取对应的图标路径，如果没有则使用抖音图标
-                            String iconPath = platformIconMap.getOrDefault(platformName, "/images/video-icon/logo-douyin.png");
-                            iconItem.put("imgPath", iconPath);
-                            videoIconList.add(iconItem);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("解析supported_platforms配置失败: {}", e.getMessage());
-                }
-            }
-            
-            // 如果没有配置或解析失败，使用默认的平台图标列表
-            if (videoIconList.isEmpty()) {
-                String[] defaultPlatforms = {"抖音", "快手", "小红书", "微视", "火山", "西瓜视频", "皮皮虾", "最右", "微博"};
-                for (String platform : defaultPlatforms) {
-                    Map<String, String> iconItem = new HashMap<>();
-                    iconItem.put("name", platform);
-                    String iconPath = platformIconMap.getOrDefault(platform, "/images/video-icon/logo-douyin.png");
-                    iconItem.put("imgPath", iconPath);
-                    videoIconList.add(iconItem);
-                }
-            }
-            
-            configData.put("videoIcon", videoIconList);
-            
-            // 添加顶部小程序跳转信息
-            if (!configData.containsKey("topMiniImg")) {
-                configData.put("topMiniImg", "/images/watermark_before.png");
-            }
-            if (!configData.containsKey("topMiniTitle")) {
-                configData.put("topMiniTitle", "推荐小程序");
-            }
-            if (!configData.containsKey("topMiniAppId")) {
-                configData.put("topMiniAppId", "");
-            }
-            if (!configData.containsKey("topMiniPath")) {
-                configData.put("topMiniPath", "");
-            }
-            
-            result.put("status", 1);
-            result.put("msg", "获取成功");
-            result.put("data", configData);
-            
-        } catch (Exception e) {
-            log.error("获取小程序配置失败：{}", e.getMessage(), e);
-            result.put("status", 0);
-            result.put("msg", "获取配置失败");
-        }
-        
-        return result;
-    }
-
     /**
      * 显示二维码（占位方法）
      *
@@ -430,6 +212,7 @@ public class WechatService {
             user.setNickname(nickName);
             user.setAvatarUrl(avatarUrl);
             userRepository.save(user);
+            userCacheService.evict(openId);
             log.info("用户信息更新成功: openId={}, nickName={}", openId, nickName);
         } else {
             log.warn("用户不存在: openId={}", openId);
@@ -0,0 +1,16 @@
+-- 代理链接表
+-- 保存代理令牌短ID与上游资源地址的映射
+
+CREATE TABLE IF NOT EXISTS `t_proxy_link` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `link_id` VARCHAR(32) NOT NULL COMMENT '链接短ID',
+    `target_url` TEXT NOT NULL COMMENT '上游资源地址',
+    `proxy_route` VARCHAR(32) NOT NULL COMMENT '代理路由',
+    `expire_time` DATETIME NOT NULL COMMENT '过期时间',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `is_deleted` TINYINT DEFAULT 0 COMMENT '是否删除：0-未删除，1-已删除',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_link_id` (`link_id`),
+    KEY `idx_expire_time` (`expire_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='代理链接表';
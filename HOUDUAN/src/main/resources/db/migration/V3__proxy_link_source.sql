@@ -0,0 +1,6 @@
+-- 代理链接来源
+-- 记录代理链接对应的解析记录和字段，上游签名地址过期时据此重新解析
+
+ALTER TABLE `t_proxy_link`
+    ADD COLUMN `record_id` BIGINT DEFAULT NULL COMMENT '解析记录ID' AFTER `proxy_route`,
+    ADD COLUMN `media_field` VARCHAR(16) DEFAULT NULL COMMENT '对应解析结果中的字段：video-视频，cover-封面' AFTER `record_id`;
@@ -0,0 +1,115 @@
+package com.video.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.video.dto.WatermarkApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 去水印API响应解析基准测试
+ * 对比原先的 readTree + convertValue(Map) 与现在按DTO直接从输入流绑定的 ObjectReader.readValue(InputStream)。
+ * 不属于单元测试，运行方式：mvn test-compile 后以test classpath执行本类的main方法。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WatermarkResponseBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private ObjectReader watermarkResponseReader;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        watermarkResponseReader = objectMapper.readerFor(WatermarkApiResponse.class);
+        payload = payload().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 原实现：读成字符串后构建JsonNode树，再转换为Map
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> treeToMap() throws IOException {
+        String body = StreamUtils.copyToString(new ByteArrayInputStream(payload), StandardCharsets.UTF_8);
+        JsonNode root = objectMapper.readTree(body);
+        return objectMapper.convertValue(root, Map.class);
+    }
+
+    /**
+     * 现实现：预先构建的ObjectReader从输入流直接绑定DTO
+     */
+    @Benchmark
+    public WatermarkApiResponse readerToDto() throws IOException {
+        return watermarkResponseReader.readValue(new ByteArrayInputStream(payload));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WatermarkResponseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * 与上游实际响应结构一致的图集解析结果：标题、视频和封面地址、9张图集，以及透传给客户端的作者和音乐字段
+     */
+    private static String payload() {
+        StringBuilder atlas = new StringBuilder();
+        for (int i = 0; i < 9; i++) {
+            if (i > 0) {
+                atlas.append(',');
+            }
+            atlas.append("\"https://p3-sign.douyinpic.com/tos-cn-i-0813/o")
+                    .append(i)
+                    .append("f3a9c1e2b4d5~tplv-dy-aweme-images:q75.webp?x-expires=1760000000&x-signature=AbCdEf")
+                    .append(i)
+                    .append("%3D\"");
+        }
+        return "{\"code\":\"1\",\"msg\":\"解析成功\",\"data\":{"
+                + "\"title\":\"周末去海边拍的日落，风很大但是很值得 #旅行 #日落 #vlog\","
+                + "\"videoSrc\":\"https://v3-dy-o.zjcdn.com/5f1e2d3c4b5a69788796a5b4c3d2e1f0/6700a1b2/video/tos/cn/"
+                + "tos-cn-ve-15/oQmBfAgIAeDnEhGgCkAHzQeAAfIvLbDnCgDzAe/?a=1128&ch=0&cr=0&dr=0&cd=0%7C0%7C0%7C0"
+                + "&br=1024&bt=1024&cs=0&ds=3&ft=bvTKJbQQqU-mfJ4ZPo0OW_EklpPiXZ8zmMVJE&mime_type=video_mp4"
+                + "&qs=0&rc=OTg0ZDdpNzlpOjY2ZDtoZEBpM3FxdjU6ZnN4azMzNGkzM0AxMy4vLzJfNjMxYi1fLmExYSNrcnBeMmRjbW9gLS1kLWFzcw%3D%3D"
+                + "&btag=c0000e00028000&dy_q=1728000000&l=20241004000000ABCDEF0123456789\","
+                + "\"imageSrc\":\"https://p3-sign.douyinpic.com/tos-cn-i-dy/0a1b2c3d4e5f~tplv-dy-resize-origshort-autoq-75:330.jpeg"
+                + "?x-expires=1760000000&x-signature=GhIjKl%3D&from=327834062&s=PackSourceEnum_AWEME_DETAIL\","
+                + "\"imageAtlas\":[" + atlas + "],"
+                + "\"author\":{\"nickname\":\"海边的风\",\"uid\":\"98765432101\","
+                + "\"avatar\":\"https://p3.douyinpic.com/aweme/100x100/aweme-avatar/tos-cn-avt-0015_abcdef.jpeg\"},"
+                + "\"music\":{\"title\":\"@海边的风创作的原声\",\"duration\":15,"
+                + "\"url\":\"https://sf5-hl-cdn-tos.douyinstatic.com/obj/ies-music/7412345678901234567.mp3\"},"
+                + "\"statistics\":{\"diggCount\":12580,\"commentCount\":342,\"shareCount\":97,\"collectCount\":881},"
+                + "\"duration\":15200,\"createTime\":1727999999,\"platform\":\"douyin\""
+                + "}}";
+    }
+}
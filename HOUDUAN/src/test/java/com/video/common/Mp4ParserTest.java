@@ -0,0 +1,52 @@
+package com.video.common;
+
+import com.video.dto.MediaMetadata;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MP4盒子解析测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class Mp4ParserTest {
+
+    @Test
+    void parsesMoovMetadata() {
+        MediaMetadata metadata = new MediaMetadata();
+        Mp4Parser.parseMoov(Mp4TestFiles.moov(new long[]{48}, false), metadata);
+
+        assertEquals(10.0, metadata.getDurationSeconds());
+        assertEquals(Mp4TestFiles.WIDTH, metadata.getWidth());
+        assertEquals(Mp4TestFiles.HEIGHT, metadata.getHeight());
+        assertEquals("avc1", metadata.getVideoCodec());
+    }
+
+    @Test
+    void shiftsStcoOffsets() {
+        byte[] moov = Mp4TestFiles.moov(new long[]{48, 1048, 0xFFFFF000L}, false);
+
+        assertTrue(Mp4Parser.shiftChunkOffsets(moov, 0x800));
+        assertArrayEquals(new long[]{48 + 0x800, 1048 + 0x800, 0xFFFFF800L}, Mp4TestFiles.readChunkOffsets(moov));
+    }
+
+    @Test
+    void shiftsCo64OffsetsBeyond32Bits() {
+        byte[] moov = Mp4TestFiles.moov(new long[]{48, 0xFFFFFFF0L, 5_000_000_000L}, true);
+
+        assertTrue(Mp4Parser.shiftChunkOffsets(moov, 0x100));
+        assertArrayEquals(new long[]{48 + 0x100, 0x1000000F0L, 5_000_000_256L}, Mp4TestFiles.readChunkOffsets(moov));
+    }
+
+    @Test
+    void stcoOverflowReturnsFalse() {
+        byte[] moov = Mp4TestFiles.moov(new long[]{48, 0xFFFFFF00L}, false);
+
+        assertFalse(Mp4Parser.shiftChunkOffsets(moov, 0x200));
+    }
+}
@@ -0,0 +1,128 @@
+package com.video.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 测试用的MP4文件
+ * 按 [ftyp][mdat][moov] 或 [ftyp][moov][mdat] 生成最小的MP4，moov中包含一个视频轨道和chunk偏移表。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+public final class Mp4TestFiles {
+
+    public static final int WIDTH = 640;
+    public static final int HEIGHT = 360;
+    public static final int TIMESCALE = 1000;
+    public static final int DURATION = 10000;
+
+    private Mp4TestFiles() {
+    }
+
+    /**
+     * 生成moov位于末尾的MP4，每个chunk指向mdat中的一段数据
+     *
+     * @param mdatPayload mdat数据大小
+     * @param chunkCount chunk数量
+     * @param co64 是否使用64位偏移表
+     * @return 文件内容
+     */
+    public static byte[] moovAtEnd(int mdatPayload, int chunkCount, boolean co64) {
+        byte[] ftyp = ftyp();
+        byte[] mdat = mdat(mdatPayload);
+        long[] offsets = new long[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            offsets[i] = ftyp.length + 8 + (long) i * mdatPayload / chunkCount;
+        }
+        return concat(ftyp, mdat, moov(offsets, co64));
+    }
+
+    /**
+     * 生成moov位于开头的MP4
+     *
+     * @param mdatPayload mdat数据大小
+     * @return 文件内容
+     */
+    public static byte[] moovAtStart(int mdatPayload) {
+        byte[] ftyp = ftyp();
+        byte[] moov = moov(new long[]{0}, false);
+        byte[] withOffsets = moov(new long[]{ftyp.length + moov.length + 8}, false);
+        return concat(ftyp, withOffsets, mdat(mdatPayload));
+    }
+
+    /**
+     * 生成只包含chunk偏移表的moov
+     *
+     * @param offsets chunk偏移
+     * @param co64 是否使用64位偏移表
+     * @return moov盒子
+     */
+    public static byte[] moov(long[] offsets, boolean co64) {
+        ByteBuffer table = ByteBuffer.allocate(8 + offsets.length * (co64 ? 8 : 4));
+        table.putInt(0).putInt(offsets.length);
+        for (long offset : offsets) {
+            if (co64) {
+                table.putLong(offset);
+            } else {
+                table.putInt((int) offset);
+            }
+        }
+        byte[] stsd = ByteBuffer.allocate(24).putInt(0).putInt(1).putInt(16).put(ascii("avc1")).array();
+        byte[] stbl = box("stbl", box("stsd", stsd), box(co64 ? "co64" : "stco", table.array()));
+        byte[] hdlr = ByteBuffer.allocate(25).putInt(0).putInt(0).put(ascii("vide")).array();
+        byte[] mdia = box("mdia", box("hdlr", hdlr), box("minf", stbl));
+        byte[] tkhd = ByteBuffer.allocate(84).putInt(76, WIDTH << 16).putInt(80, HEIGHT << 16).array();
+        byte[] mvhd = ByteBuffer.allocate(100).putInt(12, TIMESCALE).putInt(16, DURATION).array();
+        return box("moov", box("mvhd", mvhd), box("trak", box("tkhd", tkhd), mdia));
+    }
+
+    /**
+     * 读取moov中第一个chunk偏移表
+     *
+     * @param data 包含moov的数据
+     * @return chunk偏移
+     */
+    public static long[] readChunkOffsets(byte[] data) {
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        int stco = text.indexOf("stco");
+        boolean co64 = stco < 0;
+        int type = co64 ? text.indexOf("co64") : stco;
+        ByteBuffer buffer = ByteBuffer.wrap(data, type + 8, data.length - type - 8);
+        long[] offsets = new long[buffer.getInt()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = co64 ? buffer.getLong() : buffer.getInt() & 0xFFFFFFFFL;
+        }
+        return offsets;
+    }
+
+    public static byte[] ftyp() {
+        return box("ftyp", concat(ascii("isom"), new byte[4], ascii("isom")));
+    }
+
+    public static byte[] box(String type, byte[]... children) {
+        byte[] payload = concat(children);
+        return concat(ByteBuffer.allocate(8).putInt(8 + payload.length).put(ascii(type)).array(), payload);
+    }
+
+    private static byte[] mdat(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (i % 251);
+        }
+        return box("mdat", payload);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
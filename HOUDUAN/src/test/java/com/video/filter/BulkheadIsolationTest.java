@@ -0,0 +1,211 @@
+package com.video.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.service.BulkheadService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 舱壁隔离测试
+ * 在真实的Tomcat（20个工作线程）中用阻塞的代理请求占满代理类别的并发名额和等待队列，验证登录请求仍能及时处理。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@SpringBootTest(classes = BulkheadIsolationTest.TestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "server.tomcat.threads.max=20",
+                "bulkhead.reserved-threads=2",
+                "bulkhead.proxy.max-concurrent=6",
+                "bulkhead.proxy.max-queue=2",
+                "bulkhead.proxy.max-wait-ms=30000",
+                "bulkhead.auth.max-concurrent=3",
+                "bulkhead.auth.max-queue=3",
+                "bulkhead.auth.max-wait-ms=2000",
+                "bulkhead.parse.max-concurrent=2",
+                "bulkhead.parse.max-queue=1",
+                "bulkhead.progress.max-concurrent=1",
+                "bulkhead.progress.max-queue=0"
+        })
+class BulkheadIsolationTest {
+
+    private static final int PROXY_REQUESTS = 20;
+    private static final int LOGIN_CLIENTS = 4;
+    private static final int LOGIN_REQUESTS_PER_CLIENT = 25;
+    private static final long LOGIN_P99_LIMIT_MS = 1000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    private final ExecutorService clients = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        TestController.release.countDown();
+        clients.shutdownNow();
+    }
+
+    @Test
+    void saturatedProxyClassDoesNotDelayLogin() throws Exception {
+        TestController.release = new CountDownLatch(1);
+
+        // 占满代理类别：6个请求阻塞在处理中，2个在队列中等待，其余立即被拒绝
+        List<Future<Integer>> proxyResults = new ArrayList<>();
+        for (int i = 0; i < PROXY_REQUESTS; i++) {
+            String path = "/api/proxy/decode/douyin/token" + i;
+            proxyResults.add(clients.submit(() -> get(path)));
+        }
+        waitUntilSaturated();
+
+        List<Future<List<Long>>> loginResults = new ArrayList<>();
+        for (int i = 0; i < LOGIN_CLIENTS; i++) {
+            loginResults.add(clients.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                for (int j = 0; j < LOGIN_REQUESTS_PER_CLIENT; j++) {
+                    long start = System.nanoTime();
+                    assertEquals(200, get("/wx/login"));
+                    latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> result : loginResults) {
+            latencies.addAll(result.get(30, TimeUnit.SECONDS));
+        }
+        Collections.sort(latencies);
+        long p99 = latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+        assertTrue(p99 < LOGIN_P99_LIMIT_MS, "代理类别占满时登录p99为" + p99 + "ms");
+
+        // 登录期间代理类别始终处于占满状态
+        assertProxyStats(6, 2);
+
+        TestController.release.countDown();
+        int ok = 0;
+        int rejected = 0;
+        for (Future<Integer> result : proxyResults) {
+            int status = result.get(30, TimeUnit.SECONDS);
+            if (status == 200) {
+                ok++;
+            } else if (status == 503) {
+                rejected++;
+            }
+        }
+        assertEquals(8, ok);
+        assertEquals(PROXY_REQUESTS - 8, rejected);
+    }
+
+    private void waitUntilSaturated() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            Map<String, Object> proxy = proxyStats();
+            if (Integer.valueOf(6).equals(proxy.get("inFlight")) && Integer.valueOf(2).equals(proxy.get("queued"))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("代理类别未被占满：" + proxyStats());
+    }
+
+    private void assertProxyStats(int inFlight, int queued) {
+        Map<String, Object> proxy = proxyStats();
+        assertEquals(inFlight, proxy.get("inFlight"));
+        assertEquals(queued, proxy.get("queued"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> proxyStats() {
+        return (Map<String, Object>) bulkheadService.getStats().get("proxy");
+    }
+
+    private int get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(40000);
+        try {
+            int status = connection.getResponseCode();
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                while (body.read() >= 0) {
+                    // 读完响应以便复用连接
+                }
+                body.close();
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class,
+            JacksonAutoConfiguration.class
+    })
+    @Import({BulkheadService.class, BulkheadFilter.class, TestController.class})
+    static class TestApplication {
+    }
+
+    /**
+     * 模拟接口：代理请求阻塞到测试释放，登录请求立即返回
+     */
+    @RestController
+    static class TestController {
+
+        static volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Autowired
+        private ObjectMapper objectMapper;
+
+        @GetMapping("/api/proxy/decode/douyin/{token}")
+        public String proxy(@PathVariable String token) throws InterruptedException {
+            release.await(30, TimeUnit.SECONDS);
+            return token;
+        }
+
+        @GetMapping("/wx/login")
+        public String login() throws IOException {
+            return objectMapper.writeValueAsString(Collections.singletonMap("code", 200));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.video.service;
+
+import com.video.common.TrafficClass;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 代理并发上限测试
+ * 最大上限同时受Tomcat工作线程和代理类别舱壁名额约束。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void maxLimitIsCappedByProxyBulkhead() {
+        AdaptiveConcurrencyLimiter limiter = create(80);
+
+        // 200 - 40 = 160个线程，但舱壁只允许80个代理请求同时处理
+        assertEquals(80, limiter.getStats().get("maxLimit"));
+    }
+
+    @Test
+    void maxLimitFallsBackToThreadsWithoutBulkhead() {
+        AdaptiveConcurrencyLimiter limiter = create(Integer.MAX_VALUE);
+
+        assertEquals(160, limiter.getStats().get("maxLimit"));
+    }
+
+    @Test
+    void limitNeverGrowsBeyondBulkhead() {
+        AdaptiveConcurrencyLimiter limiter = create(30);
+
+        // 延迟平稳且并发始终占满时持续放大，最终停在舱壁名额
+        for (int i = 0; i < 1000; i++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int j = 0; j < acquired; j++) {
+                limiter.release(10_000_000L);
+            }
+        }
+        assertEquals(30, limiter.getStats().get("limit"));
+    }
+
+    /**
+     * 按默认配置创建并发限制（与@Value默认值一致）
+     */
+    private static AdaptiveConcurrencyLimiter create(int proxyBulkhead) {
+        BulkheadService bulkheadService = mock(BulkheadService.class);
+        when(bulkheadService.getMaxConcurrent(TrafficClass.PROXY)).thenReturn(proxyBulkhead);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "bulkheadService", bulkheadService);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "initialLimit", 20);
+        ReflectionTestUtils.setField(limiter, "minLimit", 4);
+        ReflectionTestUtils.setField(limiter, "tomcatMaxThreads", 200);
+        ReflectionTestUtils.setField(limiter, "reservedThreads", 40);
+        ReflectionTestUtils.setField(limiter, "smoothing", 0.2);
+        ReflectionTestUtils.setField(limiter, "longWindow", 600);
+        limiter.init();
+        return limiter;
+    }
+}
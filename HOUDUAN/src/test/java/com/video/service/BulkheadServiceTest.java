@@ -0,0 +1,53 @@
+package com.video.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 舱壁配置校验测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class BulkheadServiceTest {
+
+    @Test
+    void defaultsFitWithinTomcatThreads() {
+        assertDoesNotThrow(() -> create(true, 200, 20).init());
+    }
+
+    @Test
+    void rejectsQueuesExceedingTomcatThreads() {
+        BulkheadService bulkheadService = create(true, 200, 20);
+        ReflectionTestUtils.setField(bulkheadService, "proxyMaxConcurrent", 100);
+        ReflectionTestUtils.setField(bulkheadService, "proxyMaxQueue", 20);
+        assertThrows(IllegalStateException.class, bulkheadService::init);
+    }
+
+    @Test
+    void skipsValidationWhenDisabled() {
+        assertDoesNotThrow(() -> create(false, 50, 20).init());
+    }
+
+    /**
+     * 按默认配置创建舱壁（与@Value默认值一致）
+     */
+    private static BulkheadService create(boolean enabled, int tomcatMaxThreads, int reservedThreads) {
+        BulkheadService bulkheadService = new BulkheadService();
+        ReflectionTestUtils.setField(bulkheadService, "enabled", enabled);
+        ReflectionTestUtils.setField(bulkheadService, "tomcatMaxThreads", tomcatMaxThreads);
+        ReflectionTestUtils.setField(bulkheadService, "reservedThreads", reservedThreads);
+        ReflectionTestUtils.setField(bulkheadService, "parseMaxConcurrent", 30);
+        ReflectionTestUtils.setField(bulkheadService, "parseMaxQueue", 20);
+        ReflectionTestUtils.setField(bulkheadService, "proxyMaxConcurrent", 80);
+        ReflectionTestUtils.setField(bulkheadService, "proxyMaxQueue", 10);
+        ReflectionTestUtils.setField(bulkheadService, "authMaxConcurrent", 15);
+        ReflectionTestUtils.setField(bulkheadService, "authMaxQueue", 10);
+        ReflectionTestUtils.setField(bulkheadService, "progressMaxConcurrent", 10);
+        ReflectionTestUtils.setField(bulkheadService, "progressMaxQueue", 5);
+        return bulkheadService;
+    }
+}
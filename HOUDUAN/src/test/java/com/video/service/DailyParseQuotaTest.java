@@ -0,0 +1,72 @@
+package com.video.service;
+
+import com.video.repository.VideoParseRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 每日解析次数限制测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class DailyParseQuotaTest {
+
+    private DailyParseQuota dailyParseQuota;
+
+    @BeforeEach
+    void setUp() {
+        VideoParseRecordRepository videoParseRecordRepository = mock(VideoParseRecordRepository.class);
+        // 重启恢复只统计当天解析成功且未删除的记录
+        when(videoParseRecordRepository.countGroupByOpenIdSince(LocalDate.now().atStartOfDay(), 1, 0))
+                .thenReturn(Collections.singletonList(new Object[]{"recovered", 2L}));
+
+        dailyParseQuota = new DailyParseQuota();
+        ReflectionTestUtils.setField(dailyParseQuota, "initConfigService", mock(InitConfigService.class));
+        ReflectionTestUtils.setField(dailyParseQuota, "videoParseRecordRepository", videoParseRecordRepository);
+        ReflectionTestUtils.setField(dailyParseQuota, "defaultLimit", 3);
+        dailyParseQuota.init();
+    }
+
+    @Test
+    void rejectsOnceLimitIsUsed() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dailyParseQuota.tryAcquire("user"));
+        }
+        assertFalse(dailyParseQuota.tryAcquire("user"));
+        assertEquals(3, dailyParseQuota.getUsed("user"));
+    }
+
+    @Test
+    void releaseReturnsSlotAndNeverGoesNegative() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dailyParseQuota.tryAcquire("user"));
+        }
+        dailyParseQuota.release("user");
+        assertTrue(dailyParseQuota.tryAcquire("user"));
+
+        dailyParseQuota.release("other");
+        assertEquals(0, dailyParseQuota.getUsed("other"));
+        assertTrue(dailyParseQuota.tryAcquire("other"));
+        dailyParseQuota.release("other");
+        dailyParseQuota.release("other");
+        assertEquals(0, dailyParseQuota.getUsed("other"));
+    }
+
+    @Test
+    void recoversSuccessfulParsesOfToday() {
+        assertEquals(2, dailyParseQuota.getUsed("recovered"));
+        assertTrue(dailyParseQuota.tryAcquire("recovered"));
+        assertFalse(dailyParseQuota.tryAcquire("recovered"));
+    }
+}
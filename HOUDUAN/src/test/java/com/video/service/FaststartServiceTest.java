@@ -0,0 +1,160 @@
+package com.video.service;
+
+import com.video.common.Mp4TestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * faststart重排测试
+ * 在moov位于末尾的合成MP4上检查重排后的文件：moov移到ftyp之后，chunk偏移指向原来的数据，任意区间与完整文件一致。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class FaststartServiceTest {
+
+    private static final int CHUNKS = 8;
+
+    private RangeServer server;
+
+    private FaststartService faststartService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new RangeServer();
+        faststartService = new FaststartService();
+        ReflectionTestUtils.setField(faststartService, "mp4MetadataService", Mp4MetadataServiceTest.create());
+        ReflectionTestUtils.setField(faststartService, "enabled", true);
+        ReflectionTestUtils.setField(faststartService, "maxMoovSizeMb", 8);
+        ReflectionTestUtils.setField(faststartService, "layoutCacheMb", 16L);
+        ReflectionTestUtils.setField(faststartService, "cacheTtlHours", 1L);
+        ReflectionTestUtils.setField(faststartService, "skipTtlMinutes", 10L);
+        faststartService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void movesMoovBeforeMdatAndShiftsChunkOffsets(boolean co64) throws Exception {
+        byte[] original = Mp4TestFiles.moovAtEnd(100 * 1024, CHUNKS, co64);
+        FaststartService.Layout layout = faststartService.prepare("link", server.add("/a.mp4", original));
+        assertNotNull(layout);
+
+        byte[] remuxed = render(layout, original, 0, original.length - 1);
+        int ftypSize = Mp4TestFiles.ftyp().length;
+        int moovSize = (int) (layout.getHeadLength() - ftypSize);
+        assertEquals(original.length, remuxed.length);
+        assertArrayEquals(Arrays.copyOf(original, ftypSize), Arrays.copyOf(remuxed, ftypSize));
+        assertEquals("moov", new String(remuxed, ftypSize + 4, 4, StandardCharsets.ISO_8859_1));
+        // ftyp与moov之间的数据（mdat）整体后移moov大小
+        assertArrayEquals(Arrays.copyOfRange(original, ftypSize, original.length - moovSize),
+                Arrays.copyOfRange(remuxed, ftypSize + moovSize, remuxed.length));
+
+        long[] before = Mp4TestFiles.readChunkOffsets(Arrays.copyOfRange(original, original.length - moovSize,
+                original.length));
+        long[] after = Mp4TestFiles.readChunkOffsets(Arrays.copyOfRange(remuxed, ftypSize, ftypSize + moovSize));
+        assertEquals(CHUNKS, after.length);
+        for (int i = 0; i < CHUNKS; i++) {
+            assertEquals(before[i] + moovSize, after[i]);
+            assertArrayEquals(Arrays.copyOfRange(original, (int) before[i], (int) before[i] + 64),
+                    Arrays.copyOfRange(remuxed, (int) after[i], (int) after[i] + 64));
+        }
+    }
+
+    @Test
+    void rangesAcrossHeaderMoovAndBodyMatchFullFile() throws Exception {
+        byte[] original = Mp4TestFiles.moovAtEnd(100 * 1024, CHUNKS, false);
+        FaststartService.Layout layout = faststartService.prepare("link", server.add("/a.mp4", original));
+        byte[] remuxed = render(layout, original, 0, original.length - 1);
+        int ftypSize = Mp4TestFiles.ftyp().length;
+        int head = (int) layout.getHeadLength();
+        int last = original.length - 1;
+
+        int[][] ranges = {
+                {0, 0}, {0, ftypSize - 1}, {ftypSize - 4, ftypSize + 4}, {ftypSize, head - 1},
+                {head - 4, head + 4}, {0, head + 100}, {ftypSize + 1, last}, {head, head},
+                {head, last}, {last - 10, last}, {5000, 6000}
+        };
+        for (int[] range : ranges) {
+            assertArrayEquals(Arrays.copyOfRange(remuxed, range[0], range[1] + 1),
+                    render(layout, original, range[0], range[1]), range[0] + "-" + range[1]);
+        }
+    }
+
+    @Test
+    void resolvesClientRanges() throws Exception {
+        byte[] original = Mp4TestFiles.moovAtEnd(4096, 2, false);
+        FaststartService.Layout layout = faststartService.prepare("link", server.add("/a.mp4", original));
+        long last = original.length - 1;
+
+        assertArrayEquals(new long[]{0, last}, layout.resolveRange(null));
+        assertArrayEquals(new long[]{10, last}, layout.resolveRange("bytes=10-"));
+        assertArrayEquals(new long[]{10, 20}, layout.resolveRange("bytes=10-20"));
+        assertArrayEquals(new long[]{0, last}, layout.resolveRange("bytes=0-999999"));
+        assertArrayEquals(new long[]{last - 99, last}, layout.resolveRange("bytes=-100"));
+        assertNull(layout.resolveRange("bytes=20-10"));
+        assertNull(layout.resolveRange("bytes=" + original.length + "-"));
+        assertNull(layout.resolveRange("bytes=abc-"));
+        assertNull(layout.resolveRange("bytes=0-1,5-6"));
+    }
+
+    @Test
+    void skipsFaststartFileWithoutRecheck() {
+        String url = server.add("/start.mp4", Mp4TestFiles.moovAtStart(4096));
+
+        assertNull(faststartService.prepare("link", url));
+        int requests = server.getRequests().size();
+        assertNull(faststartService.prepare("link", url));
+        assertEquals(requests, server.getRequests().size());
+    }
+
+    @Test
+    void rebuildsLayoutWhenTargetChanges() {
+        byte[] original = Mp4TestFiles.moovAtEnd(4096, 2, false);
+        String url = server.add("/old.mp4", original);
+        FaststartService.Layout layout = faststartService.prepare("link", url);
+        assertSame(layout, faststartService.prepare("link", url));
+
+        // 重新解析后链接指向新的上游地址
+        FaststartService.Layout fresh = faststartService.prepare("link", server.add("/fresh.mp4", original));
+        assertNotNull(fresh);
+        assertNotSame(layout, fresh);
+
+        // 新地址不需要重排时不再使用旧布局
+        assertNull(faststartService.prepare("link", server.add("/start.mp4", Mp4TestFiles.moovAtStart(4096))));
+    }
+
+    /**
+     * 按控制器的方式拼接重排后的区间：内存部分来自布局，其余按映射后的区间从原文件读取
+     */
+    private byte[] render(FaststartService.Layout layout, byte[] original, long start, long end) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        faststartService.writeHead(layout, start, end, output::write);
+        long bodyStart = Math.max(start, layout.getHeadLength());
+        if (bodyStart <= end) {
+            long[] span = layout.toSourceSpan(bodyStart, end);
+            output.write(original, (int) span[0], (int) (span[1] - span[0] + 1));
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,174 @@
+package com.video.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * HLS播放列表解析测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class HlsProxyServiceTest {
+
+    private static final String BASE = "https://cdn.example.com/hls/video/";
+
+    private HlsProxyService hlsProxyService;
+
+    private ProxyTokenService proxyTokenService;
+
+    @BeforeEach
+    void setUp() {
+        proxyTokenService = mock(ProxyTokenService.class);
+        // 子播放列表令牌取文件名，便于断言
+        when(proxyTokenService.issue(anyString(), eq("douyin"))).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            return "v-" + url.substring(url.lastIndexOf('/') + 1);
+        });
+
+        hlsProxyService = new HlsProxyService();
+        ReflectionTestUtils.setField(hlsProxyService, "proxyTokenService", proxyTokenService);
+        ReflectionTestUtils.setField(hlsProxyService, "playlistCacheSeconds", 600L);
+        ReflectionTestUtils.setField(hlsProxyService, "livePlaylistCacheSeconds", 2L);
+        ReflectionTestUtils.setField(hlsProxyService, "segmentCacheMb", 16L);
+        ReflectionTestUtils.setField(hlsProxyService, "segmentCacheMinutes", 30L);
+        hlsProxyService.init();
+    }
+
+    @Test
+    void parsesMediaPlaylistWithBlankLinesAndByteRanges() {
+        String text = "\uFEFF#EXTM3U\r\n"
+                + "\r\n"
+                + "#EXT-X-VERSION:4\n"
+                + "#EXT-X-TARGETDURATION:10\n"
+                + "#EXT-X-MEDIA-SEQUENCE:7\n"
+                + "   \n"
+                + "#EXTINF:10.0,\n"
+                + "#EXT-X-BYTERANGE:1000@0\n"
+                + "all.ts\n"
+                + "\n"
+                + "#EXTINF:10.0,\n"
+                + "#EXT-X-BYTERANGE:500\n"
+                + "all.ts\n"
+                + "#EXTINF:8.0,\n"
+                + "https://other.example.com/tail.ts?sign=abc\n"
+                + "\n"
+                + "#EXT-X-ENDLIST\n"
+                + "\n";
+
+        HlsProxyService.Playlist playlist = load("token1", BASE + "index.m3u8", text);
+
+        assertTrue(playlist.isEndList());
+        assertFalse(playlist.isMaster());
+        assertFalse(playlist.isEncrypted());
+
+        Map<Long, HlsProxyService.Resource> segments = playlist.getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(BASE + "all.ts", segments.get(7L).getUrl());
+        assertEquals("bytes=0-999", segments.get(7L).rangeHeader());
+        // 缺省偏移时接在同一文件上一个区间之后
+        assertEquals("bytes=1000-1499", segments.get(8L).rangeHeader());
+        assertEquals("https://other.example.com/tail.ts?sign=abc", segments.get(9L).getUrl());
+        assertNull(segments.get(9L).rangeHeader());
+
+        List<String> lines = lines(playlist.getText());
+        assertEquals("#EXTM3U", lines.get(0));
+        assertTrue(lines.contains("token1/seg/7"));
+        assertTrue(lines.contains("token1/seg/8"));
+        assertTrue(lines.contains("token1/seg/9"));
+        assertFalse(playlist.getText().contains("BYTERANGE"));
+        assertFalse(playlist.getText().contains(".ts"));
+    }
+
+    @Test
+    void parsesMasterAndVariantPlaylists() {
+        String master = "#EXTM3U\n"
+                + "\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360\n"
+                + "low/index.m3u8\n"
+                + "\n"
+                + "#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=1000,BANDWIDTH=2400000,RESOLUTION=1280x720\n"
+                + "high/index\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1200000\n"
+                + "mid/index.m3u8\n";
+
+        HlsProxyService.Playlist playlist = load("master", BASE + "master.m3u8", master);
+
+        assertTrue(playlist.isMaster());
+        assertTrue(playlist.getSegments().isEmpty());
+        assertEquals("v-index", playlist.getBestVariantToken());
+        List<String> lines = lines(playlist.getText());
+        assertEquals(3, lines.stream().filter(line -> line.startsWith("v-")).count());
+
+        String variant = "#EXTM3U\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\",BYTERANGE=\"720@0\"\n"
+                + "\n"
+                + "#EXTINF:4.0,\n"
+                + "#EXT-X-BYTERANGE:20000@720\n"
+                + "main.mp4\n"
+                + "#EXTINF:4.0,\n"
+                + "#EXT-X-BYTERANGE:18000\n"
+                + "main.mp4\n"
+                + "#EXT-X-ENDLIST\n";
+
+        HlsProxyService.Playlist media = load("variant", BASE + "high/index", variant);
+
+        assertFalse(media.isMaster());
+        HlsProxyService.Resource map = media.getMap();
+        assertNotNull(map);
+        assertEquals(BASE + "high/init.mp4", map.getUrl());
+        assertEquals("bytes=0-719", map.rangeHeader());
+        assertEquals("bytes=720-20719", media.getSegment(0).rangeHeader());
+        assertEquals("bytes=20720-38719", media.getSegment(1).rangeHeader());
+        assertTrue(lines(media.getText()).contains("#EXT-X-MAP:URI=\"variant/res/0\""));
+    }
+
+    @Test
+    void detectsEncryptedPlaylist() {
+        String text = "#EXTM3U\n"
+                + "\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\"\n"
+                + "#EXTINF:10.0,\n"
+                + "0.ts\n";
+
+        HlsProxyService.Playlist playlist = load("enc", BASE + "index.m3u8", text);
+
+        assertTrue(playlist.isEncrypted());
+        assertFalse(playlist.isEndList());
+        assertEquals(BASE + "key.bin", playlist.getResource(0).getUrl());
+        assertTrue(lines(playlist.getText()).contains("#EXT-X-KEY:METHOD=AES-128,URI=\"enc/res/0\""));
+    }
+
+    private HlsProxyService.Playlist load(String token, String url, String text) {
+        ProxyTokenService.ResolvedLink link = ProxyTokenService.ResolvedLink.valid(token + "-id", url, "douyin");
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        assertTrue(hlsProxyService.isPlaylist(null, body));
+        return hlsProxyService.load(link, token, url, body);
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,134 @@
+package com.video.service;
+
+import com.video.entity.ProxyLink;
+import com.video.entity.VideoParseRecord;
+import com.video.repository.ProxyLinkRepository;
+import com.video.repository.VideoParseRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 过期链接刷新测试
+ * 同一链接的并发刷新只重新解析一次，失败结果不写入地址缓存。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class LinkRefreshServiceTest {
+
+    private static final String LINK_ID = "abc123";
+    private static final String EXPIRED_URL = "https://v3.example.com/expired.mp4";
+    private static final String FRESH_URL = "https://v3.example.com/fresh.mp4";
+
+    private LinkRefreshService linkRefreshService;
+
+    private VideoParsingService videoParsingService;
+
+    private ProxyTokenService proxyTokenService;
+
+    @BeforeEach
+    void setUp() {
+        ProxyLink proxyLink = new ProxyLink();
+        proxyLink.setRecordId(1L);
+        proxyLink.setMediaField("videoUrl");
+        ProxyLinkRepository proxyLinkRepository = mock(ProxyLinkRepository.class);
+        when(proxyLinkRepository.findByLinkId(LINK_ID)).thenReturn(Optional.of(proxyLink));
+
+        VideoParseRecord record = new VideoParseRecord();
+        record.setId(1L);
+        record.setOriginalUrl("https://v.douyin.com/abc/");
+        VideoParseRecordRepository videoParseRecordRepository = mock(VideoParseRecordRepository.class);
+        when(videoParseRecordRepository.findById(1L)).thenReturn(Optional.of(record));
+
+        videoParsingService = mock(VideoParsingService.class);
+        proxyTokenService = mock(ProxyTokenService.class);
+
+        linkRefreshService = new LinkRefreshService();
+        ReflectionTestUtils.setField(linkRefreshService, "proxyLinkRepository", proxyLinkRepository);
+        ReflectionTestUtils.setField(linkRefreshService, "videoParseRecordRepository", videoParseRecordRepository);
+        ReflectionTestUtils.setField(linkRefreshService, "videoParsingService", videoParsingService);
+        ReflectionTestUtils.setField(linkRefreshService, "proxyTokenService", proxyTokenService);
+        ReflectionTestUtils.setField(linkRefreshService, "enabled", true);
+        ReflectionTestUtils.setField(linkRefreshService, "maxSize", 100L);
+        ReflectionTestUtils.setField(linkRefreshService, "freshTtlSeconds", 600L);
+        ReflectionTestUtils.setField(linkRefreshService, "failureTtlSeconds", 60L);
+        ReflectionTestUtils.setField(linkRefreshService, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(linkRefreshService, "acquireTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(linkRefreshService, "waitTimeoutMs", 5000L);
+        linkRefreshService.init();
+    }
+
+    @Test
+    void concurrentRefreshesReparseOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(videoParsingService.resolveMediaUrl(anyString(), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return FRESH_URL;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> linkRefreshService.refresh(link(), EXPIRED_URL)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> linkRefreshService.refresh(link(), EXPIRED_URL)));
+            }
+            // 等待其余请求进入合并等待后再放行解析
+            while ((int) linkRefreshService.getStats().get("inflight") != 1) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(FRESH_URL, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(videoParsingService, times(1)).resolveMediaUrl(anyString(), anyString());
+        verify(proxyTokenService, times(1)).updateTarget(LINK_ID, FRESH_URL);
+        assertEquals(1L, linkRefreshService.getStats().get("cached"));
+        assertEquals(0, linkRefreshService.getStats().get("inflight"));
+    }
+
+    @Test
+    void failedRefreshIsNotCachedAsAddress() {
+        when(videoParsingService.resolveMediaUrl(anyString(), anyString())).thenReturn(null);
+
+        assertNull(linkRefreshService.refresh(link(), EXPIRED_URL));
+        // 失败的链接在失败缓存期内不再重新解析
+        assertNull(linkRefreshService.refresh(link(), EXPIRED_URL));
+
+        verify(videoParsingService, times(1)).resolveMediaUrl(anyString(), anyString());
+        assertEquals(0L, linkRefreshService.getStats().get("cached"));
+        assertEquals(1L, linkRefreshService.getStats().get("failed"));
+    }
+
+    private static ProxyTokenService.ResolvedLink link() {
+        return ProxyTokenService.ResolvedLink.valid(LINK_ID, EXPIRED_URL, "general");
+    }
+}
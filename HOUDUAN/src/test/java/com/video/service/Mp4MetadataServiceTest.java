@@ -0,0 +1,104 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.video.common.Mp4TestFiles;
+import com.video.dto.MediaMetadata;
+import com.video.repository.SystemConfigRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 媒体元数据测试
+ * 读取元数据只发起必要的Range请求，请求头与下载代理一致。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class Mp4MetadataServiceTest {
+
+    private RangeServer server;
+
+    private Mp4MetadataService mp4MetadataService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new RangeServer();
+        mp4MetadataService = create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void loadsMoovAtEndWithRangeReadsOnly() throws Exception {
+        // mdat大于开头读取的64KB，moov需要按盒子头跳转后单独读取
+        byte[] file = Mp4TestFiles.moovAtEnd(200 * 1024, 4, false);
+        String url = server.add("/moov-at-end.mp4", file);
+
+        MediaMetadata metadata = mp4MetadataService.getMetadata(url);
+
+        assertTrue(metadata.getMoovAtEnd());
+        assertEquals(file.length, metadata.getContentLength());
+        assertEquals(Mp4TestFiles.WIDTH, metadata.getWidth());
+        assertEquals(Mp4TestFiles.HEIGHT, metadata.getHeight());
+        assertEquals("avc1", metadata.getVideoCodec());
+        assertEquals(10.0, metadata.getDurationSeconds());
+
+        // 每次Range读取只对应一次上游请求，没有额外的可访问性探测
+        assertEquals(mp4MetadataService.getStats().get("rangeReads"), (long) server.getRequests().size());
+        for (Headers headers : server.getRequests()) {
+            assertNotNull(headers.getFirst("Range"));
+            // 与下载代理相同，未配置Referer时使用视频域名（不含端口）
+            assertEquals("http://127.0.0.1/", headers.getFirst("Referer"));
+            assertEquals(PlatformRegistry.DESKTOP_USER_AGENT, headers.getFirst("User-Agent"));
+        }
+    }
+
+    @Test
+    void probeIssuesSingleRequest() throws Exception {
+        byte[] file = Mp4TestFiles.moovAtStart(1024);
+        String url = server.add("/probe.mp4", file);
+
+        MediaMetadata metadata = mp4MetadataService.probe(url);
+
+        assertEquals(file.length, metadata.getContentLength());
+        assertEquals(1, server.getRequests().size());
+        assertEquals("bytes=0-0", server.getRequests().get(0).getFirst("Range"));
+    }
+
+    /**
+     * 按默认配置创建元数据服务（与@Value默认值一致）
+     */
+    static Mp4MetadataService create() {
+        SystemConfigRepository systemConfigRepository = mock(SystemConfigRepository.class);
+        when(systemConfigRepository.findActiveByConfigKey(anyString())).thenReturn(Optional.empty());
+        PlatformRegistry platformRegistry = new PlatformRegistry();
+        ReflectionTestUtils.setField(platformRegistry, "systemConfigRepository", systemConfigRepository);
+        ReflectionTestUtils.setField(platformRegistry, "objectMapper", new ObjectMapper());
+        platformRegistry.init();
+
+        Mp4MetadataService mp4MetadataService = new Mp4MetadataService();
+        ReflectionTestUtils.setField(mp4MetadataService, "platformRegistry", platformRegistry);
+        ReflectionTestUtils.setField(mp4MetadataService, "maxMoovSizeMb", 16);
+        ReflectionTestUtils.setField(mp4MetadataService, "cacheSize", 100L);
+        ReflectionTestUtils.setField(mp4MetadataService, "cacheTtlHours", 1L);
+        ReflectionTestUtils.setField(mp4MetadataService, "connectTimeout", 2000);
+        ReflectionTestUtils.setField(mp4MetadataService, "readTimeout", 5000);
+        mp4MetadataService.init();
+        return mp4MetadataService;
+    }
+}
@@ -0,0 +1,85 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.entity.SystemConfig;
+import com.video.repository.SystemConfigRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 平台注册表测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class PlatformRegistryTest {
+
+    private PlatformRegistry platformRegistry;
+
+    private SystemConfigRepository systemConfigRepository;
+
+    @BeforeEach
+    void setUp() {
+        systemConfigRepository = mock(SystemConfigRepository.class);
+        when(systemConfigRepository.findActiveByConfigKey(PlatformRegistry.CONFIG_KEY)).thenReturn(Optional.empty());
+
+        platformRegistry = new PlatformRegistry();
+        ReflectionTestUtils.setField(platformRegistry, "systemConfigRepository", systemConfigRepository);
+        ReflectionTestUtils.setField(platformRegistry, "objectMapper", new ObjectMapper());
+        platformRegistry.init();
+    }
+
+    @Test
+    void resolvesLongestHostSuffix() {
+        assertEquals("douyin", platformRegistry.resolveHost("v26-web.douyinvod.com").getCode());
+        assertEquals("weishi", platformRegistry.resolveHost("weishi.qq.com").getCode());
+        assertEquals("douyin", platformRegistry.resolveUrl("https://V3.ZJCDN.com:443/video/a.mp4?x=1").getCode());
+        assertTrue(platformRegistry.resolveHost("qq.com").isGeneral());
+        assertTrue(platformRegistry.resolveHost("notdouyin.com").isGeneral());
+    }
+
+    @Test
+    void streamingAndDownloadUseSeparateHeaders() {
+        PlatformRegistry.PlatformProfile pipixia = platformRegistry.resolveHost("v6.pipix.com");
+        assertEquals("https://h5.pipix.com/", pipixia.getReferer());
+        assertEquals(PlatformRegistry.MOBILE_USER_AGENT, pipixia.getUserAgent());
+        assertEquals("https://www.pipix.com/", pipixia.getDownloadReferer());
+        assertEquals(PlatformRegistry.DESKTOP_USER_AGENT, pipixia.getDownloadUserAgent());
+
+        PlatformRegistry.PlatformProfile bilibili = platformRegistry.resolveHost("upos-sz.bilivideo.com");
+        assertEquals("https://www.bilibili.com/", bilibili.getReferer());
+        assertNull(bilibili.getDownloadReferer());
+
+        PlatformRegistry.PlatformProfile general = platformRegistry.resolveHost("cdn.example.com");
+        assertNull(general.getDownloadReferer());
+        assertEquals(PlatformRegistry.DESKTOP_USER_AGENT, general.getDownloadUserAgent());
+    }
+
+    @Test
+    void configuredProfilesDefaultToDesktopDownloadUserAgent() {
+        SystemConfig config = new SystemConfig();
+        config.setIsEnabled(1);
+        config.setUpdateTime(LocalDateTime.now());
+        config.setConfigValue("[{\"code\":\"demo\",\"proxyRoute\":\"general\",\"referer\":\"https://m.demo.com/\","
+                + "\"hosts\":[\"demo.com\"]}]");
+        when(systemConfigRepository.findActiveByConfigKey(PlatformRegistry.CONFIG_KEY)).thenReturn(Optional.of(config));
+
+        platformRegistry.reload();
+
+        PlatformRegistry.PlatformProfile demo = platformRegistry.resolveHost("video.demo.com");
+        assertEquals("demo", demo.getCode());
+        assertEquals(PlatformRegistry.MOBILE_USER_AGENT, demo.getUserAgent());
+        assertEquals(PlatformRegistry.DESKTOP_USER_AGENT, demo.getDownloadUserAgent());
+        assertNull(demo.getDownloadReferer());
+    }
+}
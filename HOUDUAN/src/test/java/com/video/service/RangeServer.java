@@ -0,0 +1,99 @@
+package com.video.service;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用的上游文件服务器
+ * 按路径提供文件，支持单个Range区间，记录收到的请求头；可让指定路径返回固定状态码（如签名过期的403）。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class RangeServer implements AutoCloseable {
+
+    private final HttpServer server;
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+
+    private final List<Headers> requests = new CopyOnWriteArrayList<>();
+
+    RangeServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * 添加文件
+     *
+     * @return 文件地址
+     */
+    String add(String path, byte[] data) {
+        files.put(path, data);
+        return url(path);
+    }
+
+    /**
+     * 指定路径固定返回的状态码
+     */
+    void fail(String path, int status) {
+        statuses.put(path, status);
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    List<Headers> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestHeaders());
+        String path = exchange.getRequestURI().getPath();
+        byte[] data = files.get(path);
+        Integer status = statuses.get(path);
+        if (data == null || status != null) {
+            exchange.sendResponseHeaders(status != null ? status : 404, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+        exchange.getResponseHeaders().set("ETag", "\"" + data.length + "\"");
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = data.length - 1;
+        int code = 200;
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring(6).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            code = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+        }
+        exchange.sendResponseHeaders(code, end - start + 1);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(data, start, end - start + 1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.video.repository.SystemConfigRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * 封面缩略图测试
+ * 覆盖缩放、解码失败时返回原图，以及原图超过大小上限时中止下载。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class ThumbnailServiceTest {
+
+    private static final String SOURCE_URL = "https://p3.example.com/cover.png";
+
+    private ThumbnailService thumbnailService;
+
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        SystemConfigRepository systemConfigRepository = mock(SystemConfigRepository.class);
+        when(systemConfigRepository.findActiveByConfigKey(anyString())).thenReturn(Optional.empty());
+        PlatformRegistry platformRegistry = new PlatformRegistry();
+        ReflectionTestUtils.setField(platformRegistry, "systemConfigRepository", systemConfigRepository);
+        ReflectionTestUtils.setField(platformRegistry, "objectMapper", new ObjectMapper());
+        platformRegistry.init();
+
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+
+        thumbnailService = new ThumbnailService();
+        ReflectionTestUtils.setField(thumbnailService, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(thumbnailService, "platformRegistry", platformRegistry);
+        ReflectionTestUtils.setField(thumbnailService, "linkRefreshService", mock(LinkRefreshService.class));
+        ReflectionTestUtils.setField(thumbnailService, "widthsConfig", "160,320");
+        ReflectionTestUtils.setField(thumbnailService, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(thumbnailService, "cacheMb", 16L);
+        ReflectionTestUtils.setField(thumbnailService, "cacheHours", 1L);
+        ReflectionTestUtils.setField(thumbnailService, "maxSourceMb", 1L);
+        ReflectionTestUtils.setField(thumbnailService, "maxSourcePixels", 40000000L);
+        ReflectionTestUtils.setField(thumbnailService, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(thumbnailService, "waitTimeoutMs", 1000L);
+        thumbnailService.init();
+    }
+
+    @Test
+    void resizesDecodableImage() throws Exception {
+        server.expect(requestTo(SOURCE_URL)).andRespond(withSuccess(png(640, 360), MediaType.IMAGE_PNG));
+
+        ThumbnailService.Thumbnail thumbnail = thumbnailService.getThumbnail(link(), 200);
+
+        assertEquals("image/jpeg", thumbnail.getContentType());
+        assertEquals(320, ImageIO.read(new ByteArrayInputStream(thumbnail.getData())).getWidth());
+        assertEquals(1L, thumbnailService.getStats().get("generated"));
+        server.verify();
+    }
+
+    @Test
+    void passesThroughImageThatFailsToDecode() throws Exception {
+        // 保留PNG文件头和IHDR，截断图像数据，ImageIO能识别格式但解码时抛出IIOException
+        byte[] corrupt = Arrays.copyOf(png(640, 360), 60);
+        server.expect(requestTo(SOURCE_URL)).andRespond(withSuccess(corrupt, MediaType.IMAGE_PNG));
+
+        ThumbnailService.Thumbnail thumbnail = thumbnailService.getThumbnail(link(), 160);
+
+        assertArrayEquals(corrupt, thumbnail.getData());
+        assertEquals(MediaType.IMAGE_PNG_VALUE, thumbnail.getContentType());
+        assertEquals(1L, thumbnailService.getStats().get("passthrough"));
+    }
+
+    @Test
+    void rejectsOversizedContentLength() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(2L * 1024 * 1024);
+        server.expect(requestTo(SOURCE_URL))
+                .andRespond(withSuccess(new byte[16], MediaType.IMAGE_JPEG).headers(headers));
+
+        IOException e = assertThrows(IOException.class, () -> thumbnailService.getThumbnail(link(), 160));
+        assertEquals("原图过大：" + 2L * 1024 * 1024 + " bytes", e.getMessage());
+    }
+
+    @Test
+    void capsBytesReadWithoutContentLength() {
+        server.expect(requestTo(SOURCE_URL))
+                .andRespond(withSuccess(new byte[1024 * 1024 + 1], MediaType.IMAGE_JPEG));
+
+        assertThrows(IOException.class, () -> thumbnailService.getThumbnail(link(), 160));
+    }
+
+    private static ProxyTokenService.ResolvedLink link() {
+        return ProxyTokenService.ResolvedLink.valid("cover", SOURCE_URL, "general");
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, x * height / width, 0xFF8800);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
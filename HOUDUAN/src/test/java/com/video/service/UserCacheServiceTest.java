@@ -0,0 +1,75 @@
+package com.video.service;
+
+import com.video.dto.UserBrief;
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户缓存测试
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class UserCacheServiceTest {
+
+    private static final String OPEN_ID = "cached-user";
+
+    private UserCacheService userCacheService;
+
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(7L);
+        user.setOpenId(OPEN_ID);
+        user.setStatus(1);
+        user.setVideoParseCount(3);
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByOpenId(OPEN_ID)).thenReturn(Optional.of(user));
+
+        userCacheService = new UserCacheService();
+        ReflectionTestUtils.setField(userCacheService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userCacheService, "maxSize", 100L);
+        ReflectionTestUtils.setField(userCacheService, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(userCacheService, "briefTtlSeconds", 1800L);
+        userCacheService.init();
+    }
+
+    @Test
+    void evictDetailKeepsBrief() {
+        userCacheService.getUser(OPEN_ID);
+
+        userCacheService.evictDetail(OPEN_ID);
+
+        assertTrue(userCacheService.isCached(OPEN_ID));
+        Optional<UserBrief> brief = userCacheService.getBrief(OPEN_ID);
+        assertEquals(7L, brief.get().getId());
+        verify(userRepository, times(0)).findBriefByOpenId(OPEN_ID);
+        // 完整信息重新从数据库加载
+        userCacheService.getUser(OPEN_ID);
+        verify(userRepository, times(2)).findByOpenId(OPEN_ID);
+    }
+
+    @Test
+    void evictDropsBrief() {
+        userCacheService.getUser(OPEN_ID);
+
+        userCacheService.evict(OPEN_ID);
+
+        assertFalse(userCacheService.isCached(OPEN_ID));
+    }
+}
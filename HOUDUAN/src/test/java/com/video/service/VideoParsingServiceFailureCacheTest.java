@@ -0,0 +1,105 @@
+package com.video.service;
+
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import com.video.repository.VideoParseRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * 解析失败负缓存测试
+ * 只缓存上游返回的错误码，调用外部API失败时不缓存，重试会再次调用外部API。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class VideoParsingServiceFailureCacheTest {
+
+    private static final String OPEN_ID = "failure-cache-user";
+
+    @Autowired
+    private VideoParsingService videoParsingService;
+
+    @Autowired
+    private ParseFailureCache parseFailureCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VideoParseRecordRepository videoParseRecordRepository;
+
+    @Autowired
+    @Qualifier("parseRestTemplate")
+    private RestTemplate parseRestTemplate;
+
+    @Value("${watermark.api.url}")
+    private String watermarkApiUrl;
+
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = MockRestServiceServer.bindTo(parseRestTemplate).build();
+        User user = new User();
+        user.setOpenId(OPEN_ID);
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        videoParseRecordRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void transportFailureIsRetried() {
+        String videoUrl = "https://v.douyin.com/failure-cache-transport/";
+        server.expect(ExpectedCount.twice(), requestTo(watermarkApiUrl))
+                .andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+
+        assertEquals("解析失败，请稍后重试", parse(videoUrl));
+        assertNull(parseFailureCache.getFailureCode(videoUrl));
+        assertEquals("解析失败，请稍后重试", parse(videoUrl));
+        server.verify();
+    }
+
+    @Test
+    void upstreamErrorCodeIsCached() {
+        String videoUrl = "https://v.douyin.com/failure-cache-upstream/";
+        server.expect(ExpectedCount.once(), requestTo(watermarkApiUrl))
+                .andRespond(withSuccess("{\"code\":\"-100\",\"msg\":\"ip\"}", MediaType.APPLICATION_JSON));
+
+        assertEquals("IP访问受限", parse(videoUrl));
+        assertEquals("-100", parseFailureCache.getFailureCode(videoUrl));
+        // 负缓存期内不再调用外部API
+        assertEquals("IP访问受限", parse(videoUrl));
+        server.verify();
+    }
+
+    private String parse(String videoUrl) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.4.1");
+        return videoParsingService.parseVideo(OPEN_ID, videoUrl, request).getMsg();
+    }
+}
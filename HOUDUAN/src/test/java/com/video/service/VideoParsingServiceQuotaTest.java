@@ -0,0 +1,113 @@
+package com.video.service;
+
+import com.video.dto.VideoParseResult;
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import com.video.repository.VideoParseRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * 解析次数计数测试
+ * 只有解析成功才占用每日解析次数，上游失败和系统异常归还次数，重启恢复的计数与之一致。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class VideoParsingServiceQuotaTest {
+
+    private static final String OPEN_ID = "quota-user";
+
+    @Autowired
+    private VideoParsingService videoParsingService;
+
+    @Autowired
+    private DailyParseQuota dailyParseQuota;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VideoParseRecordRepository videoParseRecordRepository;
+
+    @Autowired
+    @Qualifier("parseRestTemplate")
+    private RestTemplate parseRestTemplate;
+
+    @Value("${watermark.api.url}")
+    private String watermarkApiUrl;
+
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = MockRestServiceServer.bindTo(parseRestTemplate).build();
+        User user = new User();
+        user.setOpenId(OPEN_ID);
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        videoParseRecordRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void onlySuccessfulParsesAreCounted() {
+        // 依次返回：上游失败错误码、上游服务异常、解析成功（媒体地址指向不可达的本地端口，避免测试访问外网）
+        server.expect(requestTo(watermarkApiUrl))
+                .andRespond(withSuccess("{\"code\":\"-1\",\"msg\":\"failed\"}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(watermarkApiUrl)).andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+        server.expect(requestTo(watermarkApiUrl)).andRespond(withSuccess(
+                "{\"code\":\"1\",\"data\":{\"title\":\"t\",\"videoSrc\":\"http://127.0.0.1:1/v.mp4\","
+                        + "\"imageSrc\":\"http://127.0.0.1:1/c.jpg\"}}", MediaType.APPLICATION_JSON));
+        int before = dailyParseQuota.getUsed(OPEN_ID);
+
+        assertFalse(parse("https://v.douyin.com/quota-upstream-error/").isSuccess());
+        assertEquals(before, dailyParseQuota.getUsed(OPEN_ID));
+
+        assertFalse(parse("https://v.douyin.com/quota-server-error/").isSuccess());
+        assertEquals(before, dailyParseQuota.getUsed(OPEN_ID));
+
+        assertTrue(parse("https://v.douyin.com/quota-success/").isSuccess());
+        assertEquals(before + 1, dailyParseQuota.getUsed(OPEN_ID));
+        server.verify();
+
+        // 重启恢复时只统计解析成功的记录
+        List<Object[]> rows = videoParseRecordRepository.countGroupByOpenIdSince(LocalDate.now().atStartOfDay(), 1, 0);
+        assertEquals(1, rows.size());
+        assertEquals(OPEN_ID, rows.get(0)[0]);
+        assertEquals(1L, ((Number) rows.get(0)[1]).longValue());
+        assertTrue(videoParseRecordRepository.count() >= 3);
+    }
+
+    private VideoParseResult parse(String videoUrl) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.3.1");
+        return videoParsingService.parseVideo(OPEN_ID, videoUrl, request);
+    }
+}
@@ -0,0 +1,118 @@
+package com.video.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * 微信API客户端测试
+ * 同一js_code的并发请求只调用一次微信接口，其他js_code不受影响，失败结果不缓存。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+class WechatApiClientTest {
+
+    private static final String API_URL = "https://api.weixin.qq.com/sns/jscode2session";
+    private static final int THREADS = 8;
+
+    private WechatApiClient wechatApiClient;
+
+    private MockRestServiceServer server;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+
+        wechatApiClient = new WechatApiClient();
+        ReflectionTestUtils.setField(wechatApiClient, "wechatRestTemplate", restTemplate);
+        ReflectionTestUtils.setField(wechatApiClient, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(wechatApiClient, "appId", "app");
+        ReflectionTestUtils.setField(wechatApiClient, "appSecret", "secret");
+        ReflectionTestUtils.setField(wechatApiClient, "code2SessionUrl", API_URL);
+        ReflectionTestUtils.setField(wechatApiClient, "maxRetries", 0);
+        ReflectionTestUtils.setField(wechatApiClient, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(wechatApiClient, "maxConcurrent", THREADS);
+        ReflectionTestUtils.setField(wechatApiClient, "acquireTimeoutMs", 200L);
+        ReflectionTestUtils.setField(wechatApiClient, "codeCacheSeconds", 300L);
+        ReflectionTestUtils.setField(wechatApiClient, "waitTimeoutMs", 10000L);
+        wechatApiClient.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentRequestsForSameCodeCallOnceWithoutBlockingOtherCodes() throws Exception {
+        CountDownLatch slowCallStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowCall = new CountDownLatch(1);
+        server.expect(ExpectedCount.once(), requestTo(url("slow"))).andRespond(request -> {
+            slowCallStarted.countDown();
+            try {
+                releaseSlowCall.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return withSuccess("{\"openid\":\"open-slow\"}", MediaType.APPLICATION_JSON).createResponse(request);
+        });
+        server.expect(ExpectedCount.once(), requestTo(url("fast")))
+                .andRespond(withSuccess("{\"openid\":\"open-fast\"}", MediaType.APPLICATION_JSON));
+
+        List<Future<String>> slow = new ArrayList<>();
+        slow.add(executor.submit(() -> wechatApiClient.getOpenId("slow")));
+        assertTrue(slowCallStarted.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < THREADS; i++) {
+            slow.add(executor.submit(() -> wechatApiClient.getOpenId("slow")));
+        }
+
+        // 另一个js_code在慢调用进行中正常返回
+        assertEquals("open-fast", executor.submit(() -> wechatApiClient.getOpenId("fast")).get(5, TimeUnit.SECONDS));
+
+        releaseSlowCall.countDown();
+        for (Future<String> future : slow) {
+            assertEquals("open-slow", future.get(10, TimeUnit.SECONDS));
+        }
+        // 结果已缓存，不再调用微信接口
+        assertEquals("open-slow", wechatApiClient.getOpenId("slow"));
+        server.verify();
+    }
+
+    @Test
+    void failedCallIsNotCached() {
+        server.expect(ExpectedCount.twice(), requestTo(url("invalid")))
+                .andRespond(withSuccess("{\"errcode\":40029,\"errmsg\":\"invalid code\"}", MediaType.APPLICATION_JSON));
+
+        assertNull(wechatApiClient.getOpenId("invalid"));
+        assertNull(wechatApiClient.getOpenId("invalid"));
+        server.verify();
+    }
+
+    private static String url(String jsCode) {
+        return API_URL + "?appid=app&secret=secret&grant_type=authorization_code&js_code=" + jsCode;
+    }
+}
@@ -0,0 +1,133 @@
+package com.video.service;
+
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 首次登录并发测试
+ * 同一openId并发首次登录只创建一个用户且不抛出异常，不同openId的突发登录各自创建一个用户。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class WechatServiceLoginTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private WechatService wechatService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserCacheService userCacheService;
+
+    @Value("${business.user.default-points}")
+    private int defaultPoints;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentFirstLoginsForSameOpenIdCreateOneUser() throws Exception {
+        String openId = "burst-same";
+        List<Callable<Map<String, Object>>> logins = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String ip = "10.0.0." + i;
+            logins.add(() -> wechatService.login(openId, ip));
+        }
+
+        for (Map<String, Object> response : runTogether(logins)) {
+            assertEquals(openId, response.get("openId"));
+            assertEquals(defaultPoints, response.get("points"));
+        }
+        List<User> users = userRepository.findAll();
+        assertEquals(1, users.size());
+        User user = users.get(0);
+        assertEquals(openId, user.getOpenId());
+        assertEquals(defaultPoints, user.getPoints());
+        assertEquals(0, user.getSignInCount());
+        assertTrue(user.getLastLoginIp().startsWith("10.0.0."));
+    }
+
+    @Test
+    void burstOfFirstLoginsForDifferentOpenIdsCreatesOneUserEach() throws Exception {
+        List<Callable<Map<String, Object>>> logins = new ArrayList<>();
+        for (int i = 0; i < THREADS * 4; i++) {
+            String openId = "burst-" + (i % THREADS);
+            logins.add(() -> wechatService.login(openId, "10.0.1.1"));
+        }
+
+        runTogether(logins);
+        assertEquals(THREADS, userRepository.count());
+        for (int i = 0; i < THREADS; i++) {
+            assertTrue(userRepository.findByOpenId("burst-" + i).isPresent());
+        }
+    }
+
+    @Test
+    void repeatedLoginKeepsExistingUser() throws Exception {
+        wechatService.login("returning", "10.0.2.1");
+        User existing = userRepository.findByOpenId("returning").get();
+        existing.setPoints(existing.getPoints() + 50);
+        userRepository.save(existing);
+        userCacheService.evict("returning");
+
+        List<Callable<Map<String, Object>>> logins = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            logins.add(() -> wechatService.login("returning", "10.0.2.2"));
+        }
+        runTogether(logins);
+
+        assertEquals(1, userRepository.count());
+        assertEquals(defaultPoints + 50, userRepository.findByOpenId("returning").get().getPoints());
+    }
+
+    /**
+     * 所有任务同时开始，任一任务抛出异常时测试失败
+     */
+    private <T> List<T> runTogether(List<Callable<T>> tasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+}
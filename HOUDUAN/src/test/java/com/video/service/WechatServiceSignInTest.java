@@ -0,0 +1,135 @@
+package com.video.service;
+
+import com.video.entity.User;
+import com.video.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 签到并发测试
+ * 同一用户并发签到时只有一次生效，积分、签到次数和连续签到天数只变化一次。
+ *
+ * @author video-parsing
+ * @since 1.0.0
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class WechatServiceSignInTest {
+
+    private static final int THREADS = 16;
+    private static final int INITIAL_POINTS = 100;
+
+    @Autowired
+    private WechatService wechatService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${business.sign.daily-points}")
+    private int dailySigninPoints;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void firstSignInAwardsOnce() throws Exception {
+        createUser("first-sign", null, 0, 0);
+
+        assertEquals(1, concurrentSignIn("first-sign"));
+        assertSignedOnce("first-sign", 0, 1);
+    }
+
+    @Test
+    void signInAfterYesterdayExtendsStreakOnce() throws Exception {
+        createUser("yesterday-sign", LocalDate.now().minusDays(1).atTime(23, 30), 5, 3);
+
+        assertEquals(1, concurrentSignIn("yesterday-sign"));
+        assertSignedOnce("yesterday-sign", 5, 4);
+    }
+
+    @Test
+    void signInAfterGapResetsStreakOnce() throws Exception {
+        createUser("gap-sign", LocalDate.now().minusDays(2).atTime(8, 0), 5, 3);
+
+        assertEquals(1, concurrentSignIn("gap-sign"));
+        assertSignedOnce("gap-sign", 5, 1);
+    }
+
+    @Test
+    void alreadySignedTodayAwardsNothing() throws Exception {
+        LocalDateTime signedAt = LocalDate.now().atStartOfDay().plusSeconds(1);
+        createUser("today-sign", signedAt, 5, 3);
+
+        assertEquals(0, concurrentSignIn("today-sign"));
+        User user = userRepository.findByOpenId("today-sign").get();
+        assertEquals(INITIAL_POINTS, user.getPoints());
+        assertEquals(5, user.getSignInCount());
+        assertEquals(3, user.getContinuousSignDays());
+    }
+
+    /**
+     * 同时发起多次签到，返回签到成功的次数，其余请求必须返回"今日已签到"
+     */
+    private int concurrentSignIn(String openId) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return wechatService.signIn(openId);
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        for (Future<Map<String, Object>> future : futures) {
+            Map<String, Object> result = future.get(30, TimeUnit.SECONDS);
+            if (Integer.valueOf(1).equals(result.get("status"))) {
+                succeeded++;
+            } else {
+                assertEquals("今日已签到", result.get("msg"));
+            }
+        }
+        return succeeded;
+    }
+
+    private void assertSignedOnce(String openId, int previousSignInCount, int expectedContinuousDays) {
+        User user = userRepository.findByOpenId(openId).get();
+        assertEquals(INITIAL_POINTS + dailySigninPoints, user.getPoints());
+        assertEquals(previousSignInCount + 1, user.getSignInCount());
+        assertEquals(expectedContinuousDays, user.getContinuousSignDays());
+        assertEquals(LocalDate.now(), user.getLastSignTime().toLocalDate());
+    }
+
+    private void createUser(String openId, LocalDateTime lastSignTime, int signInCount, int continuousSignDays) {
+        User user = new User();
+        user.setOpenId(openId);
+        user.setPoints(INITIAL_POINTS);
+        user.setSignInCount(signInCount);
+        user.setContinuousSignDays(continuousSignDays);
+        user.setLastSignTime(lastSignTime);
+        userRepository.save(user);
+    }
+}
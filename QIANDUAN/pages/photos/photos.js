@@ -47,6 +47,12 @@ Page({
                 record.imageAtlas = [];
               }
             }
+            // 代理封面使用缩略图作为视频封面，减少列表加载的流量
+            if (record.coverImageUrl && record.coverImageUrl.indexOf('/proxy/') >= 0) {
+              record.coverThumbUrl = record.coverImageUrl + '/thumb/640';
+            } else {
+              record.coverThumbUrl = record.coverImageUrl || '';
+            }
             // 格式化日期
             if (record.createTime) {
               record.formatTime = thar.formatDateTime(record.createTime);
@@ -91,6 +97,7 @@ Page({
     })
     
     const images = res.currentTarget.dataset.images;
+    const recordId = res.currentTarget.dataset.id;
     if (!images || images.length === 0) {
       that.showToast('没有图片可下载');
       that.setData({ isDownload: false });
@@ -100,12 +107,12 @@ Page({
     wx.getSetting({
       success: function (o) {
         if (o.authSetting['scope.writePhotosAlbum']) {
-          that.downloadImages(images);
+          that.downloadAtlas(recordId, images);
         } else {
           wx.authorize({
             scope: 'scope.writePhotosAlbum',
             success: function () {
-              that.downloadImages(images);
+              that.downloadAtlas(recordId, images);
             },
             fail: function (o) {
               that.showToast('需要授权保存到相册');
@@ -117,6 +124,69 @@ Page({
     })
   },
   
+  // 通过服务端打包一次性下载图集（服务端并行下载），失败时逐张下载
+  downloadAtlas: function(recordId, images) {
+    let that = this;
+    let openId = wx.getStorageSync('openId');
+    if (!recordId || !openId) {
+      that.downloadImages(images);
+      return;
+    }
+    
+    const fs = wx.getFileSystemManager();
+    const targetPath = `${wx.env.USER_DATA_PATH}/atlas_${recordId}`;
+    wx.downloadFile({
+      url: app.globalData.url + `proxy/atlas/${recordId}?openId=${encodeURIComponent(openId)}`,
+      success: function(res) {
+        if (res.statusCode !== 200) {
+          that.downloadImages(images);
+          return;
+        }
+        fs.unzip({
+          zipFilePath: res.tempFilePath,
+          targetPath: targetPath,
+          success: function() {
+            let files = fs.readdirSync(targetPath).sort();
+            if (files.length === 0) {
+              that.downloadImages(images);
+              return;
+            }
+            that.saveLocalImages(files.map(name => `${targetPath}/${name}`), images.length, targetPath);
+          },
+          fail: function() {
+            that.downloadImages(images);
+          }
+        });
+      },
+      fail: function() {
+        that.downloadImages(images);
+      }
+    });
+  },
+  
+  // 按顺序保存已解压的图片，完成后删除临时目录
+  saveLocalImages: function(paths, totalCount, targetPath) {
+    let that = this;
+    let savedCount = 0;
+    let index = 0;
+    const saveNext = function() {
+      if (index >= paths.length) {
+        wx.getFileSystemManager().rmdir({ dirPath: targetPath, recursive: true, fail: function() {} });
+        that.showToast(savedCount === totalCount ? `成功保存${savedCount}张图片` : `保存完成，部分图片可能失败`);
+        that.setData({ isDownload: false });
+        return;
+      }
+      wx.saveImageToPhotosAlbum({
+        filePath: paths[index++],
+        success: function() {
+          savedCount++;
+        },
+        complete: saveNext
+      });
+    };
+    saveNext();
+  },
+  
   downloadImages: function(images) {
     let that = this;
     let successCount = 0;
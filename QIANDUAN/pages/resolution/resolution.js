@@ -58,7 +58,7 @@ Component({
 
       //初始化头部小程序跳转信息
         var urlContent = app.globalData.url + "wx/initConfig"
-        request.requestPostApi(urlContent, {}, this,
+        request.requestCachedGetApi(urlContent, 'initConfigCache', this,
         function (res) {
           if (res.status == 200) {
             that.setData({
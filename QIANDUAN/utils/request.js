@@ -171,8 +171,42 @@ function makeRequest(url, params, method, sourceObj, successFun, failFun) {
     });
 }
 
+// 带ETag缓存的GET请求：携带上次的ETag，服务端返回304时直接使用本地缓存的数据
+function requestCachedGetApi(url, cacheKey, sourceObj, successFun, failFun) {
+    const cached = wx.getStorageSync(cacheKey);
+    const headers = {};
+    if (cached && cached.etag) {
+        headers['If-None-Match'] = cached.etag;
+    }
+
+    wx.request({
+        url: url,
+        method: 'GET',
+        header: headers,
+        success: function (res) {
+            if (res.statusCode === 304 && cached && cached.data) {
+                typeof successFun == 'function' && successFun(cached.data, sourceObj);
+                return;
+            }
+            const etag = res.header && (res.header.ETag || res.header.Etag || res.header.etag);
+            if (res.statusCode === 200 && etag && res.data && res.data.status === 200) {
+                wx.setStorageSync(cacheKey, { etag: etag, data: res.data });
+            }
+            typeof successFun == 'function' && successFun(res.data, sourceObj);
+        },
+        fail: function (res) {
+            if (cached && cached.data) {
+                typeof successFun == 'function' && successFun(cached.data, sourceObj);
+                return;
+            }
+            typeof failFun == 'function' && failFun(res.data, sourceObj);
+        }
+    });
+}
+
 module.exports = {
     requestPostApi,
     requestGetApi,
-    requestDeleteApi
+    requestDeleteApi,
+    requestCachedGetApi
 }
\ No newline at end of file